@@ -10,5 +10,7 @@ public enum LLMApiProvider {
     OPENAI,
     ANTHROPIC,
     AZURE,
-    OPENROUTER
+    OPENROUTER,
+    LOCAL,
+    STUB
 }
@@ -213,11 +213,13 @@ class ModelsTest {
 
     @Test
     void llmApiProvider_valuesExist() {
-        assertEquals(5, LLMApiProvider.values().length);
+        assertEquals(7, LLMApiProvider.values().length);
         assertNotNull(LLMApiProvider.valueOf("GEMINI"));
         assertNotNull(LLMApiProvider.valueOf("OPENAI"));
         assertNotNull(LLMApiProvider.valueOf("ANTHROPIC"));
         assertNotNull(LLMApiProvider.valueOf("AZURE"));
         assertNotNull(LLMApiProvider.valueOf("OPENROUTER"));
+        assertNotNull(LLMApiProvider.valueOf("LOCAL"));
+        assertNotNull(LLMApiProvider.valueOf("STUB"));
     }
 }
@@ -14,6 +14,8 @@ export enum LLMApiProvider {
     ANTHROPIC = "ANTHROPIC",
     AZURE = "AZURE",
     OPENROUTER = "OPENROUTER",
+    LOCAL = "LOCAL",
+    STUB = "STUB",
 }
 
 export enum ConverserRole {
@@ -19,6 +19,8 @@ class LLMApiProvider(str, Enum):
     ANTHROPIC = "ANTHROPIC"
     AZURE = "AZURE"
     OPENROUTER = "OPENROUTER"
+    LOCAL = "LOCAL"
+    STUB = "STUB"
 
 
 class ConverserRole(str, Enum):
@@ -0,0 +1,205 @@
+package com.vectornode.memory.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-batcher for single-text embedding requests.
+ *
+ * Concurrent callers are held for up to the configured window (or until the
+ * batch is full) and then served by one multi-input embedding call. With a
+ * zero window every call goes straight to the model.
+ */
+@Slf4j
+public final class EmbeddingBatcher {
+
+    public static final String BATCH_SIZE_METRIC = "llm.embedding.batch.size";
+    public static final String QUEUE_DELAY_METRIC = "llm.embedding.batch.queue.delay";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+    private static final Object lock = new Object();
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "embedding-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Batches are dispatched off the timer thread so slow calls never delay the next window
+    private static final ExecutorService dispatcher = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static volatile long windowNanos = 0;
+    private static volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private static volatile DistributionSummary batchSizeSummary;
+    private static volatile Timer queueDelayTimer;
+
+    private static List<Pending> pending = new ArrayList<>();
+    private static ScheduledFuture<?> scheduledFlush;
+
+    private EmbeddingBatcher() {
+    }
+
+    private record Pending(EmbeddingModel model, String text, LLMLane lane, CompletableFuture<float[]> future,
+            long enqueuedAt) {
+    }
+
+    /**
+     * @param window       how long the first request in a batch waits for others;
+     *                     zero disables batching
+     * @param maxBatchSize batch is dispatched immediately once this many texts
+     *                     are queued
+     */
+    public static void configure(Duration window, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        EmbeddingBatcher.windowNanos = Math.max(0, window.toNanos());
+        EmbeddingBatcher.maxBatchSize = maxBatchSize;
+        log.info("Embedding batcher configured with window={}, maxBatchSize={}", window, maxBatchSize);
+    }
+
+    /**
+     * Exports {@value #BATCH_SIZE_METRIC} (texts per dispatched call) and
+     * {@value #QUEUE_DELAY_METRIC} (time a request waited for its batch).
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        batchSizeSummary = DistributionSummary.builder(BATCH_SIZE_METRIC)
+                .description("Texts per coalesced embedding request")
+                .publishPercentileHistogram()
+                .register(registry);
+        queueDelayTimer = Timer.builder(QUEUE_DELAY_METRIC)
+                .description("Time an embedding request waited for its batch to be dispatched")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public static boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    /**
+     * Embeds a single text, coalescing it with concurrent requests for the same
+     * model when batching is enabled. Blocks until the batch completes.
+     */
+    public static float[] embed(EmbeddingModel model, String text) {
+        if (!isEnabled()) {
+            return model.embed(text);
+        }
+
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        List<Pending> full = null;
+
+        synchronized (lock) {
+            pending.add(new Pending(model, text, LLMLane.current(), future, System.nanoTime()));
+            if (pending.size() >= maxBatchSize) {
+                full = drainLocked();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(EmbeddingBatcher::flush, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        if (full != null) {
+            List<Pending> batch = full;
+            dispatcher.execute(() -> dispatch(batch));
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    private static void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = drainLocked();
+        }
+        if (!batch.isEmpty()) {
+            dispatcher.execute(() -> dispatch(batch));
+        }
+    }
+
+    private static List<Pending> drainLocked() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private static void dispatch(List<Pending> batch) {
+        // A reconfiguration can leave requests for two model instances in one window
+        Map<EmbeddingModel, List<Pending>> byModel = new IdentityHashMap<>();
+        for (Pending p : batch) {
+            byModel.computeIfAbsent(p.model(), m -> new ArrayList<>()).add(p);
+        }
+
+        long now = System.nanoTime();
+        Error fatal = null;
+        for (Map.Entry<EmbeddingModel, List<Pending>> entry : byModel.entrySet()) {
+            EmbeddingModel model = entry.getKey();
+            List<Pending> requests = entry.getValue();
+            recordMetrics(requests, now);
+            // A batch carrying any query traffic is admitted in the query lane
+            LLMLane lane = requests.stream().anyMatch(p -> p.lane() == LLMLane.QUERY)
+                    ? LLMLane.QUERY
+                    : LLMLane.INGESTION;
+            try {
+                List<float[]> vectors = lane.call(() -> requests.size() == 1
+                        ? List.of(model.embed(requests.get(0).text()))
+                        : model.embed(requests.stream().map(Pending::text).toList()));
+                if (vectors.size() != requests.size()) {
+                    throw new IllegalStateException("Embedding model returned " + vectors.size()
+                            + " vectors for " + requests.size() + " inputs");
+                }
+                for (int i = 0; i < requests.size(); i++) {
+                    requests.get(i).future().complete(vectors.get(i));
+                }
+            } catch (Throwable e) {
+                // Every caller is blocked on its future, so each one must complete whatever failed
+                requests.forEach(p -> p.future().completeExceptionally(e));
+                if (e instanceof Error error) {
+                    fatal = error;
+                }
+            }
+        }
+        if (fatal != null) {
+            throw fatal;
+        }
+    }
+
+    private static void recordMetrics(List<Pending> requests, long dispatchedAt) {
+        DistributionSummary summary = batchSizeSummary;
+        Timer timer = queueDelayTimer;
+        if (summary != null) {
+            summary.record(requests.size());
+        }
+        if (timer != null) {
+            requests.forEach(p -> timer.record(dispatchedAt - p.enqueuedAt(), TimeUnit.NANOSECONDS));
+        }
+        log.debug("Dispatching coalesced embedding batch of {}", requests.size());
+    }
+}
@@ -0,0 +1,151 @@
+package com.vectornode.memory.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of embeddings, keyed by (provider, embed model,
+ * SHA-256 of the text).
+ *
+ * Backed by Caffeine (W-TinyLFU eviction, bounded by the total weight of the
+ * cached vectors in bytes). Concurrent misses for the same key are coalesced:
+ * the first caller loads on its own thread, the others wait for its result.
+ */
+@Slf4j
+public final class EmbeddingCache {
+
+    public static final String METRIC_NAME = "llm.embedding.cache";
+    public static final long DEFAULT_MAX_WEIGHT_BYTES = 64L * 1024 * 1024;
+
+    // Approximate per-entry overhead (key strings, node, array header)
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private static volatile AsyncCache<Key, float[]> cache = build(DEFAULT_MAX_WEIGHT_BYTES);
+
+    private EmbeddingCache() {
+    }
+
+    public record Key(String provider, String model, String textHash) {
+    }
+
+    /**
+     * Rebuilds the cache with a new weight bound. Existing entries are dropped.
+     *
+     * @param maxWeightBytes max total size of cached vectors; 0 disables caching
+     */
+    public static void configure(long maxWeightBytes) {
+        cache = build(maxWeightBytes);
+        log.info("Embedding cache configured with maxWeightBytes={}", maxWeightBytes);
+    }
+
+    /**
+     * Exports size, hit/miss, load and eviction metrics under
+     * {@value #METRIC_NAME}.
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, METRIC_NAME);
+    }
+
+    public static void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        log.info("Embedding cache invalidated");
+    }
+
+    public static long estimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * Returns the cached embedding for the text, loading it with the given
+     * function on a miss.
+     */
+    public static float[] get(String provider, String model, String text, Function<String, float[]> loader) {
+        return getAll(provider, model, List.of(text), texts -> texts.stream().map(loader).toList()).get(0);
+    }
+
+    /**
+     * Returns embeddings for all texts in input order. Texts that are neither
+     * cached nor currently being loaded by another caller are passed to the
+     * batch loader in a single call.
+     */
+    public static List<float[]> getAll(String provider, String model, List<String> texts,
+            Function<List<String>, List<float[]>> batchLoader) {
+        AsyncCache<Key, float[]> current = cache;
+
+        List<CompletableFuture<float[]>> results = new ArrayList<>(texts.size());
+        List<String> missingTexts = new ArrayList<>();
+        List<CompletableFuture<float[]>> missingFutures = new ArrayList<>();
+
+        for (String text : texts) {
+            Key key = new Key(provider, model, sha256(text));
+            CompletableFuture<float[]> created = new CompletableFuture<>();
+            CompletableFuture<float[]> future = current.get(key, (k, executor) -> created);
+            if (future == created) {
+                missingTexts.add(text);
+                missingFutures.add(created);
+            }
+            results.add(future);
+        }
+
+        if (!missingTexts.isEmpty()) {
+            try {
+                List<float[]> loaded = batchLoader.apply(missingTexts);
+                for (int i = 0; i < missingFutures.size(); i++) {
+                    missingFutures.get(i).complete(loaded.get(i));
+                }
+            } catch (Throwable e) {
+                // Failed futures are dropped by Caffeine, so the next caller retries;
+                // an incomplete one would block every caller of its key for good
+                missingFutures.forEach(f -> f.completeExceptionally(e));
+                throw e;
+            }
+        }
+
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (CompletableFuture<float[]> future : results) {
+            try {
+                // Copy so callers can never mutate a cached vector
+                embeddings.add(future.join().clone());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        return embeddings;
+    }
+
+    /**
+     * Hex-encoded SHA-256 of the UTF-8 bytes of the text.
+     */
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static AsyncCache<Key, float[]> build(long maxWeightBytes) {
+        return Caffeine.newBuilder()
+                .maximumWeight(Math.max(0, maxWeightBytes))
+                .<Key, float[]>weigher((key, vector) -> ENTRY_OVERHEAD_BYTES + vector.length * Float.BYTES)
+                .recordStats()
+                .buildAsync();
+    }
+}
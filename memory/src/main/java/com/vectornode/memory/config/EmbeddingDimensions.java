@@ -0,0 +1,66 @@
+package com.vectornode.memory.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+
+/**
+ * Dimension of the stored embedding vectors (cortex.llm.embedding.dimensions).
+ *
+ * The same property sizes the vector columns through the Flyway placeholder
+ * embedding_dimensions. Models may produce longer vectors; those are
+ * Matryoshka-truncated to this size and renormalized.
+ */
+@Slf4j
+public final class EmbeddingDimensions {
+
+    public static final int DEFAULT_DIMENSIONS = 768;
+
+    // pgvector's HNSW index supports at most 2000 dimensions
+    public static final int MAX_INDEXED_DIMENSIONS = 2000;
+
+    private static volatile int dimensions = DEFAULT_DIMENSIONS;
+
+    private EmbeddingDimensions() {
+    }
+
+    public static void configure(int dimensions) {
+        if (dimensions <= 0 || dimensions > MAX_INDEXED_DIMENSIONS) {
+            throw new IllegalArgumentException(
+                    "Embedding dimensions must be between 1 and " + MAX_INDEXED_DIMENSIONS + ": " + dimensions);
+        }
+        EmbeddingDimensions.dimensions = dimensions;
+        log.info("Stored embedding dimensions: {}", dimensions);
+    }
+
+    public static int get() {
+        return dimensions;
+    }
+
+    /**
+     * Keeps the first {@code dimensions} components and rescales them to unit
+     * length. Vectors that already have that length are returned as-is.
+     */
+    public static float[] truncate(float[] vector, int dimensions) {
+        if (vector.length == dimensions) {
+            return vector;
+        }
+        if (vector.length < dimensions) {
+            throw new IllegalStateException(
+                    "Embedding has " + vector.length + " dimensions, expected at least " + dimensions);
+        }
+
+        float[] truncated = Arrays.copyOf(vector, dimensions);
+        double norm = 0;
+        for (float v : truncated) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                truncated[i] *= scale;
+            }
+        }
+        return truncated;
+    }
+}
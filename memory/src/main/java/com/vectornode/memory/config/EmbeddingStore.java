@@ -0,0 +1,21 @@
+package com.vectornode.memory.config;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Durable, content-addressed embedding storage consulted by LLMProvider
+ * between the in-process cache and the provider's network call.
+ * Entries are keyed by (model id, hex SHA-256 of the input text).
+ */
+public interface EmbeddingStore {
+
+    /**
+     * Looks up several embeddings in one round trip.
+     *
+     * @return the stored vectors keyed by content hash; missing hashes are absent
+     */
+    Map<String, float[]> findAll(String modelId, Collection<String> contentHashes);
+
+    void saveAll(String modelId, Map<String, float[]> embeddingsByHash);
+}
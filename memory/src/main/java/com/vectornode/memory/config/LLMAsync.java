@@ -0,0 +1,83 @@
+package com.vectornode.memory.config;
+
+import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Virtual-thread executor behind the async LLMProvider API.
+ *
+ * Every task gets a timeout. When a future is cancelled or times out, the
+ * thread running the blocking provider call is interrupted.
+ */
+@Slf4j
+public final class LLMAsync {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("llm-async-", 0).factory());
+
+    private static volatile Duration timeout = DEFAULT_TIMEOUT;
+
+    private LLMAsync() {
+    }
+
+    public static void configure(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("LLM async timeout must be positive");
+        }
+        LLMAsync.timeout = timeout;
+        log.info("LLM async executor configured with timeout={}", timeout);
+    }
+
+    /**
+     * Runs the blocking call on a virtual thread, failing the returned future
+     * with a TimeoutException once the configured timeout elapses.
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Keep the caller's rate-limiter lane on the worker thread
+        LLMLane lane = LLMLane.current();
+        Future<?> running = executor.submit(() -> {
+            try {
+                result.complete(lane.call(call));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        // Propagate cancellation and timeout to the blocked provider call
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                running.cancel(true);
+            }
+        });
+        return result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for an async LLM result, rethrowing the original provider
+     * exception instead of a CompletionException.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new LlmProviderException("LLM call timed out after " + timeout.toMillis() + "ms", cause);
+            }
+            throw cause instanceof RuntimeException re ? re : e;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.vectornode.memory.config;
+
+import com.vectornode.memory.setup.exception.custom.LlmUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of LLM-dependent requests in flight, so a slow provider
+ * can occupy at most that many request threads and SQL-only endpoints keep
+ * the rest. A request that cannot get a slot within the max wait is
+ * rejected with LlmUnavailableException instead of queueing.
+ */
+@Slf4j
+public final class LLMBulkhead {
+
+    public static final String METRIC_PREFIX = "llm.bulkhead";
+    public static final int DEFAULT_MAX_CONCURRENT = 64;
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofMillis(100);
+
+    private static volatile Semaphore slots = new Semaphore(DEFAULT_MAX_CONCURRENT, true);
+    private static volatile int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private static volatile Duration maxWait = DEFAULT_MAX_WAIT;
+
+    private static volatile Counter rejected;
+
+    private LLMBulkhead() {
+    }
+
+    public static void configure(int maxConcurrent, Duration maxWait) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative");
+        }
+        // Permits already handed out are released to the semaphore they came from
+        LLMBulkhead.slots = new Semaphore(maxConcurrent, true);
+        LLMBulkhead.maxConcurrent = maxConcurrent;
+        LLMBulkhead.maxWait = maxWait;
+        log.info("LLM bulkhead configured with maxConcurrent={}, maxWait={}", maxConcurrent, maxWait);
+    }
+
+    /**
+     * Exports {@value #METRIC_PREFIX}.in.flight and .rejected.
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        Gauge.builder(METRIC_PREFIX + ".in.flight", () -> maxConcurrent - slots.availablePermits())
+                .description("LLM-dependent requests currently holding a bulkhead slot")
+                .register(registry);
+        rejected = Counter.builder(METRIC_PREFIX + ".rejected")
+                .description("LLM-dependent requests rejected because the bulkhead was full")
+                .register(registry);
+    }
+
+    /**
+     * Takes a slot, waiting at most the configured max wait. The returned
+     * permit must be closed exactly once; further closes are ignored.
+     */
+    public static Permit acquire() {
+        Semaphore semaphore = slots;
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            Counter counter = rejected;
+            if (counter != null) {
+                counter.increment();
+            }
+            throw new LlmUnavailableException("Too many concurrent LLM requests", Duration.ofSeconds(1));
+        }
+        return new Permit(semaphore);
+    }
+
+    public static <T> T call(Supplier<T> call) {
+        Permit permit = acquire();
+        try {
+            return call.get();
+        } finally {
+            permit.close();
+        }
+    }
+
+    public static final class Permit implements AutoCloseable {
+
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.vectornode.memory.config;
+
+import com.vectornode.memory.setup.exception.custom.LlmUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for LLM-dependent query endpoints.
+ *
+ * CLOSED: outcomes are recorded in a sliding window of the last calls. Once
+ * the window holds enough calls and the share of provider failures (5xx,
+ * timeouts, 429, see {@link LLMHedger#isFailover}) or calls slower than the
+ * slow-call threshold reaches the failure rate, the breaker opens.
+ *
+ * OPEN: calls fail fast with LlmUnavailableException until the open
+ * duration has passed, then the breaker turns HALF_OPEN.
+ *
+ * HALF_OPEN: a few probe calls are let through. If they all succeed the
+ * breaker closes; a single failure reopens it.
+ */
+@Slf4j
+public final class LLMCircuitBreaker {
+
+    public static final String METRIC_PREFIX = "llm.circuit";
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * @param windowSize           number of most recent calls the failure rate is computed over
+     * @param minimumCalls         calls needed in the window before the breaker can open
+     * @param failureRateThreshold share of failed or slow calls (0..1] that opens the breaker
+     * @param slowCallThreshold    successful calls slower than this count as failures; zero disables
+     * @param openDuration         how long the breaker stays open before probing
+     * @param halfOpenProbes       probe calls allowed, and successes needed, in HALF_OPEN
+     */
+    public record Settings(int windowSize, int minimumCalls, double failureRateThreshold,
+            Duration slowCallThreshold, Duration openDuration, int halfOpenProbes) {
+
+        public Settings {
+            if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("Circuit breaker needs 0 < minimumCalls <= windowSize");
+            }
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+            }
+            if (halfOpenProbes <= 0) {
+                throw new IllegalArgumentException("halfOpenProbes must be positive");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(50, 20, 0.5, Duration.ofSeconds(20), Duration.ofSeconds(30), 3);
+        }
+    }
+
+    private static final Object lock = new Object();
+
+    private static Settings settings = Settings.defaults();
+    private static State state = State.CLOSED;
+    // Ring buffer of recent outcomes, true = failure
+    private static boolean[] window = new boolean[settings.windowSize()];
+    private static int windowIndex;
+    private static int windowCount;
+    private static int windowFailures;
+    private static long openedAt;
+    private static int probesInFlight;
+    private static int probeSuccesses;
+    // Bumped on every state change so late outcomes from an earlier state are dropped
+    private static long generation;
+
+    private static volatile Counter rejected;
+    private static volatile Counter opened;
+
+    private LLMCircuitBreaker() {
+    }
+
+    public static void configure(Settings settings) {
+        synchronized (lock) {
+            LLMCircuitBreaker.settings = settings;
+            reset();
+        }
+        log.info("LLM circuit breaker configured with {}", settings);
+    }
+
+    /**
+     * Exports {@value #METRIC_PREFIX}.state (0 closed, 1 open, 2 half-open),
+     * .rejected (calls failed fast) and .opened (transitions to OPEN).
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        Gauge.builder(METRIC_PREFIX + ".state", () -> state().ordinal())
+                .description("LLM circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(registry);
+        rejected = Counter.builder(METRIC_PREFIX + ".rejected")
+                .description("LLM-dependent requests failed fast by the open circuit breaker")
+                .register(registry);
+        opened = Counter.builder(METRIC_PREFIX + ".opened")
+                .description("Times the LLM circuit breaker opened")
+                .register(registry);
+    }
+
+    public static State state() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    /**
+     * Admits a call or throws LlmUnavailableException when the breaker is
+     * open (or HALF_OPEN with all probes in flight). Every permit must be
+     * completed with {@link Permit#onSuccess()} or {@link Permit#onError}.
+     */
+    public static Permit acquire() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            if (state == State.OPEN) {
+                long remaining = openedAt + settings.openDuration().toNanos() - now;
+                if (remaining > 0) {
+                    reject(Duration.ofNanos(remaining));
+                }
+                state = State.HALF_OPEN;
+                generation++;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+                log.info("LLM circuit breaker half-open, probing provider");
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight >= settings.halfOpenProbes()) {
+                    reject(settings.openDuration());
+                }
+                probesInFlight++;
+                return new Permit(true, generation, now);
+            }
+            return new Permit(false, generation, now);
+        }
+    }
+
+    /**
+     * Runs the call under a permit, recording its outcome.
+     */
+    public static <T> T call(Supplier<T> call) {
+        Permit permit = acquire();
+        try {
+            T result = call.get();
+            permit.onSuccess();
+            return result;
+        } catch (Throwable e) {
+            permit.onError(e);
+            throw e;
+        }
+    }
+
+    private static void reject(Duration retryAfter) {
+        Counter counter = rejected;
+        if (counter != null) {
+            counter.increment();
+        }
+        throw new LlmUnavailableException("LLM provider circuit breaker is open", retryAfter);
+    }
+
+    private static void record(Permit permit, boolean failure, boolean ignored) {
+        synchronized (lock) {
+            if (permit.generation != generation) {
+                return;
+            }
+            if (permit.probe) {
+                probesInFlight--;
+                if (ignored) {
+                    return;
+                }
+                if (failure) {
+                    open();
+                } else if (++probeSuccesses >= settings.halfOpenProbes()) {
+                    log.info("LLM circuit breaker closed after {} successful probes", probeSuccesses);
+                    reset();
+                }
+                return;
+            }
+
+            if (ignored) {
+                return;
+            }
+            if (windowCount == window.length) {
+                if (window[windowIndex]) {
+                    windowFailures--;
+                }
+            } else {
+                windowCount++;
+            }
+            window[windowIndex] = failure;
+            if (failure) {
+                windowFailures++;
+            }
+            windowIndex = (windowIndex + 1) % window.length;
+
+            if (windowCount >= settings.minimumCalls()
+                    && (double) windowFailures / windowCount >= settings.failureRateThreshold()) {
+                log.warn("LLM circuit breaker opened: {} of the last {} calls failed", windowFailures, windowCount);
+                open();
+            }
+        }
+    }
+
+    private static void open() {
+        state = State.OPEN;
+        generation++;
+        openedAt = System.nanoTime();
+        Counter counter = opened;
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static void reset() {
+        state = State.CLOSED;
+        generation++;
+        window = new boolean[settings.windowSize()];
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+    }
+
+    /**
+     * An admitted call. Only the first completion is recorded.
+     */
+    public static final class Permit {
+
+        private final boolean probe;
+        private final long generation;
+        private final long startedAt;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Permit(boolean probe, long generation, long startedAt) {
+            this.probe = probe;
+            this.generation = generation;
+            this.startedAt = startedAt;
+        }
+
+        public void onSuccess() {
+            if (completed.compareAndSet(false, true)) {
+                Duration slow = settings().slowCallThreshold();
+                boolean tooSlow = !slow.isZero() && System.nanoTime() - startedAt > slow.toNanos();
+                record(this, tooSlow, false);
+            }
+        }
+
+        /**
+         * Provider failures count against the breaker; rejections and
+         * errors unrelated to the provider (bad input) release the permit
+         * without being counted.
+         */
+        public void onError(Throwable error) {
+            if (completed.compareAndSet(false, true)) {
+                boolean providerFailure = LLMHedger.isFailover(error);
+                record(this, providerFailure, !providerFailure);
+            }
+        }
+    }
+
+    private static Settings settings() {
+        synchronized (lock) {
+            return settings;
+        }
+    }
+}
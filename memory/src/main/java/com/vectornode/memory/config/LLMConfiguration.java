@@ -0,0 +1,206 @@
+package com.vectornode.memory.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+
+import java.time.Duration;
+
+/**
+ * Applies application properties to the static LLMProvider infrastructure
+ * and binds its metrics to the application's MeterRegistry.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class LLMConfiguration {
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<EmbeddingStore> embeddingStore;
+
+    @Value("${cortex.llm.embedding.dimensions:" + EmbeddingDimensions.DEFAULT_DIMENSIONS + "}")
+    private int embeddingDimensions;
+
+    @Value("${cortex.llm.embedding-cache.max-weight-bytes:" + EmbeddingCache.DEFAULT_MAX_WEIGHT_BYTES + "}")
+    private long embeddingCacheMaxWeightBytes;
+
+    @Value("${cortex.llm.embedding-batch.window-ms:0}")
+    private long embeddingBatchWindowMs;
+
+    @Value("${cortex.llm.embedding-batch.max-size:" + EmbeddingBatcher.DEFAULT_MAX_BATCH_SIZE + "}")
+    private int embeddingBatchMaxSize;
+
+    @Value("${cortex.llm.async.timeout-ms:60000}")
+    private long asyncTimeoutMs;
+
+    @Value("${cortex.llm.response-cache.ttl-seconds:600}")
+    private long responseCacheTtlSeconds;
+
+    @Value("${cortex.llm.response-cache.max-size:" + LLMResponseCache.DEFAULT_MAX_SIZE + "}")
+    private long responseCacheMaxSize;
+
+    @Value("${cortex.llm.limiter.initial-limit:8}")
+    private int limiterInitialLimit;
+
+    @Value("${cortex.llm.limiter.min-limit:1}")
+    private int limiterMinLimit;
+
+    @Value("${cortex.llm.limiter.max-limit:64}")
+    private int limiterMaxLimit;
+
+    @Value("${cortex.llm.limiter.backoff-ratio:0.5}")
+    private double limiterBackoffRatio;
+
+    @Value("${cortex.llm.limiter.requests-per-minute:0}")
+    private int limiterRequestsPerMinute;
+
+    @Value("${cortex.llm.limiter.tokens-per-minute:0}")
+    private long limiterTokensPerMinute;
+
+    @Value("${cortex.llm.limiter.query-reserve:0.2}")
+    private double limiterQueryReserve;
+
+    @Value("${cortex.llm.limiter.query-acquire-timeout-ms:10000}")
+    private long limiterQueryAcquireTimeoutMs;
+
+    @Value("${cortex.llm.limiter.ingestion-acquire-timeout-ms:300000}")
+    private long limiterIngestionAcquireTimeoutMs;
+
+    @Value("${cortex.llm.limiter.max-query-retry-wait-ms:2000}")
+    private long limiterMaxQueryRetryWaitMs;
+
+    @Value("${cortex.llm.limiter.max-ingestion-retries:5}")
+    private int limiterMaxIngestionRetries;
+
+    @Value("${cortex.llm.limiter.default-retry-after-ms:1000}")
+    private long limiterDefaultRetryAfterMs;
+
+    @Value("${cortex.llm.hedge.chat-delay-ms:2000}")
+    private long hedgeChatDelayMs;
+
+    @Value("${cortex.llm.hedge.embedding-delay-ms:500}")
+    private long hedgeEmbeddingDelayMs;
+
+    @Value("${cortex.llm.circuit-breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${cortex.llm.circuit-breaker.minimum-calls:20}")
+    private int breakerMinimumCalls;
+
+    @Value("${cortex.llm.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRateThreshold;
+
+    @Value("${cortex.llm.circuit-breaker.slow-call-ms:20000}")
+    private long breakerSlowCallMs;
+
+    @Value("${cortex.llm.circuit-breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    @Value("${cortex.llm.circuit-breaker.half-open-probes:3}")
+    private int breakerHalfOpenProbes;
+
+    @Value("${cortex.llm.bulkhead.max-concurrent:" + LLMBulkhead.DEFAULT_MAX_CONCURRENT + "}")
+    private int bulkheadMaxConcurrent;
+
+    @Value("${cortex.llm.bulkhead.max-wait-ms:100}")
+    private long bulkheadMaxWaitMs;
+
+    @Value("${cortex.llm.local.model-path:}")
+    private String localModelPath;
+
+    @Value("${cortex.llm.local.tokenizer-path:}")
+    private String localTokenizerPath;
+
+    @Value("${cortex.llm.local.model-output-name:" + LocalEmbeddingModel.DEFAULT_MODEL_OUTPUT_NAME + "}")
+    private String localModelOutputName;
+
+    // 0 picks LocalEmbeddingModel.DEFAULT_THREADS, half the CPU cores
+    @Value("${cortex.llm.local.threads:0}")
+    private int localThreads;
+
+    @Value("${cortex.llm.local.batch-size:" + LocalEmbeddingModel.DEFAULT_BATCH_SIZE + "}")
+    private int localBatchSize;
+
+    @Value("${cortex.llm.local.queue-capacity:" + LocalEmbeddingModel.DEFAULT_QUEUE_CAPACITY + "}")
+    private int localQueueCapacity;
+
+    @Value("${cortex.llm.stub.chat-latency.distribution:fixed}")
+    private String stubChatLatencyDistribution;
+
+    @Value("${cortex.llm.stub.chat-latency.median-ms:0}")
+    private long stubChatLatencyMedianMs;
+
+    @Value("${cortex.llm.stub.chat-latency.sigma:0.5}")
+    private double stubChatLatencySigma;
+
+    @Value("${cortex.llm.stub.chat-latency.tail-probability:0}")
+    private double stubChatLatencyTailProbability;
+
+    @Value("${cortex.llm.stub.chat-latency.tail-ms:0}")
+    private long stubChatLatencyTailMs;
+
+    @Value("${cortex.llm.stub.embedding-latency.distribution:fixed}")
+    private String stubEmbeddingLatencyDistribution;
+
+    @Value("${cortex.llm.stub.embedding-latency.median-ms:0}")
+    private long stubEmbeddingLatencyMedianMs;
+
+    @Value("${cortex.llm.stub.embedding-latency.sigma:0.5}")
+    private double stubEmbeddingLatencySigma;
+
+    @Value("${cortex.llm.stub.embedding-latency.tail-probability:0}")
+    private double stubEmbeddingLatencyTailProbability;
+
+    @Value("${cortex.llm.stub.embedding-latency.tail-ms:0}")
+    private long stubEmbeddingLatencyTailMs;
+
+    @PostConstruct
+    public void configure() {
+        EmbeddingDimensions.configure(embeddingDimensions);
+        EmbeddingCache.configure(embeddingCacheMaxWeightBytes);
+        EmbeddingCache.bindMetrics(meterRegistry);
+        EmbeddingBatcher.configure(Duration.ofMillis(embeddingBatchWindowMs), embeddingBatchMaxSize);
+        EmbeddingBatcher.bindMetrics(meterRegistry);
+        LLMResponseCache.configure(Duration.ofSeconds(responseCacheTtlSeconds), responseCacheMaxSize);
+        LLMResponseCache.bindMetrics(meterRegistry);
+        LLMAsync.configure(Duration.ofMillis(asyncTimeoutMs));
+        LLMRateLimiter.configure(new LLMRateLimiter.Settings(limiterInitialLimit, limiterMinLimit,
+                limiterMaxLimit, limiterBackoffRatio, limiterRequestsPerMinute, limiterTokensPerMinute,
+                limiterQueryReserve, Duration.ofMillis(limiterQueryAcquireTimeoutMs),
+                Duration.ofMillis(limiterIngestionAcquireTimeoutMs), Duration.ofMillis(limiterMaxQueryRetryWaitMs),
+                limiterMaxIngestionRetries, Duration.ofMillis(limiterDefaultRetryAfterMs)));
+        LLMRateLimiter.bindMetrics(meterRegistry);
+        LLMHedger.configure(Duration.ofMillis(hedgeChatDelayMs), Duration.ofMillis(hedgeEmbeddingDelayMs));
+        LLMHedger.bindMetrics(meterRegistry);
+        LLMCircuitBreaker.configure(new LLMCircuitBreaker.Settings(breakerWindowSize, breakerMinimumCalls,
+                breakerFailureRateThreshold, Duration.ofMillis(breakerSlowCallMs), Duration.ofMillis(breakerOpenMs),
+                breakerHalfOpenProbes));
+        LLMCircuitBreaker.bindMetrics(meterRegistry);
+        LLMBulkhead.configure(bulkheadMaxConcurrent, Duration.ofMillis(bulkheadMaxWaitMs));
+        LLMBulkhead.bindMetrics(meterRegistry);
+        LocalEmbeddingModel.configure(new LocalEmbeddingModel.Settings(localModelPath, localTokenizerPath,
+                localModelOutputName, localThreads > 0 ? localThreads : LocalEmbeddingModel.DEFAULT_THREADS,
+                localBatchSize, localQueueCapacity));
+        StubLatency.configure(
+                new StubLatency(StubLatency.distribution(stubChatLatencyDistribution),
+                        Duration.ofMillis(stubChatLatencyMedianMs), stubChatLatencySigma,
+                        stubChatLatencyTailProbability, Duration.ofMillis(stubChatLatencyTailMs)),
+                new StubLatency(StubLatency.distribution(stubEmbeddingLatencyDistribution),
+                        Duration.ofMillis(stubEmbeddingLatencyMedianMs), stubEmbeddingLatencySigma,
+                        stubEmbeddingLatencyTailProbability, Duration.ofMillis(stubEmbeddingLatencyTailMs)));
+        LLMProvider.setEmbeddingStore(embeddingStore.getIfAvailable());
+    }
+
+    /**
+     * @Async is only used by the ingestion pipeline, so every task on the
+     * application executor runs in the INGESTION limiter lane.
+     */
+    @Bean
+    public TaskDecorator ingestionLaneTaskDecorator() {
+        return LLMLane.INGESTION::wrap;
+    }
+}
@@ -0,0 +1,220 @@
+package com.vectornode.memory.config;
+
+import com.azure.core.exception.HttpResponseException;
+import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import com.vectornode.memory.setup.exception.custom.LlmRateLimitedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Hedged calls across a profile's provider chain.
+ *
+ * The primary is called first. If it has not answered within the hedge
+ * delay for the call type, the next provider in the chain gets a duplicate
+ * request and whichever succeeds first wins; the others are cancelled. A
+ * 5xx, timeout, connection failure or 429 moves on to the next provider
+ * immediately. Other failures (bad request, authentication) are not retried
+ * elsewhere. A zero delay disables hedging but keeps failover.
+ *
+ * Single-provider chains are called directly on the caller's thread.
+ */
+@Slf4j
+public final class LLMHedger {
+
+    public static final String METRIC_PREFIX = "llm.hedge";
+    public static final Duration DEFAULT_CHAT_DELAY = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_EMBEDDING_DELAY = Duration.ofMillis(500);
+
+    public enum CallType {
+        CHAT, EMBEDDING
+    }
+
+    private static volatile Duration chatDelay = DEFAULT_CHAT_DELAY;
+    private static volatile Duration embeddingDelay = DEFAULT_EMBEDDING_DELAY;
+
+    private static volatile Map<CallType, Meters> meters = Map.of();
+
+    private LLMHedger() {
+    }
+
+    private record Meters(Counter calls, Counter hedged, Counter failovers, Counter primaryWins,
+            Counter secondaryWins) {
+    }
+
+    private record Outcome<T>(int index, T value, Throwable error) {
+    }
+
+    /**
+     * @param chatDelay      wait before hedging a chat call; zero disables
+     * @param embeddingDelay wait before hedging an embedding call; zero disables
+     */
+    public static void configure(Duration chatDelay, Duration embeddingDelay) {
+        if (chatDelay.isNegative() || embeddingDelay.isNegative()) {
+            throw new IllegalArgumentException("Hedge delays must not be negative");
+        }
+        LLMHedger.chatDelay = chatDelay;
+        LLMHedger.embeddingDelay = embeddingDelay;
+        log.info("LLM hedging configured with chatDelay={}, embeddingDelay={}", chatDelay, embeddingDelay);
+    }
+
+    public static Duration delay(CallType type) {
+        return type == CallType.CHAT ? chatDelay : embeddingDelay;
+    }
+
+    /**
+     * Exports, per call type: {@value #METRIC_PREFIX}.calls (calls with a
+     * fallback available), .fired (hedges sent), .failovers (providers
+     * skipped after an error) and .wins tagged winner=primary|secondary.
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        Map<CallType, Meters> bound = new EnumMap<>(CallType.class);
+        for (CallType type : CallType.values()) {
+            String tag = type.name().toLowerCase();
+            bound.put(type, new Meters(
+                    Counter.builder(METRIC_PREFIX + ".calls").tag("type", tag)
+                            .description("LLM calls with a fallback provider available").register(registry),
+                    Counter.builder(METRIC_PREFIX + ".fired").tag("type", tag)
+                            .description("Hedge requests sent after the hedge delay").register(registry),
+                    Counter.builder(METRIC_PREFIX + ".failovers").tag("type", tag)
+                            .description("Fallback requests sent after a provider error").register(registry),
+                    Counter.builder(METRIC_PREFIX + ".wins").tag("type", tag).tag("winner", "primary")
+                            .description("Hedged calls won by each side").register(registry),
+                    Counter.builder(METRIC_PREFIX + ".wins").tag("type", tag).tag("winner", "secondary")
+                            .description("Hedged calls won by each side").register(registry)));
+        }
+        meters = bound;
+    }
+
+    /**
+     * Runs the call against the chain and returns the first successful
+     * result. When every provider fails, the last failover error is thrown.
+     */
+    public static <S, T> T call(CallType type, List<S> chain, Function<S, T> call) {
+        if (chain.size() == 1) {
+            return call.apply(chain.get(0));
+        }
+
+        Meters m = meters.get(type);
+        increment(m == null ? null : m.calls());
+        long delayNanos = delay(type).toNanos();
+
+        BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+        List<CompletableFuture<T>> running = new ArrayList<>(chain.size());
+        launch(chain, call, running, outcomes);
+        int pending = 1;
+        RuntimeException lastError = null;
+
+        try {
+            while (true) {
+                boolean canHedge = delayNanos > 0 && running.size() < chain.size();
+                Outcome<T> outcome = canHedge
+                        ? outcomes.poll(delayNanos, TimeUnit.NANOSECONDS)
+                        : outcomes.take();
+
+                if (outcome == null) {
+                    log.debug("{} call not answered within {}ms, hedging to provider #{}", type,
+                            TimeUnit.NANOSECONDS.toMillis(delayNanos), running.size());
+                    increment(m == null ? null : m.hedged());
+                    launch(chain, call, running, outcomes);
+                    pending++;
+                    continue;
+                }
+                pending--;
+
+                if (outcome.error() == null) {
+                    if (running.size() > 1) {
+                        increment(m == null ? null : outcome.index() == 0 ? m.primaryWins() : m.secondaryWins());
+                    }
+                    return outcome.value();
+                }
+
+                RuntimeException error = outcome.error() instanceof RuntimeException re
+                        ? re
+                        : new LlmProviderException("LLM call failed: " + outcome.error().getMessage(),
+                                outcome.error());
+                if (!isFailover(error)) {
+                    throw error;
+                }
+                lastError = error;
+
+                if (running.size() < chain.size()) {
+                    log.warn("{} call failed on provider #{} ({}), failing over to provider #{}", type,
+                            outcome.index(), error.getMessage(), running.size());
+                    increment(m == null ? null : m.failovers());
+                    launch(chain, call, running, outcomes);
+                    pending++;
+                } else if (pending == 0) {
+                    throw lastError;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmProviderException("LLM call interrupted", e);
+        } finally {
+            // Losing and abandoned attempts are interrupted
+            running.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static <S, T> void launch(List<S> chain, Function<S, T> call, List<CompletableFuture<T>> running,
+            BlockingQueue<Outcome<T>> outcomes) {
+        int index = running.size();
+        S provider = chain.get(index);
+        CompletableFuture<T> future = LLMAsync.supply(() -> call.apply(provider));
+        future.whenComplete((value, error) -> outcomes.add(new Outcome<>(index, value, error)));
+        running.add(future);
+    }
+
+    /**
+     * True when another provider may succeed where this one failed: server
+     * errors, timeouts, connection failures and rate limiting.
+     */
+    public static boolean isFailover(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof LlmRateLimitedException
+                    || t instanceof TransientAiException
+                    || t instanceof HttpServerErrorException
+                    || t instanceof ResourceAccessException
+                    || t instanceof TimeoutException
+                    || t instanceof HttpTimeoutException
+                    || t instanceof InterruptedIOException
+                    || t instanceof ConnectException) {
+                return true;
+            }
+            if (t instanceof WebClientResponseException e && e.getStatusCode().is5xxServerError()) {
+                return true;
+            }
+            if (t instanceof HttpResponseException e && e.getResponse() != null
+                    && e.getResponse().getStatusCode() >= 500) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.vectornode.memory.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Traffic class of an LLM call. The rate limiter gives each lane its own
+ * concurrency pool so background ingestion cannot starve interactive queries.
+ *
+ * The lane is bound to the current thread; calls made outside any explicit
+ * lane are treated as QUERY traffic.
+ */
+public enum LLMLane {
+    QUERY,
+    INGESTION;
+
+    private static final ThreadLocal<LLMLane> current = new ThreadLocal<>();
+
+    public static LLMLane current() {
+        LLMLane lane = current.get();
+        return lane != null ? lane : QUERY;
+    }
+
+    /**
+     * Runs the call with this lane bound to the current thread.
+     */
+    public <T> T call(Supplier<T> call) {
+        LLMLane previous = current.get();
+        current.set(this);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Wraps the task so it runs in this lane on whichever thread executes it.
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> call(() -> {
+            task.run();
+            return null;
+        });
+    }
+}
@@ -3,6 +3,7 @@ package com.vectornode.memory.config;
 import lombok.extern.slf4j.Slf4j;
 import com.vectornode.memory.setup.exception.custom.LlmAuthenticationException;
 import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import com.vectornode.memory.setup.exception.custom.LlmRateLimitedException;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
@@ -22,12 +23,30 @@ import com.azure.ai.openai.OpenAIClientBuilder;
 import com.azure.core.credential.AzureKeyCredential;
 import io.micrometer.observation.ObservationRegistry;
 import org.springframework.retry.support.RetryTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class LLMProvider {
 
-    private static ChatClient chatClient;
-    private static EmbeddingModel embeddingModel;
+    // Upper bound on inputs per embedding request; 100 is the lowest limit among
+    // the supported providers (Gemini batchEmbedContents).
+    public static final int DEFAULT_EMBEDDING_BATCH_SIZE = 100;
+
+    // Well-known profiles; each falls back to the default profile when not configured.
+    // Embeddings always come from the default profile so stored vectors share one space.
+    public static final String PROFILE_DEFAULT = ProviderRegistry.DEFAULT_PROFILE;
+    public static final String PROFILE_EXTRACTION = "extraction";
+    public static final String PROFILE_ANSWER = "answer";
+
+    // Optional durable tier between the in-process cache and the network
+    private static volatile EmbeddingStore embeddingStore;
 
     /**
      * Initialize LLMProvider with separate chat and embedding models.
@@ -39,11 +58,119 @@ public class LLMProvider {
      * @param embedModelName
      */
     public LLMProvider(String provider, String apiKey, String baseUrl, String chatModelName, String embedModelName) {
-        log.info("Initializing LLMProvider with provider: {}, chatModel: {}, embedModel: {}, baseUrl: {}",
-                provider, chatModelName, embedModelName, baseUrl);
+        this(provider, apiKey, baseUrl, chatModelName, embedModelName, DEFAULT_EMBEDDING_BATCH_SIZE);
+    }
+
+    /**
+     * Initialize LLMProvider with separate chat and embedding models and an
+     * explicit cap on the number of inputs sent per embedding request.
+     *
+     * @param provider
+     * @param apiKey
+     * @param baseUrl
+     * @param chatModelName
+     * @param embedModelName
+     * @param maxEmbeddingBatchSize max inputs per multi-input embedding call
+     */
+    public LLMProvider(String provider, String apiKey, String baseUrl, String chatModelName, String embedModelName,
+            int maxEmbeddingBatchSize) {
+        this(PROFILE_DEFAULT, provider, apiKey, baseUrl, chatModelName, embedModelName, maxEmbeddingBatchSize);
+    }
+
+    /**
+     * Builds a provider configuration and atomically publishes it under the
+     * given profile. Calls already running keep using the snapshot they
+     * started with. The LOCAL provider only replaces the embedding model:
+     * chat stays with the profile's current provider.
+     *
+     * @param profile               registry name, e.g. PROFILE_DEFAULT or PROFILE_EXTRACTION
+     * @param provider
+     * @param apiKey
+     * @param baseUrl
+     * @param chatModelName
+     * @param embedModelName
+     * @param maxEmbeddingBatchSize max inputs per multi-input embedding call
+     */
+    public LLMProvider(String profile, String provider, String apiKey, String baseUrl, String chatModelName,
+            String embedModelName, int maxEmbeddingBatchSize) {
+        this(profile, provider, apiKey, baseUrl, chatModelName, embedModelName, maxEmbeddingBatchSize, null);
+    }
+
+    /**
+     * Like the profile constructor, but asks the embedding model for
+     * {@code embeddingDimensions}-dimensional vectors. When that exceeds the
+     * stored dimension ({@link EmbeddingDimensions#get()}), vectors are
+     * Matryoshka-truncated and renormalized before use.
+     *
+     * @param embeddingDimensions dimensions requested from the embedding model,
+     *                            or null for the stored dimension (Azure then
+     *                            omits the option and returns its native size)
+     */
+    public LLMProvider(String profile, String provider, String apiKey, String baseUrl, String chatModelName,
+            String embedModelName, int maxEmbeddingBatchSize, Integer embeddingDimensions) {
+        log.info("Initializing LLMProvider profile: {} with provider: {}, chatModel: {}, embedModel: {}, baseUrl: {}",
+                profile, provider, chatModelName, embedModelName, baseUrl);
+
+        ProviderSnapshot snapshot = buildSnapshot(profile, provider, apiKey, baseUrl, chatModelName, embedModelName,
+                maxEmbeddingBatchSize, embeddingDimensions);
+        ProviderSnapshot previous = ProviderRegistry.register(snapshot);
+
+        // Vectors from a different model (or endpoint) are never read again
+        if (PROFILE_DEFAULT.equals(profile) && (previous == null
+                || !previous.embeddingProvider().equals(snapshot.embeddingProvider())
+                || !previous.embeddingModelId().equals(snapshot.embeddingModelId()))) {
+            EmbeddingCache.invalidateAll();
+        }
+
+        log.info("LLMProvider initialized successfully");
+    }
+
+    /**
+     * Builds a provider and appends it to the fallback chain of an already
+     * configured profile. Chat calls on the profile are hedged to it after
+     * the hedge delay and fail over to it on server errors and timeouts;
+     * embedding calls do so only when it serves the same embedding model and
+     * dimensions as the primary. The fallback's chat model is probed before
+     * it joins the chain, so a misconfigured fallback never receives hedges.
+     *
+     * @return the profile's primary snapshot including the new fallback
+     */
+    public static ProviderSnapshot addFallback(String profile, String provider, String apiKey, String baseUrl,
+            String chatModelName, String embedModelName, int maxEmbeddingBatchSize, Integer embeddingDimensions) {
+        log.info("Adding fallback to profile: {} with provider: {}, chatModel: {}, embedModel: {}, baseUrl: {}",
+                profile, provider, chatModelName, embedModelName, baseUrl);
+        if (provider.equalsIgnoreCase("LOCAL")) {
+            // Its chat is the primary's, and its vectors never match a remote model's
+            throw new IllegalArgumentException("The LOCAL provider cannot be a fallback");
+        }
+
+        ProviderSnapshot fallback = buildSnapshot(profile, provider, apiKey, baseUrl, chatModelName,
+                embedModelName, maxEmbeddingBatchSize, embeddingDimensions);
+        try {
+            fallback.chatClient().prompt().user("Hello").call().content();
+        } catch (Exception e) {
+            log.error("Fallback probe failed: {}", e.getMessage());
+            throw new IllegalStateException("Fallback probe failed: " + e.getMessage(), e);
+        }
+        return ProviderRegistry.addFallback(fallback);
+    }
+
+    private static ProviderSnapshot buildSnapshot(String profile, String provider, String apiKey, String baseUrl,
+            String chatModelName, String embedModelName, int maxEmbeddingBatchSize, Integer requestedDimensions) {
+
+        if (maxEmbeddingBatchSize <= 0) {
+            throw new IllegalArgumentException("maxEmbeddingBatchSize must be positive");
+        }
+        int storedDimensions = EmbeddingDimensions.get();
+        int embeddingDimensions = requestedDimensions != null ? requestedDimensions : storedDimensions;
+        if (embeddingDimensions < storedDimensions) {
+            throw new IllegalArgumentException("embeddingDimensions " + embeddingDimensions
+                    + " is smaller than the stored embedding dimension " + storedDimensions);
+        }
 
         try {
             ChatModel chatModel;
+            EmbeddingModel embeddingModel;
 
             switch (provider.toUpperCase()) {
                 case "GEMINI":
@@ -54,19 +181,20 @@ public class LLMProvider {
                     OpenAiApi geminiApi = OpenAiApi.builder()
                             .baseUrl(geminiBaseUrl)
                             .apiKey(apiKey)
+                            .responseErrorHandler(new RetryAfterErrorHandler())
                             .build();
 
                     embeddingModel = new OpenAiEmbeddingModel(geminiApi, MetadataMode.EMBED,
                             OpenAiEmbeddingOptions.builder()
                                     .model(embedModelName)
-                                    .dimensions(768)
+                                    .dimensions(embeddingDimensions)
                                     .build(),
-                            RetryTemplate.builder().build());
+                            providerRetryTemplate());
 
                     chatModel = OpenAiChatModel.builder()
                             .openAiApi(geminiApi)
                             .defaultOptions(OpenAiChatOptions.builder().model(chatModelName).build())
-                            .retryTemplate(RetryTemplate.builder().build())
+                            .retryTemplate(providerRetryTemplate())
                             .observationRegistry(ObservationRegistry.NOOP)
                             .build();
                     break;
@@ -74,19 +202,20 @@ public class LLMProvider {
                     String openaiBaseUrl = (baseUrl == null || baseUrl.isBlank())
                             ? "https://api.openai.com/"
                             : baseUrl;
-                    OpenAiApi openAiApi = OpenAiApi.builder().baseUrl(openaiBaseUrl).apiKey(apiKey).build();
+                    OpenAiApi openAiApi = OpenAiApi.builder().baseUrl(openaiBaseUrl).apiKey(apiKey)
+                            .responseErrorHandler(new RetryAfterErrorHandler()).build();
 
                     embeddingModel = new OpenAiEmbeddingModel(openAiApi, MetadataMode.EMBED,
                             OpenAiEmbeddingOptions.builder()
                                     .model(embedModelName)
-                                    .dimensions(768)
+                                    .dimensions(embeddingDimensions)
                                     .build(),
-                            RetryTemplate.builder().build());
+                            providerRetryTemplate());
 
                     chatModel = OpenAiChatModel.builder()
                             .openAiApi(openAiApi)
                             .defaultOptions(OpenAiChatOptions.builder().model(chatModelName).build())
-                            .retryTemplate(RetryTemplate.builder().build())
+                            .retryTemplate(providerRetryTemplate())
                             .observationRegistry(ObservationRegistry.NOOP)
                             .build();
                     break;
@@ -101,19 +230,20 @@ public class LLMProvider {
                     } else {
                         compatBaseUrl = "https://openrouter.ai/api";
                     }
-                    OpenAiApi compatApi = OpenAiApi.builder().baseUrl(compatBaseUrl).apiKey(apiKey).build();
+                    OpenAiApi compatApi = OpenAiApi.builder().baseUrl(compatBaseUrl).apiKey(apiKey)
+                            .responseErrorHandler(new RetryAfterErrorHandler()).build();
 
                     embeddingModel = new OpenAiEmbeddingModel(compatApi, MetadataMode.EMBED,
                             OpenAiEmbeddingOptions.builder()
                                     .model(embedModelName)
-                                    .dimensions(768)
+                                    .dimensions(embeddingDimensions)
                                     .build(),
-                            RetryTemplate.builder().build());
+                            providerRetryTemplate());
 
                     chatModel = OpenAiChatModel.builder()
                             .openAiApi(compatApi)
                             .defaultOptions(OpenAiChatOptions.builder().model(chatModelName).build())
-                            .retryTemplate(RetryTemplate.builder().build())
+                            .retryTemplate(providerRetryTemplate())
                             .observationRegistry(ObservationRegistry.NOOP)
                             .build();
                     break;
@@ -128,7 +258,9 @@ public class LLMProvider {
 
                     embeddingModel = new AzureOpenAiEmbeddingModel(azClientBuilder.buildClient(),
                             MetadataMode.EMBED,
-                            AzureOpenAiEmbeddingOptions.builder().deploymentName(embedModelName).build(),
+                            // Sent only when asked for; ada-002 deployments reject the option
+                            AzureOpenAiEmbeddingOptions.builder().deploymentName(embedModelName)
+                                    .dimensions(requestedDimensions).build(),
                             ObservationRegistry.NOOP);
 
                     chatModel = AzureOpenAiChatModel.builder()
@@ -137,20 +269,67 @@ public class LLMProvider {
                             .observationRegistry(ObservationRegistry.NOOP)
                             .build();
                     break;
+                case "LOCAL":
+                    // In-process ONNX model (cortex.llm.local.*): no API key and no network.
+                    // It only embeds; chat stays with the model this profile already has
+                    embeddingModel = LocalEmbeddingModel.load();
+                    chatModel = prompt -> {
+                        throw new IllegalStateException("The LOCAL provider only serves embeddings; configure a "
+                                + "chat provider on profile '" + profile + "' before switching it to LOCAL");
+                    };
+                    break;
+                case "STUB":
+                    // Deterministic offline models for load tests and benchmarks
+                    embeddingModel = new StubEmbeddingModel(embeddingDimensions);
+                    chatModel = new StubChatModel();
+                    break;
                 default:
                     throw new IllegalArgumentException("Unsupported provider: " + provider);
             }
 
-            // Build ChatClient
-            chatClient = ChatClient.builder(chatModel).build();
+            // Covers Azure without the dimensions option, LOCAL, and models that ignore it
+            embeddingModel = new MatryoshkaEmbeddingModel(embeddingModel, storedDimensions);
 
-            log.info("LLMProvider initialized successfully");
+            // All calls to this provider share its concurrency and rate limits
+            LLMRateLimiter limiter = LLMRateLimiter.forProvider(provider.toUpperCase());
+            embeddingModel = new RateLimitedEmbeddingModel(embeddingModel, limiter);
+            chatModel = new RateLimitedChatModel(chatModel, limiter);
+
+            String providerName = provider.toUpperCase();
+            ChatClient chatClient = ChatClient.builder(chatModel).build();
+            String chatModelId = providerName + "/" + chatModelName + "@" + baseUrl;
+            String embeddingEndpoint = baseUrl;
+            if (providerName.equals("LOCAL")) {
+                embeddingEndpoint = LocalEmbeddingModel.settings().modelPath();
+                ProviderSnapshot current = ProviderRegistry.get(profile);
+                if (current != null) {
+                    chatClient = current.chatClient();
+                    chatModelId = current.chatModelId();
+                }
+            }
+            return new ProviderSnapshot(
+                    profile,
+                    chatClient,
+                    embeddingModel,
+                    chatModelId,
+                    providerName,
+                    embedModelName + "#" + embeddingDimensions + ">" + storedDimensions + "@" + embeddingEndpoint,
+                    maxEmbeddingBatchSize);
         } catch (Exception e) {
             log.error("Failed to initialize LLMProvider: {}", e.getMessage());
             throw new IllegalStateException("LLMProvider initialization failed: " + e.getMessage(), e);
         }
     }
 
+    // 429s are left to LLMRateLimiter, which honours Retry-After; retrying them
+    // here immediately would only deepen the throttling
+    private static RetryTemplate providerRetryTemplate() {
+        return RetryTemplate.builder()
+                .notRetryOn(LlmRateLimitedException.class)
+                .traversingCauses()
+                .build();
+    }
+
     /**
      * Legacy constructor for backward compatibility.
      * Uses the same model for both chat and embeddings.
@@ -163,33 +342,147 @@ public class LLMProvider {
         this(provider, apiKey, baseUrl, model, model);
     }
 
+    /**
+     * Registers the durable embedding tier consulted on in-process cache
+     * misses. Pass null to disable it.
+     */
+    public static void setEmbeddingStore(EmbeddingStore store) {
+        embeddingStore = store;
+    }
+
     public static float[] getEmbedding(String text) {
         log.debug("Generating embedding for text");
 
         try {
-            if (embeddingModel == null) {
-                throw new IllegalStateException("EmbeddingModel not initialized");
-            }
-            return embeddingModel.embed(text);
+            ProviderSnapshot snapshot = embeddingSnapshot();
+            return EmbeddingCache.get(snapshot.embeddingProvider(), snapshot.embeddingModelId(), text,
+                    t -> loadEmbeddings(snapshot, List.of(t)).get(0));
         } catch (Exception e) {
             log.error("Embedding generation failed: {}", e.getMessage());
             throw new IllegalArgumentException("Embedding generation failed: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Generates embeddings for several texts using the provider's native
+     * multi-input embedding call. Cached texts are skipped; the rest are split
+     * into requests of at most the configured batch size. Results are returned
+     * in input order.
+     */
+    public static List<float[]> getEmbeddings(List<String> texts) {
+        log.debug("Generating embeddings for {} texts", texts.size());
+
+        try {
+            ProviderSnapshot snapshot = embeddingSnapshot();
+            return EmbeddingCache.getAll(snapshot.embeddingProvider(), snapshot.embeddingModelId(), texts,
+                    missing -> loadEmbeddings(snapshot, missing));
+        } catch (Exception e) {
+            log.error("Batch embedding generation failed: {}", e.getMessage());
+            throw new IllegalArgumentException("Embedding generation failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Embeddings always come from the default profile: vectors written by one
+     * model cannot be searched with another.
+     */
+    private static ProviderSnapshot embeddingSnapshot() {
+        ProviderSnapshot snapshot = ProviderRegistry.getDefault();
+        if (snapshot == null || snapshot.embeddingModel() == null) {
+            throw new IllegalStateException("EmbeddingModel not initialized");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Loads embeddings that missed the in-process cache: first from the
+     * persistent store in one batched read, then from the provider for
+     * whatever is still missing. New vectors are written back to the store.
+     */
+    private static List<float[]> loadEmbeddings(ProviderSnapshot snapshot, List<String> texts) {
+        EmbeddingStore store = embeddingStore;
+        String storeModelId = snapshot.embeddingProvider() + "/" + snapshot.embeddingModelId();
+
+        List<String> hashes = texts.stream().map(EmbeddingCache::sha256).toList();
+        Map<String, float[]> stored = Map.of();
+        if (store != null) {
+            try {
+                stored = store.findAll(storeModelId, new HashSet<>(hashes));
+            } catch (Exception e) {
+                log.warn("Embedding store lookup failed, falling back to provider: {}", e.getMessage());
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!stored.containsKey(hashes.get(i))) {
+                missing.add(texts.get(i));
+            }
+        }
+
+        List<float[]> fetched = missing.isEmpty()
+                ? List.of()
+                : LLMHedger.call(LLMHedger.CallType.EMBEDDING, snapshot.embeddingChain(),
+                        provider -> fetchEmbeddings(provider, missing));
+
+        Map<String, float[]> fetchedByHash = new HashMap<>();
+        for (int i = 0; i < missing.size(); i++) {
+            fetchedByHash.put(EmbeddingCache.sha256(missing.get(i)), fetched.get(i));
+        }
+        if (store != null && !fetchedByHash.isEmpty()) {
+            try {
+                store.saveAll(storeModelId, fetchedByHash);
+            } catch (Exception e) {
+                log.warn("Embedding store write failed: {}", e.getMessage());
+            }
+        }
+
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (String hash : hashes) {
+            float[] vector = stored.get(hash);
+            embeddings.add(vector != null ? vector : fetchedByHash.get(hash));
+        }
+        return embeddings;
+    }
+
+    private static List<float[]> fetchEmbeddings(ProviderSnapshot provider, List<String> texts) {
+        EmbeddingModel model = provider.embeddingModel();
+        int batchSize = provider.embeddingBatchSize();
+        if (texts.size() == 1) {
+            // Lone misses (typically query embeddings) are coalesced across callers
+            return List.of(EmbeddingBatcher.embed(model, texts.get(0)));
+        }
+        List<float[]> fetched = new ArrayList<>(texts.size());
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            fetched.addAll(model.embed(texts.subList(from, Math.min(from + batchSize, texts.size()))));
+        }
+        return fetched;
+    }
+
     public static String callLLM(String prompt) {
-        log.debug("Calling LLM with prompt");
+        return callLLM(PROFILE_DEFAULT, prompt);
+    }
+
+    /**
+     * Calls the chat model registered under the given profile, falling back
+     * to the default profile when that profile is not configured.
+     */
+    public static String callLLM(String profile, String prompt) {
+        log.debug("Calling LLM with prompt (profile: {})", profile);
 
         try {
-            if (chatClient == null) {
+            ProviderSnapshot snapshot = ProviderRegistry.get(profile);
+            if (snapshot == null) {
                 throw new IllegalStateException("ChatClient not initialized");
             }
 
-            ChatResponse chatResponse = chatClient
-                    .prompt()
-                    .user(prompt)
-                    .call()
-                    .chatResponse();
+            // Hedged to the profile's fallbacks when the primary is slow or failing
+            ChatResponse chatResponse = LLMHedger.call(LLMHedger.CallType.CHAT, snapshot.chain(),
+                    provider -> provider.chatClient()
+                            .prompt()
+                            .user(prompt)
+                            .call()
+                            .chatResponse());
 
             return chatResponse.getResult().getOutput().getText();
         } catch (Exception e) {
@@ -197,4 +490,89 @@ public class LLMProvider {
             throw new IllegalArgumentException("LLM Call failed: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Calls the chat model, optionally serving the response from the
+     * response cache. Only pass cacheable = true for prompts that ask for a
+     * decision (classification, branch selection) rather than generated text.
+     */
+    public static String callLLM(String prompt, boolean cacheable) {
+        return callLLM(PROFILE_DEFAULT, prompt, cacheable);
+    }
+
+    /**
+     * Profile-aware variant of {@link #callLLM(String, boolean)}.
+     */
+    public static String callLLM(String profile, String prompt, boolean cacheable) {
+        if (!cacheable) {
+            return callLLM(profile, prompt);
+        }
+        ProviderSnapshot snapshot = ProviderRegistry.get(profile);
+        if (snapshot == null) {
+            throw new IllegalArgumentException("LLM Call failed: ChatClient not initialized");
+        }
+        return LLMResponseCache.get(snapshot.chatModelId(), prompt, p -> callLLM(profile, p));
+    }
+
+    /**
+     * Streams the chat model's answer as it is generated. Each element is a
+     * content fragment (one or more tokens); cancelling the subscription
+     * aborts the provider request.
+     */
+    public static Flux<String> streamLLM(String prompt) {
+        return streamLLM(PROFILE_DEFAULT, prompt);
+    }
+
+    /**
+     * Profile-aware variant of {@link #streamLLM(String)}. Streams are served
+     * by the profile's primary provider only; they are not hedged.
+     */
+    public static Flux<String> streamLLM(String profile, String prompt) {
+        log.debug("Streaming LLM response for prompt (profile: {})", profile);
+
+        ProviderSnapshot snapshot = ProviderRegistry.get(profile);
+        if (snapshot == null) {
+            return Flux.error(new IllegalArgumentException("LLM Stream failed: ChatClient not initialized"));
+        }
+
+        return snapshot.chatClient()
+                .prompt()
+                .user(prompt)
+                .stream()
+                .content()
+                .onErrorMap(e -> !(e instanceof IllegalArgumentException), e -> {
+                    log.error("LLM Stream failed: {}", e.getMessage());
+                    return new IllegalArgumentException("LLM Stream failed: " + e.getMessage(), e);
+                });
+    }
+
+    /**
+     * Non-blocking variant of {@link #callLLM(String)}, run on a virtual
+     * thread. Cancelling the future interrupts the call; it fails with a
+     * TimeoutException after the configured async timeout.
+     */
+    public static CompletableFuture<String> callLLMAsync(String prompt) {
+        return LLMAsync.supply(() -> callLLM(prompt));
+    }
+
+    /**
+     * Non-blocking variant of {@link #callLLM(String, boolean)}.
+     */
+    public static CompletableFuture<String> callLLMAsync(String prompt, boolean cacheable) {
+        return LLMAsync.supply(() -> callLLM(prompt, cacheable));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getEmbedding(String)}.
+     */
+    public static CompletableFuture<float[]> embedAsync(String text) {
+        return LLMAsync.supply(() -> getEmbedding(text));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getEmbeddings(List)}.
+     */
+    public static CompletableFuture<List<float[]>> embedAsync(List<String> texts) {
+        return LLMAsync.supply(() -> getEmbeddings(texts));
+    }
 }
@@ -0,0 +1,453 @@
+package com.vectornode.memory.config;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaderName;
+import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import com.vectornode.memory.setup.exception.custom.LlmRateLimitedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Per-provider admission control for LLM calls.
+ *
+ * Each lane (see {@link LLMLane}) has its own AIMD concurrency limit: +1/limit
+ * per success, multiplied by the backoff ratio on every 429. Both lanes share
+ * request and token buckets (RPM/TPM), but ingestion may not draw them below
+ * the query reserve. A 429 pauses the whole provider for the Retry-After
+ * period. Ingestion calls then retry; query calls retry only once, and only
+ * for short pauses.
+ */
+@Slf4j
+public final class LLMRateLimiter {
+
+    public static final String METRIC_PREFIX = "llm.limiter";
+
+    /**
+     * Limiter tunables, shared by every provider.
+     *
+     * @param requestsPerMinute 0 disables the request bucket
+     * @param tokensPerMinute   0 disables the token bucket
+     * @param queryReserve      fraction of each bucket only the query lane may use
+     */
+    public record Settings(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            int requestsPerMinute, long tokensPerMinute, double queryReserve,
+            Duration queryAcquireTimeout, Duration ingestionAcquireTimeout,
+            Duration maxQueryRetryWait, int maxIngestionRetries, Duration defaultRetryAfter) {
+
+        public static Settings defaults() {
+            return new Settings(8, 1, 64, 0.5, 0, 0, 0.2,
+                    Duration.ofSeconds(10), Duration.ofMinutes(5),
+                    Duration.ofSeconds(2), 5, Duration.ofSeconds(1));
+        }
+    }
+
+    private static final Map<String, LLMRateLimiter> limiters = new ConcurrentHashMap<>();
+    private static volatile Settings defaultSettings = Settings.defaults();
+    private static volatile MeterRegistry meterRegistry;
+
+    private final String provider;
+    private final Settings settings;
+    private final Map<LLMLane, AdaptiveLimit> limits = new EnumMap<>(LLMLane.class);
+    private final Map<LLMLane, Counter> throttled = new EnumMap<>(LLMLane.class);
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+
+    // Provider-wide pause after a 429, as System.nanoTime()
+    private volatile long pausedUntil = System.nanoTime();
+
+    private LLMRateLimiter(String provider, Settings settings) {
+        this.provider = provider;
+        this.settings = settings;
+        for (LLMLane lane : LLMLane.values()) {
+            limits.put(lane, new AdaptiveLimit(settings.initialLimit(), settings.minLimit(), settings.maxLimit(),
+                    settings.backoffRatio()));
+        }
+        this.requestBucket = settings.requestsPerMinute() > 0 ? new TokenBucket(settings.requestsPerMinute()) : null;
+        this.tokenBucket = settings.tokensPerMinute() > 0 ? new TokenBucket(settings.tokensPerMinute()) : null;
+    }
+
+    /**
+     * Sets the tunables for limiters created from now on. Providers are
+     * configured before any LLMProvider is built, so this normally covers all.
+     */
+    public static void configure(Settings settings) {
+        defaultSettings = settings;
+        log.info("LLM rate limiter configured: {}", settings);
+    }
+
+    /**
+     * Exports {@value #METRIC_PREFIX}.limit, .inflight and .throttled, tagged
+     * by provider and lane.
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        meterRegistry = registry;
+        limiters.values().forEach(limiter -> limiter.registerMetrics(registry));
+    }
+
+    public static LLMRateLimiter forProvider(String provider) {
+        return limiters.computeIfAbsent(provider, p -> {
+            LLMRateLimiter limiter = new LLMRateLimiter(p, defaultSettings);
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                limiter.registerMetrics(registry);
+            }
+            return limiter;
+        });
+    }
+
+    /**
+     * Runs a blocking provider call once the current lane has capacity.
+     *
+     * @param estimatedTokens rough prompt size, charged against the TPM bucket
+     */
+    public <T> T execute(long estimatedTokens, Supplier<T> call) {
+        LLMLane lane = LLMLane.current();
+        AdaptiveLimit limit = limits.get(lane);
+
+        for (int attempt = 0;; attempt++) {
+            acquire(lane, estimatedTokens);
+            try {
+                T result = call.get();
+                limit.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                Duration retryAfter = throttleDelay(e);
+                if (retryAfter == null) {
+                    limit.onFailure();
+                    throw e;
+                }
+
+                limit.onThrottled();
+                onRateLimited(lane, retryAfter);
+                if (!shouldRetry(lane, attempt, retryAfter)) {
+                    throw e instanceof LlmRateLimitedException ? e
+                            : new LlmRateLimitedException("Provider rate limit exceeded: " + e.getMessage(),
+                                    retryAfter, e);
+                }
+                log.warn("LLM_THROTTLED | provider={} | lane={} | attempt={} | retry_after_ms={}",
+                        provider, lane, attempt + 1, retryAfter.toMillis());
+            } catch (Throwable e) {
+                // Errors must give the permit back too, or the lane limit drifts towards 0
+                limit.onFailure();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #execute}. The permit is held until the
+     * stream terminates or is cancelled. Streams are not retried, because
+     * tokens may already have been delivered.
+     */
+    public <T> Flux<T> executeStream(long estimatedTokens, Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            LLMLane lane = LLMLane.current();
+            AdaptiveLimit limit = limits.get(lane);
+            acquire(lane, estimatedTokens);
+
+            Flux<T> stream;
+            try {
+                stream = call.get();
+            } catch (Throwable e) {
+                // No stream to attach the release to
+                Duration retryAfter = throttleDelay(e);
+                if (retryAfter != null) {
+                    limit.onThrottled();
+                    onRateLimited(lane, retryAfter);
+                } else {
+                    limit.onFailure();
+                }
+                throw e;
+            }
+
+            AtomicBoolean wasThrottled = new AtomicBoolean();
+            return stream
+                    .doOnError(e -> {
+                        Duration retryAfter = throttleDelay(e);
+                        if (retryAfter != null) {
+                            wasThrottled.set(true);
+                            onRateLimited(lane, retryAfter);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (wasThrottled.get()) {
+                            limit.onThrottled();
+                        } else if (signal == SignalType.ON_ERROR) {
+                            limit.onFailure();
+                        } else {
+                            limit.onSuccess();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Current concurrency limit of the lane, rounded down.
+     */
+    public int currentLimit(LLMLane lane) {
+        return limits.get(lane).limit();
+    }
+
+    private void acquire(LLMLane lane, long estimatedTokens) {
+        Duration timeout = lane == LLMLane.QUERY ? settings.queryAcquireTimeout()
+                : settings.ingestionAcquireTimeout();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        double reserve = lane == LLMLane.QUERY ? 0 : settings.queryReserve();
+
+        try {
+            sleepUntil(pausedUntil, deadline);
+            acquireFrom(requestBucket, 1, reserve, deadline);
+            acquireFrom(tokenBucket, Math.max(1, estimatedTokens), reserve, deadline);
+            if (!limits.get(lane).acquire(deadline)) {
+                throw capacityTimeout(lane, timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmProviderException("Interrupted while waiting for " + provider + " capacity", e);
+        }
+    }
+
+    private void acquireFrom(TokenBucket bucket, double amount, double reserve, long deadline)
+            throws InterruptedException {
+        if (bucket == null) {
+            return;
+        }
+        long waitNanos;
+        while ((waitNanos = bucket.tryAcquire(amount, reserve)) > 0) {
+            if (System.nanoTime() + waitNanos > deadline) {
+                throw new LlmRateLimitedException("Local rate limit for " + provider + " exhausted",
+                        Duration.ofNanos(waitNanos));
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void sleepUntil(long until, long deadline) throws InterruptedException {
+        long waitNanos = until - System.nanoTime();
+        if (waitNanos <= 0) {
+            return;
+        }
+        if (until > deadline) {
+            throw new LlmRateLimitedException(provider + " is rate limited", Duration.ofNanos(waitNanos));
+        }
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    private LlmRateLimitedException capacityTimeout(LLMLane lane, Duration timeout) {
+        return new LlmRateLimitedException("No " + lane + " capacity for " + provider + " within "
+                + timeout.toMillis() + "ms", null);
+    }
+
+    private void onRateLimited(LLMLane lane, Duration retryAfter) {
+        long until = System.nanoTime() + retryAfter.toNanos();
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        Counter counter = throttled.get(lane);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private boolean shouldRetry(LLMLane lane, int attempt, Duration retryAfter) {
+        if (lane == LLMLane.INGESTION) {
+            return attempt < settings.maxIngestionRetries();
+        }
+        return attempt == 0 && retryAfter.compareTo(settings.maxQueryRetryWait()) <= 0;
+    }
+
+    /**
+     * Returns how long to back off if the error is a provider 429, or null
+     * for any other failure.
+     */
+    private Duration throttleDelay(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            Duration hint = null;
+            boolean rateLimited = false;
+
+            if (e instanceof LlmRateLimitedException rle) {
+                rateLimited = true;
+                hint = rle.getRetryAfter();
+            } else if (e instanceof HttpClientErrorException.TooManyRequests tooMany) {
+                rateLimited = true;
+                hint = headersRetryAfter(tooMany.getResponseHeaders());
+            } else if (e instanceof WebClientResponseException wcre
+                    && wcre.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                rateLimited = true;
+                hint = headersRetryAfter(wcre.getHeaders());
+            } else if (e instanceof HttpResponseException azure && azure.getResponse() != null
+                    && azure.getResponse().getStatusCode() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                rateLimited = true;
+                HttpHeaders headers = new HttpHeaders();
+                String retryAfter = azure.getResponse().getHeaders().getValue(HttpHeaderName.RETRY_AFTER);
+                if (retryAfter != null) {
+                    headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+                }
+                hint = RetryAfterErrorHandler.parseRetryAfter(headers);
+            }
+
+            if (rateLimited) {
+                return hint != null ? hint : settings.defaultRetryAfter();
+            }
+        }
+        return null;
+    }
+
+    private static Duration headersRetryAfter(HttpHeaders headers) {
+        return headers != null ? RetryAfterErrorHandler.parseRetryAfter(headers) : null;
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        for (LLMLane lane : LLMLane.values()) {
+            AdaptiveLimit limit = limits.get(lane);
+            String laneTag = lane.name().toLowerCase();
+            Gauge.builder(METRIC_PREFIX + ".limit", limit, AdaptiveLimit::limit)
+                    .tags("provider", provider, "lane", laneTag)
+                    .register(registry);
+            Gauge.builder(METRIC_PREFIX + ".inflight", limit, AdaptiveLimit::inFlight)
+                    .tags("provider", provider, "lane", laneTag)
+                    .register(registry);
+            throttled.put(lane, Counter.builder(METRIC_PREFIX + ".throttled")
+                    .tags("provider", provider, "lane", laneTag)
+                    .register(registry));
+        }
+    }
+
+    /**
+     * AIMD concurrency limit. Uses a ReentrantLock rather than monitors so that
+     * waiting virtual threads do not pin their carrier.
+     */
+    static final class AdaptiveLimit {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private final int min;
+        private final int max;
+        private final double backoffRatio;
+        private double limit;
+        private int inFlight;
+
+        AdaptiveLimit(int initial, int min, int max, double backoffRatio) {
+            this.min = min;
+            this.max = max;
+            this.backoffRatio = backoffRatio;
+            this.limit = initial;
+        }
+
+        boolean acquire(long deadline) throws InterruptedException {
+            lock.lock();
+            try {
+                while (inFlight >= (int) limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    released.awaitNanos(remaining);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onSuccess() {
+            release(Math.min(max, limit + 1.0 / limit));
+        }
+
+        void onThrottled() {
+            release(Math.max(min, limit * backoffRatio));
+        }
+
+        void onFailure() {
+            release(limit);
+        }
+
+        int limit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(double newLimit) {
+            lock.lock();
+            try {
+                inFlight--;
+                limit = newLimit;
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Token bucket refilled continuously at capacity-per-minute.
+     */
+    static final class TokenBucket {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final double capacity;
+        private final double refillPerNano;
+        private double available;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double capacityPerMinute) {
+            this.capacity = capacityPerMinute;
+            this.refillPerNano = capacityPerMinute / TimeUnit.MINUTES.toNanos(1);
+            this.available = capacityPerMinute;
+        }
+
+        /**
+         * Takes the amount if that leaves at least reserve * capacity in the
+         * bucket. Returns 0 on success, otherwise the nanos until it would fit.
+         */
+        long tryAcquire(double amount, double reserve) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+                lastRefill = now;
+
+                double floor = capacity * reserve;
+                // A single request larger than the usable bucket would otherwise never fit
+                double needed = Math.min(amount, capacity - floor);
+                if (available - needed >= floor) {
+                    available -= needed;
+                    return 0;
+                }
+                return Math.max(1, (long) ((needed + floor - available) / refillPerNano));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.vectornode.memory.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * TTL-bounded cache of chat responses, keyed by (chat model, SHA-256 of the
+ * prompt).
+ *
+ * Only for prompts whose answer is a deterministic decision (routing
+ * classification, branch selection); generative calls must bypass it.
+ * Concurrent misses for the same prompt share a single LLM call.
+ */
+@Slf4j
+public final class LLMResponseCache {
+
+    public static final String METRIC_NAME = "llm.response.cache";
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+    public static final long DEFAULT_MAX_SIZE = 10_000;
+
+    private static volatile AsyncCache<Key, String> cache = build(DEFAULT_TTL, DEFAULT_MAX_SIZE);
+
+    private LLMResponseCache() {
+    }
+
+    public record Key(String chatModel, String promptHash) {
+    }
+
+    /**
+     * Rebuilds the cache. Existing entries are dropped.
+     *
+     * @param ttl     how long a response stays cached after it was produced
+     * @param maxSize max number of cached responses; 0 disables caching
+     */
+    public static void configure(Duration ttl, long maxSize) {
+        cache = build(ttl, maxSize);
+        log.info("LLM response cache configured with ttl={}, maxSize={}", ttl, maxSize);
+    }
+
+    /**
+     * Exports the standard cache metrics under {@value #METRIC_NAME}, plus
+     * {@value #METRIC_NAME}.hit.ratio.
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, METRIC_NAME);
+        Gauge.builder(METRIC_NAME + ".hit.ratio", () -> cache.synchronous().stats().hitRate())
+                .description("Fraction of cacheable LLM calls served from cache")
+                .register(registry);
+    }
+
+    public static void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Returns the cached response for the prompt, calling the loader on a miss.
+     */
+    public static String get(String chatModel, String prompt, Function<String, String> loader) {
+        Key key = new Key(chatModel, EmbeddingCache.sha256(prompt));
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> future = cache.get(key, (k, executor) -> created);
+
+        if (future == created) {
+            try {
+                created.complete(loader.apply(prompt));
+            } catch (RuntimeException e) {
+                // Failed futures are dropped by Caffeine, so the next caller retries
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    private static AsyncCache<Key, String> build(Duration ttl, long maxSize) {
+        return Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(Math.max(0, maxSize))
+                .recordStats()
+                .buildAsync();
+    }
+}
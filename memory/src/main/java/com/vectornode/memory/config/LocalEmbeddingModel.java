@@ -0,0 +1,203 @@
+package com.vectornode.memory.config;
+
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.transformers.TransformersEmbeddingModel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedding model for the LOCAL provider: a sentence-embedding model run
+ * in-process through ONNX Runtime, so embeddings need neither an API key
+ * nor the network (cortex.llm.local.*).
+ *
+ * Inputs are split into batches of batch-size texts, one ONNX run each, on
+ * a fixed pool of inference threads. The pool's queue is bounded; when it
+ * is full, callers wait for room, so a burst of ingestion queues up instead
+ * of oversubscribing the CPU.
+ */
+@Slf4j
+public class LocalEmbeddingModel implements EmbeddingModel {
+
+    public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final String DEFAULT_MODEL_OUTPUT_NAME = "last_hidden_state";
+
+    /**
+     * @param modelPath       ONNX model file
+     * @param tokenizerPath   HuggingFace tokenizer.json; blank for the one
+     *                        next to the model
+     * @param modelOutputName model output holding the token embeddings, which
+     *                        are mean-pooled into one vector per text
+     * @param threads         inference threads
+     * @param batchSize       texts per ONNX run
+     * @param queueCapacity   batches waiting for an inference thread
+     */
+    public record Settings(String modelPath, String tokenizerPath, String modelOutputName, int threads,
+            int batchSize, int queueCapacity) {
+
+        public Settings {
+            if (threads <= 0 || batchSize <= 0 || queueCapacity <= 0) {
+                throw new IllegalArgumentException("Local embedding threads, batch size and queue capacity "
+                        + "must be positive");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(null, null, DEFAULT_MODEL_OUTPUT_NAME, DEFAULT_THREADS, DEFAULT_BATCH_SIZE,
+                    DEFAULT_QUEUE_CAPACITY);
+        }
+
+        Path model() {
+            if (modelPath == null || modelPath.isBlank()) {
+                throw new IllegalStateException("The LOCAL provider needs cortex.llm.local.model-path");
+            }
+            return Path.of(modelPath).toAbsolutePath();
+        }
+
+        Path tokenizer() {
+            return tokenizerPath == null || tokenizerPath.isBlank()
+                    ? model().resolveSibling("tokenizer.json")
+                    : Path.of(tokenizerPath).toAbsolutePath();
+        }
+    }
+
+    private static volatile Settings settings = Settings.defaults();
+    // Loading a model takes seconds and its session holds it in memory, so
+    // reconfiguring the provider reuses the model already loaded
+    private static final Map<Settings, LocalEmbeddingModel> loaded = new ConcurrentHashMap<>();
+
+    private final EmbeddingModel delegate;
+    private final int batchSize;
+    private final ExecutorService executor;
+
+    /**
+     * Runs {@code delegate} on the inference pool; {@link #load()} passes the
+     * ONNX model, tests a fake.
+     */
+    public LocalEmbeddingModel(EmbeddingModel delegate, int threads, int batchSize, int queueCapacity) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().daemon().name("local-embed-", 0).factory(),
+                (task, full) -> {
+                    try {
+                        full.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for an inference thread");
+                    }
+                });
+    }
+
+    public static void configure(Settings settings) {
+        LocalEmbeddingModel.settings = settings;
+    }
+
+    public static Settings settings() {
+        return settings;
+    }
+
+    /**
+     * The model for the configured settings, loaded on first use.
+     *
+     * @throws IllegalStateException if no model path is configured or the
+     *                               model cannot be loaded
+     */
+    public static LocalEmbeddingModel load() {
+        Settings current = settings;
+        return loaded.computeIfAbsent(current, s -> new LocalEmbeddingModel(onnx(s), s.threads(), s.batchSize(),
+                s.queueCapacity()));
+    }
+
+    private static EmbeddingModel onnx(Settings settings) {
+        Path model = settings.model();
+        Path tokenizer = settings.tokenizer();
+        if (!Files.isRegularFile(model) || !Files.isRegularFile(tokenizer)) {
+            throw new IllegalStateException("Local embedding model " + model + " or tokenizer " + tokenizer
+                    + " not found");
+        }
+        log.info("Loading local embedding model {} (tokenizer {}, {} threads, batch size {})", model, tokenizer,
+                settings.threads(), settings.batchSize());
+
+        TransformersEmbeddingModel onnx = new TransformersEmbeddingModel(MetadataMode.EMBED,
+                ObservationRegistry.NOOP);
+        onnx.setModelResource(model.toUri().toString());
+        onnx.setTokenizerResource(tokenizer.toUri().toString());
+        onnx.setModelOutputName(settings.modelOutputName());
+        // Batches are padded to their longest text and cut at the model's limit
+        onnx.setTokenizerOptions(Map.of("padding", "true", "truncation", "true"));
+        // Both files are local already; the cache only helps for remote resources
+        onnx.setDisableCaching(true);
+        try {
+            onnx.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load local embedding model " + model + ": " + e.getMessage(),
+                    e);
+        }
+        return onnx;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        List<CompletableFuture<EmbeddingResponse>> batches = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            EmbeddingRequest batch = new EmbeddingRequest(
+                    texts.subList(from, Math.min(from + batchSize, texts.size())), request.getOptions());
+            batches.add(CompletableFuture.supplyAsync(() -> delegate.call(batch), executor));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (CompletableFuture<EmbeddingResponse> batch : batches) {
+            for (Embedding embedding : join(batch).getResults()) {
+                embeddings.add(new Embedding(embedding.getOutput(), embeddings.size()));
+            }
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return join(CompletableFuture.supplyAsync(() -> delegate.embed(document), executor));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.vectornode.memory.config;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EmbeddingModel decorator that truncates every vector to a fixed dimension
+ * and renormalizes it (Matryoshka representation). Vectors that already have
+ * that dimension pass through unchanged.
+ */
+public class MatryoshkaEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final int dimensions;
+
+    public MatryoshkaEmbeddingModel(EmbeddingModel delegate, int dimensions) {
+        this.delegate = delegate;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        EmbeddingResponse response = delegate.call(request);
+        List<Embedding> truncated = new ArrayList<>(response.getResults().size());
+        for (Embedding embedding : response.getResults()) {
+            truncated.add(new Embedding(EmbeddingDimensions.truncate(embedding.getOutput(), dimensions),
+                    embedding.getIndex(), embedding.getMetadata()));
+        }
+        return new EmbeddingResponse(truncated, response.getMetadata());
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return EmbeddingDimensions.truncate(delegate.embed(document), dimensions);
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+}
@@ -0,0 +1,156 @@
+package com.vectornode.memory.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Postgres-backed EmbeddingStore using the Flyway-managed embedding_cache
+ * table.
+ *
+ * Statements run outside any caller transaction so a cache failure can never
+ * abort an ingestion transaction. Reads refresh last_accessed_at at most once
+ * per hour per row, which keeps the LRU sweep accurate without turning every
+ * cache hit into a write.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "cortex.llm.embedding-store.enabled", havingValue = "true", matchIfMissing = true)
+public class PersistentEmbeddingStore implements EmbeddingStore {
+
+    private static final String FIND_SQL = """
+            WITH hits AS (
+                SELECT content_hash, embedding FROM embedding_cache
+                WHERE model_id = ? AND content_hash = ANY(?)
+            ), touched AS (
+                UPDATE embedding_cache e SET last_accessed_at = NOW()
+                FROM hits
+                WHERE e.model_id = ? AND e.content_hash = hits.content_hash
+                  AND e.last_accessed_at < NOW() - INTERVAL '1 hour'
+            )
+            SELECT content_hash, embedding::text FROM hits
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO embedding_cache (model_id, content_hash, embedding)
+            VALUES (?, ?, CAST(? AS vector))
+            ON CONFLICT (model_id, content_hash) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate outsideTransaction;
+
+    @Value("${cortex.llm.embedding-store.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${cortex.llm.embedding-store.max-rows:1000000}")
+    private long maxRows;
+
+    public PersistentEmbeddingStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.outsideTransaction = new TransactionTemplate(transactionManager);
+        this.outsideTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+    }
+
+    @Override
+    public Map<String, float[]> findAll(String modelId, Collection<String> contentHashes) {
+        Map<String, float[]> found = new HashMap<>();
+        if (contentHashes.isEmpty()) {
+            return found;
+        }
+
+        outsideTransaction.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_SQL);
+            ps.setString(1, modelId);
+            ps.setArray(2, con.createArrayOf("text", contentHashes.toArray()));
+            ps.setString(3, modelId);
+            return ps;
+        }, rs -> {
+            found.put(rs.getString(1), parseVector(rs.getString(2)));
+        }));
+
+        log.debug("Embedding store lookup: requested={}, found={}", contentHashes.size(), found.size());
+        return found;
+    }
+
+    @Override
+    public void saveAll(String modelId, Map<String, float[]> embeddingsByHash) {
+        if (embeddingsByHash.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(embeddingsByHash.size());
+        embeddingsByHash.forEach((hash, vector) -> rows.add(new Object[] { modelId, hash, toVectorString(vector) }));
+
+        outsideTransaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, rows));
+        log.debug("Embedding store saved {} vectors for model {}", rows.size(), modelId);
+    }
+
+    /**
+     * Drops entries not read within the retention window, then trims the
+     * least recently used rows beyond the configured row cap.
+     */
+    @Scheduled(fixedDelayString = "${cortex.llm.embedding-store.sweep-interval-ms:3600000}", initialDelay = 60000)
+    public void sweep() {
+        try {
+            int expired = jdbcTemplate.update(
+                    "DELETE FROM embedding_cache WHERE last_accessed_at < NOW() - (INTERVAL '1 day' * ?)",
+                    retentionDays);
+
+            Long rowCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM embedding_cache", Long.class);
+            int evicted = 0;
+            if (rowCount != null && rowCount > maxRows) {
+                evicted = jdbcTemplate.update("""
+                        DELETE FROM embedding_cache WHERE ctid IN (
+                            SELECT ctid FROM embedding_cache ORDER BY last_accessed_at ASC LIMIT ?
+                        )
+                        """, rowCount - maxRows);
+            }
+
+            log.info("EMBEDDING_STORE_SWEEP | expired={} | lru_evicted={} | retention_days={} | max_rows={}",
+                    expired, evicted, retentionDays, maxRows);
+        } catch (Exception e) {
+            log.warn("Embedding store sweep failed: {}", e.getMessage());
+        }
+    }
+
+    // Converts float array to PostgreSQL vector string format
+    private String toVectorString(float[] embedding) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < embedding.length; i++) {
+            sb.append(embedding[i]);
+            if (i < embedding.length - 1) {
+                sb.append(",");
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    // Parses PostgreSQL vector text output ("[0.1,0.2,...]")
+    private float[] parseVector(String text) {
+        String body = text.substring(1, text.length() - 1);
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+}
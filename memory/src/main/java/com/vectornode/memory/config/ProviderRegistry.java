@@ -0,0 +1,95 @@
+package com.vectornode.memory.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Named provider snapshots, swapped atomically.
+ *
+ * The map itself is immutable; register and remove publish a new copy, so
+ * readers never see a partially configured provider and never block.
+ * Lookups for an unregistered profile fall back to the default profile.
+ * Registering a profile resets its fallback chain; fallbacks are appended
+ * afterwards with {@link #addFallback(ProviderSnapshot)}.
+ */
+@Slf4j
+public final class ProviderRegistry {
+
+    public static final String DEFAULT_PROFILE = "default";
+
+    private static final AtomicReference<Map<String, ProviderSnapshot>> snapshots = new AtomicReference<>(Map.of());
+
+    private ProviderRegistry() {
+    }
+
+    /**
+     * Publishes the snapshot under its profile name and returns the snapshot
+     * it replaced, or null.
+     */
+    public static ProviderSnapshot register(ProviderSnapshot snapshot) {
+        Map<String, ProviderSnapshot> previous = snapshots.getAndUpdate(current -> {
+            Map<String, ProviderSnapshot> next = new HashMap<>(current);
+            next.put(snapshot.profile(), snapshot);
+            return Map.copyOf(next);
+        });
+        log.info("Provider profile '{}' registered: chat={}, embedding={}/{}", snapshot.profile(),
+                snapshot.chatModelId(), snapshot.embeddingProvider(), snapshot.embeddingModelId());
+        return previous.get(snapshot.profile());
+    }
+
+    /**
+     * Appends the snapshot to the fallback chain of its profile and returns
+     * the updated primary snapshot.
+     */
+    public static ProviderSnapshot addFallback(ProviderSnapshot fallback) {
+        Map<String, ProviderSnapshot> updated = snapshots.updateAndGet(current -> {
+            ProviderSnapshot primary = current.get(fallback.profile());
+            if (primary == null) {
+                throw new IllegalStateException("Profile '" + fallback.profile()
+                        + "' has no primary provider to fall back from");
+            }
+            Map<String, ProviderSnapshot> next = new HashMap<>(current);
+            next.put(fallback.profile(), primary.withFallback(fallback));
+            return Map.copyOf(next);
+        });
+        ProviderSnapshot primary = updated.get(fallback.profile());
+        log.info("Provider profile '{}' fallback #{} registered: chat={}, embedding={}/{}", fallback.profile(),
+                primary.fallbacks().size(), fallback.chatModelId(), fallback.embeddingProvider(),
+                fallback.embeddingModelId());
+        return primary;
+    }
+
+    public static void remove(String profile) {
+        snapshots.updateAndGet(current -> {
+            Map<String, ProviderSnapshot> next = new HashMap<>(current);
+            next.remove(profile);
+            return Map.copyOf(next);
+        });
+    }
+
+    public static void clear() {
+        snapshots.set(Map.of());
+    }
+
+    /**
+     * Returns the profile's snapshot, the default snapshot if the profile is
+     * not registered, or null if nothing is configured.
+     */
+    public static ProviderSnapshot get(String profile) {
+        Map<String, ProviderSnapshot> current = snapshots.get();
+        ProviderSnapshot snapshot = current.get(profile);
+        return snapshot != null ? snapshot : current.get(DEFAULT_PROFILE);
+    }
+
+    public static ProviderSnapshot getDefault() {
+        return snapshots.get().get(DEFAULT_PROFILE);
+    }
+
+    public static Set<String> profiles() {
+        return snapshots.get().keySet();
+    }
+}
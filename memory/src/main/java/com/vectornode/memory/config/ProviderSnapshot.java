@@ -0,0 +1,90 @@
+package com.vectornode.memory.config;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, fully built provider configuration. LLMProvider reads the
+ * snapshot once per call, so a call started before a reconfiguration
+ * finishes on the models it started with.
+ *
+ * @param profile            registry name, e.g. "default" or "extraction"
+ * @param chatModelId        identity of the chat model (response cache key)
+ * @param embeddingProvider  provider of the embedding model (embedding cache key)
+ * @param embeddingModelId   identity of the embedding model (embedding cache key)
+ * @param embeddingBatchSize max inputs per multi-input embedding call
+ * @param fallbacks          secondary providers, in order, that calls are
+ *                           hedged to or failed over to
+ */
+public record ProviderSnapshot(
+        String profile,
+        ChatClient chatClient,
+        EmbeddingModel embeddingModel,
+        String chatModelId,
+        String embeddingProvider,
+        String embeddingModelId,
+        int embeddingBatchSize,
+        List<ProviderSnapshot> fallbacks) {
+
+    public ProviderSnapshot {
+        fallbacks = fallbacks == null ? List.of() : List.copyOf(fallbacks);
+    }
+
+    public ProviderSnapshot(String profile, ChatClient chatClient, EmbeddingModel embeddingModel,
+            String chatModelId, String embeddingProvider, String embeddingModelId, int embeddingBatchSize) {
+        this(profile, chatClient, embeddingModel, chatModelId, embeddingProvider, embeddingModelId,
+                embeddingBatchSize, List.of());
+    }
+
+    public ProviderSnapshot withFallback(ProviderSnapshot fallback) {
+        List<ProviderSnapshot> next = new ArrayList<>(fallbacks);
+        next.add(fallback.withoutFallbacks());
+        return new ProviderSnapshot(profile, chatClient, embeddingModel, chatModelId, embeddingProvider,
+                embeddingModelId, embeddingBatchSize, next);
+    }
+
+    private ProviderSnapshot withoutFallbacks() {
+        return fallbacks.isEmpty() ? this : new ProviderSnapshot(profile, chatClient, embeddingModel, chatModelId,
+                embeddingProvider, embeddingModelId, embeddingBatchSize);
+    }
+
+    /**
+     * This provider followed by its fallbacks, in hedge order.
+     */
+    public List<ProviderSnapshot> chain() {
+        if (fallbacks.isEmpty()) {
+            return List.of(this);
+        }
+        List<ProviderSnapshot> chain = new ArrayList<>(fallbacks.size() + 1);
+        chain.add(this);
+        chain.addAll(fallbacks);
+        return chain;
+    }
+
+    /**
+     * Like {@link #chain()}, but keeps only fallbacks whose vectors are
+     * interchangeable with this provider's: same embedding model and
+     * dimensions, possibly served from another endpoint.
+     */
+    public List<ProviderSnapshot> embeddingChain() {
+        List<ProviderSnapshot> chain = new ArrayList<>(fallbacks.size() + 1);
+        chain.add(this);
+        for (ProviderSnapshot fallback : fallbacks) {
+            if (embeddingSpace().equals(fallback.embeddingSpace())) {
+                chain.add(fallback);
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * The embedding model identity without its endpoint.
+     */
+    public String embeddingSpace() {
+        int endpoint = embeddingModelId.lastIndexOf('@');
+        return endpoint < 0 ? embeddingModelId : embeddingModelId.substring(0, endpoint);
+    }
+}
@@ -0,0 +1,42 @@
+package com.vectornode.memory.config;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+/**
+ * ChatModel decorator that admits every call through the provider's
+ * LLMRateLimiter.
+ */
+public class RateLimitedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final LLMRateLimiter limiter;
+
+    public RateLimitedChatModel(ChatModel delegate, LLMRateLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return limiter.execute(estimateTokens(prompt), () -> delegate.call(prompt));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return limiter.executeStream(estimateTokens(prompt), () -> delegate.stream(prompt));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    // ~4 characters per token is close enough for budgeting
+    private static long estimateTokens(Prompt prompt) {
+        return prompt.getContents().length() / 4 + 1;
+    }
+}
@@ -0,0 +1,38 @@
+package com.vectornode.memory.config;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * EmbeddingModel decorator that admits every call through the provider's
+ * LLMRateLimiter.
+ */
+public class RateLimitedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final LLMRateLimiter limiter;
+
+    public RateLimitedEmbeddingModel(EmbeddingModel delegate, LLMRateLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        long chars = request.getInstructions().stream().mapToLong(String::length).sum();
+        return limiter.execute(chars / 4 + 1, () -> delegate.call(request));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        String text = document.getText();
+        return limiter.execute((text != null ? text.length() : 0) / 4 + 1, () -> delegate.embed(document));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
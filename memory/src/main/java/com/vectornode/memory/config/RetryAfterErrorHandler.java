@@ -0,0 +1,75 @@
+package com.vectornode.memory.config;
+
+import com.vectornode.memory.setup.exception.custom.LlmRateLimitedException;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseErrorHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Response error handler for OpenAI-compatible providers. HTTP 429 becomes an
+ * LlmRateLimitedException that carries the provider's Retry-After hint. Other
+ * errors go to Spring AI's default handler.
+ */
+public class RetryAfterErrorHandler implements ResponseErrorHandler {
+
+    @Override
+    public boolean hasError(ClientHttpResponse response) throws IOException {
+        return response.getStatusCode().isError();
+    }
+
+    @Override
+    public void handleError(URI url, HttpMethod method, ClientHttpResponse response) throws IOException {
+        throwIfRateLimited(response);
+        RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER.handleError(url, method, response);
+    }
+
+    private void throwIfRateLimited(ClientHttpResponse response) throws IOException {
+        if (response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            String body = new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+            throw new LlmRateLimitedException("Provider rate limit exceeded: " + body,
+                    parseRetryAfter(response.getHeaders()));
+        }
+    }
+
+    /**
+     * Reads retry-after-ms or Retry-After (delta-seconds or HTTP date).
+     * Returns null when the provider sent neither.
+     */
+    public static Duration parseRetryAfter(HttpHeaders headers) {
+        String millis = headers.getFirst("retry-after-ms");
+        if (millis != null) {
+            try {
+                return Duration.ofMillis(Long.parseLong(millis.trim()));
+            } catch (NumberFormatException ignored) {
+                // fall through to Retry-After
+            }
+        }
+
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                Duration delay = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
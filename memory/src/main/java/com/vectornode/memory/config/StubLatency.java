@@ -0,0 +1,98 @@
+package com.vectornode.memory.config;
+
+import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Simulated provider latency for the STUB provider.
+ *
+ * FIXED always waits the median; LOGNORMAL draws around the median with the
+ * given sigma. Independently, a tailProbability fraction of calls waits the
+ * tail duration instead, to model the slow outliers real providers show.
+ *
+ * @param distribution    FIXED or LOGNORMAL
+ * @param median          typical latency; ZERO disables the delay
+ * @param sigma           log-space standard deviation (LOGNORMAL only)
+ * @param tailProbability fraction of calls that take the tail latency
+ * @param tail            latency of a tail call
+ */
+@Slf4j
+public record StubLatency(Distribution distribution, Duration median, double sigma, double tailProbability,
+        Duration tail) {
+
+    public enum Distribution {
+        FIXED, LOGNORMAL
+    }
+
+    public static final StubLatency NONE = new StubLatency(Distribution.FIXED, Duration.ZERO, 0, 0, Duration.ZERO);
+
+    private static volatile StubLatency chat = NONE;
+    private static volatile StubLatency embedding = NONE;
+
+    public StubLatency {
+        if (median.isNegative() || tail.isNegative()) {
+            throw new IllegalArgumentException("Stub latency must not be negative");
+        }
+        if (tailProbability < 0 || tailProbability > 1) {
+            throw new IllegalArgumentException("Stub latency tail probability must be within [0, 1]");
+        }
+    }
+
+    /**
+     * Parses a distribution name case-insensitively, e.g. from a property.
+     */
+    public static Distribution distribution(String name) {
+        return Distribution.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Sets the latency applied to stub chat and embedding calls. Takes
+     * effect for calls that start after it returns.
+     */
+    public static void configure(StubLatency chat, StubLatency embedding) {
+        StubLatency.chat = chat;
+        StubLatency.embedding = embedding;
+        log.info("Stub provider latency configured: chat={}, embedding={}", chat, embedding);
+    }
+
+    public static StubLatency chat() {
+        return chat;
+    }
+
+    public static StubLatency embedding() {
+        return embedding;
+    }
+
+    public Duration sample() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (tailProbability > 0 && random.nextDouble() < tailProbability) {
+            return tail;
+        }
+        if (distribution == Distribution.FIXED || sigma <= 0 || median.isZero()) {
+            return median;
+        }
+        // The median of exp(N(mu, sigma)) is exp(mu), so mu = ln(median)
+        double nanos = median.toNanos() * Math.exp(sigma * random.nextGaussian());
+        return Duration.ofNanos((long) Math.min(nanos, Long.MAX_VALUE));
+    }
+
+    /**
+     * Blocks the calling thread for one sampled latency.
+     */
+    public void pause() {
+        Duration delay = sample();
+        if (delay.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmProviderException("Stub call interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.vectornode.memory.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+
+/**
+ * Storage used for the approximate nearest-neighbour pass
+ * (cortex.vector.index-mode).
+ *
+ * FULL searches the float32 HNSW index directly. HALFVEC and BINARY search a
+ * quantized copy (half-precision or one bit per dimension) and re-rank the
+ * top limit x rerank-factor candidates by exact cosine distance on the
+ * full-precision vectors. The schema side lives in R__vector_index_mode.sql.
+ *
+ * An HNSW scan returns at most hnsw.ef_search rows, so quantized searches
+ * raise it for their transaction to cover the candidate count.
+ */
+@Slf4j
+public enum VectorIndexMode {
+    FULL, HALFVEC, BINARY;
+
+    public static final int DEFAULT_RERANK_FACTOR = 4;
+    public static final int DEFAULT_EF_SEARCH = 100;
+    // Upper bound pgvector accepts for hnsw.ef_search
+    public static final int MAX_EF_SEARCH = 1000;
+
+    private static volatile VectorIndexMode current = FULL;
+    private static volatile int rerankFactor = DEFAULT_RERANK_FACTOR;
+    private static volatile int efSearch = DEFAULT_EF_SEARCH;
+
+    public static VectorIndexMode parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public static void configure(VectorIndexMode mode, int rerankFactor, int efSearch) {
+        if (rerankFactor < 1) {
+            throw new IllegalArgumentException("Vector re-rank factor must be at least 1");
+        }
+        if (efSearch < 1 || efSearch > MAX_EF_SEARCH) {
+            throw new IllegalArgumentException("Vector ef-search must be between 1 and " + MAX_EF_SEARCH);
+        }
+        VectorIndexMode.current = mode;
+        VectorIndexMode.rerankFactor = rerankFactor;
+        VectorIndexMode.efSearch = efSearch;
+        log.info("Vector index mode: {} (re-rank factor {}, ef-search {})", mode, rerankFactor, efSearch);
+    }
+
+    public static VectorIndexMode current() {
+        return current;
+    }
+
+    /**
+     * Number of ANN candidates to fetch from the quantized index for a
+     * request that returns {@code limit} results.
+     */
+    public static int candidates(int limit) {
+        return limit * rerankFactor;
+    }
+
+    /**
+     * hnsw.ef_search for a quantized search fetching {@code candidates}
+     * rows: the configured value, raised to the candidate count.
+     */
+    public static int efSearch(int candidates) {
+        return Math.min(MAX_EF_SEARCH, Math.max(efSearch, candidates));
+    }
+}
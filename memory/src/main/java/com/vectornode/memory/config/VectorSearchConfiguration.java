@@ -0,0 +1,26 @@
+package com.vectornode.memory.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Applies the vector search properties to VectorIndexMode.
+ */
+@Configuration
+public class VectorSearchConfiguration {
+
+    @Value("${cortex.vector.index-mode:full}")
+    private String indexMode;
+
+    @Value("${cortex.vector.rerank-factor:" + VectorIndexMode.DEFAULT_RERANK_FACTOR + "}")
+    private int rerankFactor;
+
+    @Value("${cortex.vector.ef-search:" + VectorIndexMode.DEFAULT_EF_SEARCH + "}")
+    private int efSearch;
+
+    @PostConstruct
+    public void configure() {
+        VectorIndexMode.configure(VectorIndexMode.parse(indexMode), rerankFactor, efSearch);
+    }
+}
@@ -24,7 +24,7 @@ public class Context extends BaseEntity {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String textChunk;
 
-    @Column(columnDefinition = "vector(768)", nullable = false)
+    @Column(columnDefinition = "vector", nullable = false)
     @JdbcTypeCode(SqlTypes.VECTOR)
     private float[] vectorEmbedding;
 
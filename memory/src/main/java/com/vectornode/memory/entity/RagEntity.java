@@ -27,7 +27,7 @@ public class RagEntity extends BaseEntity {
     @Column(columnDefinition = "TEXT")
     private String description;
 
-    @Column(columnDefinition = "vector(768)")
+    @Column(columnDefinition = "vector")
     @JdbcTypeCode(SqlTypes.VECTOR)
     private float[] vectorEmbedding;
 
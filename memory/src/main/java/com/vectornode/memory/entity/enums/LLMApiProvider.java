@@ -1,5 +1,5 @@
 package com.vectornode.memory.entity.enums;
 
 public enum LLMApiProvider {
-    GEMINI, OPENAI, ANTHROPIC, AZURE, OPENROUTER
+    GEMINI, OPENAI, ANTHROPIC, AZURE, OPENROUTER, LOCAL, STUB
 }
@@ -1,5 +1,6 @@
 package com.vectornode.memory.setup.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -10,6 +11,8 @@ import java.util.HashMap;
 import java.util.Map;
 import com.vectornode.memory.setup.exception.custom.LlmAuthenticationException;
 import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import com.vectornode.memory.setup.exception.custom.LlmRateLimitedException;
+import com.vectornode.memory.setup.exception.custom.LlmUnavailableException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -34,6 +37,39 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.UNAUTHORIZED);
     }
 
+    @ExceptionHandler(LlmRateLimitedException.class)
+    public ResponseEntity<Map<String, Object>> handleLlmRateLimited(LlmRateLimitedException ex) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("timestamp", Instant.now());
+        errorResponse.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+        errorResponse.put("error", "LLM Provider Rate Limited");
+        errorResponse.put("message", ex.getMessage());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+        if (ex.getRetryAfter() != null) {
+            // Round up so clients never retry before the provider allows it
+            long seconds = (ex.getRetryAfter().toMillis() + 999) / 1000;
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        }
+        return response.body(errorResponse);
+    }
+
+    @ExceptionHandler(LlmUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> handleLlmUnavailable(LlmUnavailableException ex) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("timestamp", Instant.now());
+        errorResponse.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        errorResponse.put("error", "LLM Provider Unavailable");
+        errorResponse.put("message", ex.getMessage());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (ex.getRetryAfter() != null) {
+            long seconds = (ex.getRetryAfter().toMillis() + 999) / 1000;
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        }
+        return response.body(errorResponse);
+    }
+
     @ExceptionHandler(LlmProviderException.class)
     public ResponseEntity<Map<String, Object>> handleLlmProvider(LlmProviderException ex) {
         Map<String, Object> errorResponse = new HashMap<>();
@@ -0,0 +1,23 @@
+package com.vectornode.memory.setup.exception.custom;
+
+import java.time.Duration;
+
+//provider rejected the call with HTTP 429; retryAfter is the provider's Retry-After hint, if it sent one.
+public class LlmRateLimitedException extends LlmProviderException {
+
+    private final Duration retryAfter;
+
+    public LlmRateLimitedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public LlmRateLimitedException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
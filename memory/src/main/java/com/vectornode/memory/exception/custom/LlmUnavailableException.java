@@ -0,0 +1,18 @@
+package com.vectornode.memory.setup.exception.custom;
+
+import java.time.Duration;
+
+//rejected before reaching the provider: the circuit breaker is open or the LLM bulkhead is full; retryAfter is when to try again.
+public class LlmUnavailableException extends LlmProviderException {
+
+    private final Duration retryAfter;
+
+    public LlmUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,19 @@
+package com.vectornode.memory.ingest.job;
+
+import java.util.UUID;
+
+/**
+ * A claimed row of ingest_jobs, with the content it refers to.
+ *
+ * @param type      KB_CREATED or CONTEXT_CREATED
+ * @param targetId  id of the knowledge base or context
+ * @param attempts  attempts including the current one
+ * @param converser converser of the knowledge base (KB_CREATED only)
+ * @param content   knowledge base content or context text; null when the row no longer exists
+ */
+public record IngestJob(long id, String type, UUID targetId, UUID kbId, int attempts, String converser,
+        String content) {
+
+    public static final String KB_CREATED = "KB_CREATED";
+    public static final String CONTEXT_CREATED = "CONTEXT_CREATED";
+}
@@ -0,0 +1,253 @@
+package com.vectornode.memory.ingest.job;
+
+import com.vectornode.memory.ingest.service.IngestionWorker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Claims jobs from the ingest_jobs outbox and runs them on IngestionWorker.
+ *
+ * A single dispatcher thread polls the table every poll interval, or
+ * immediately when {@link #wake()} is called (when a job finishes). Jobs
+ * announced on rag_events are claimed directly by id through
+ * {@link #dispatchTargets}. At most max-in-flight jobs run at once; the
+ * dispatcher only claims as many as there are free slots, so jobs it cannot
+ * run stay available to other instances.
+ *
+ * A failed job is retried with exponential backoff and moved to DEAD after
+ * max-attempts. Jobs are delivered at least once: a job whose lease expires
+ * while still running may run again.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IngestJobDispatcher {
+
+    private final IngestJobQueue queue;
+    private final IngestionWorker ingestionWorker;
+
+    @Value("${cortex.ingest.jobs.batch-size:16}")
+    private int batchSize = 16;
+
+    @Value("${cortex.ingest.jobs.max-in-flight:32}")
+    private int maxInFlight = 32;
+
+    @Value("${cortex.ingest.jobs.poll-ms:1000}")
+    private long pollMs = 1000;
+
+    @Value("${cortex.ingest.jobs.lease-ms:900000}")
+    private long leaseMs = 900_000;
+
+    @Value("${cortex.ingest.jobs.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${cortex.ingest.jobs.backoff-base-ms:5000}")
+    private long backoffBaseMs = 5000;
+
+    @Value("${cortex.ingest.jobs.backoff-max-ms:600000}")
+    private long backoffMaxMs = 600_000;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final Semaphore wakeups = new Semaphore(0);
+    private Semaphore slots;
+    private ExecutorService dispatcherExecutor;
+
+    @PostConstruct
+    public void start() {
+        slots = new Semaphore(maxInFlight);
+        running.set(true);
+        dispatcherExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ingest-job-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcherExecutor.submit(this::dispatchLoop);
+        log.info("IngestJobDispatcher started: batchSize={}, maxInFlight={}, maxAttempts={}", batchSize,
+                maxInFlight, maxAttempts);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running.set(false);
+        if (dispatcherExecutor != null) {
+            dispatcherExecutor.shutdownNow();
+        }
+        log.info("IngestJobDispatcher stopped");
+    }
+
+    /**
+     * Triggers a claim round without waiting for the next poll.
+     */
+    public void wake() {
+        wakeups.release();
+    }
+
+    private void dispatchLoop() {
+        while (running.get()) {
+            try {
+                wakeups.tryAcquire(pollMs, TimeUnit.MILLISECONDS);
+                wakeups.drainPermits();
+                dispatchAvailable();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (running.get()) {
+                    log.error("Error claiming ingest jobs, will retry: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims and starts the pending jobs of knowledge bases or contexts
+     * announced on rag_events, in one query, on the caller's thread. Jobs
+     * that do not fit in the free slots are left to the next claim round.
+     */
+    public void dispatchTargets(Collection<UUID> targetIds) {
+        int reserved = reserve(targetIds.size());
+        if (reserved == 0) {
+            wake();
+            return;
+        }
+        List<IngestJob> jobs = List.of();
+        try {
+            jobs = queue.claimTargets(targetIds, reserved, Duration.ofMillis(leaseMs));
+        } finally {
+            slots.release(reserved - jobs.size());
+        }
+        jobs.forEach(this::run);
+        if (jobs.size() < targetIds.size()) {
+            wake();
+        }
+    }
+
+    /**
+     * Claims and starts due jobs until the table is drained or every slot
+     * is taken.
+     */
+    void dispatchAvailable() {
+        while (true) {
+            int reserved = reserve(batchSize);
+            if (reserved == 0) {
+                return;
+            }
+            List<IngestJob> jobs = List.of();
+            try {
+                jobs = queue.claim(reserved, Duration.ofMillis(leaseMs));
+            } finally {
+                slots.release(reserved - jobs.size());
+            }
+            jobs.forEach(this::run);
+            if (jobs.size() < reserved) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@code max} free slots without blocking; claims run on
+     * both the dispatcher and the listener thread.
+     */
+    private int reserve(int max) {
+        while (true) {
+            int n = Math.min(max, slots.availablePermits());
+            if (n <= 0 || slots.tryAcquire(n)) {
+                return Math.max(n, 0);
+            }
+        }
+    }
+
+    private void run(IngestJob job) {
+        CompletableFuture<Void> result;
+        try {
+            result = execute(job);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((ignored, error) -> {
+            try {
+                if (error == null) {
+                    queue.complete(job);
+                } else {
+                    onFailure(job, error);
+                }
+            } catch (Exception e) {
+                log.error("Could not record outcome of ingest job {}: {}", job.id(), e.getMessage());
+            } finally {
+                slots.release();
+                wake();
+            }
+        });
+    }
+
+    private CompletableFuture<Void> execute(IngestJob job) {
+        if (job.attempts() > maxAttempts) {
+            // Claimed again after its lease expired, typically because the previous run crashed the worker
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Lease expired on the last of " + maxAttempts + " attempts"));
+        }
+        if (job.content() == null) {
+            log.warn("Dropping ingest job {}: {} {} no longer exists", job.id(), job.type(), job.targetId());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        log.info("Dispatching ingest job {} ({} {}, attempt {})", job.id(), job.type(), job.targetId(),
+                job.attempts());
+        return switch (job.type()) {
+            case IngestJob.KB_CREATED -> "DOCUMENT".equals(job.converser())
+                    ? ingestionWorker.processDocumentTree(job.targetId(), job.content())
+                    : ingestionWorker.processKnowledgeBase(job.targetId(), job.content());
+            case IngestJob.CONTEXT_CREATED ->
+                ingestionWorker.processContext(job.targetId(), job.kbId(), job.content());
+            default -> CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Unknown ingest job type: " + job.type()));
+        };
+    }
+
+    private void onFailure(IngestJob job, Throwable error) {
+        Throwable cause = error instanceof java.util.concurrent.CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        boolean dead = job.attempts() >= maxAttempts;
+        Duration retryAfter = dead ? Duration.ZERO : backoff(job.attempts(), backoffBaseMs, backoffMaxMs);
+        queue.fail(job, cause.getClass().getSimpleName() + ": " + cause.getMessage(), retryAfter, dead);
+
+        if (dead) {
+            log.error("Ingest job {} ({} {}) is dead after {} attempts: {}", job.id(), job.type(), job.targetId(),
+                    job.attempts(), cause.getMessage());
+        } else {
+            log.warn("Ingest job {} ({} {}) failed on attempt {}, retrying in {}ms: {}", job.id(), job.type(),
+                    job.targetId(), job.attempts(), retryAfter.toMillis(), cause.getMessage());
+        }
+    }
+
+    /**
+     * base * 2^(attempt - 1), capped at max, with up to 20% random jitter so
+     * jobs that failed together do not retry together.
+     */
+    static Duration backoff(int attempt, long baseMs, long maxMs) {
+        long delay = baseMs << Math.min(Math.max(attempt - 1, 0), 30);
+        if (delay <= 0 || delay > maxMs) {
+            delay = maxMs;
+        }
+        long jitter = (long) (delay * 0.2 * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(delay - jitter);
+    }
+}
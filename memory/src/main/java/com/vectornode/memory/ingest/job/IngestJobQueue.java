@@ -0,0 +1,142 @@
+package com.vectornode.memory.ingest.job;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * JDBC access to the ingest_jobs outbox.
+ *
+ * Claims lock rows with FOR UPDATE SKIP LOCKED, so any number of workers,
+ * in one process or several, can poll the table without taking the same
+ * job. A claimed job is leased; if its worker dies, the job becomes
+ * claimable again once the lease expires. Completion and failure only
+ * apply to the attempt that claimed the job.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IngestJobQueue {
+
+    // %s is the filter selecting claimable rows
+    private static final String CLAIM_TEMPLATE = """
+            WITH claimed AS (
+                UPDATE ingest_jobs j
+                SET status = 'RUNNING', attempts = j.attempts + 1,
+                    locked_until = NOW() + (? * INTERVAL '1 millisecond'), updated_at = NOW()
+                WHERE j.id IN (
+                    SELECT id FROM ingest_jobs
+                    WHERE %s
+                    ORDER BY id
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING j.id, j.job_type, j.target_id, j.kb_id, j.attempts
+            )
+            SELECT c.id, c.job_type, c.target_id, c.kb_id, c.attempts, kb.converser,
+                   COALESCE(kb.content, ctx.text_chunk) AS content
+            FROM claimed c
+            LEFT JOIN knowledge_bases kb ON c.job_type = 'KB_CREATED' AND kb.id = c.target_id
+            LEFT JOIN contexts ctx ON c.job_type = 'CONTEXT_CREATED' AND ctx.id = c.target_id
+            ORDER BY c.id
+            """;
+
+    private static final String CLAIM_DUE_SQL = CLAIM_TEMPLATE.formatted("""
+            (status = 'PENDING' AND available_at <= NOW()) OR (status = 'RUNNING' AND locked_until < NOW())""");
+
+    private static final String CLAIM_TARGETS_SQL = CLAIM_TEMPLATE.formatted(
+            "status = 'PENDING' AND available_at <= NOW() AND target_id = ANY(?)");
+
+    private static final String ENQUEUE_SQL = """
+            INSERT INTO ingest_jobs (job_type, target_id, kb_id) VALUES (?, ?, ?)
+            """;
+
+    private static final String COMPLETE_SQL = """
+            DELETE FROM ingest_jobs WHERE id = ? AND attempts = ? AND status = 'RUNNING'
+            """;
+
+    private static final String FAIL_SQL = """
+            UPDATE ingest_jobs
+            SET status = ?, available_at = NOW() + (? * INTERVAL '1 millisecond'), locked_until = NULL,
+                last_error = ?, updated_at = NOW()
+            WHERE id = ? AND attempts = ? AND status = 'RUNNING'
+            """;
+
+    // Error text kept on the job row
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private static final RowMapper<IngestJob> JOB_MAPPER = (rs, rowNum) -> new IngestJob(
+            rs.getLong("id"),
+            rs.getString("job_type"),
+            rs.getObject("target_id", UUID.class),
+            rs.getObject("kb_id", UUID.class),
+            rs.getInt("attempts"),
+            rs.getString("converser"),
+            rs.getString("content"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Claims up to {@code limit} due jobs, oldest first, leasing them for
+     * {@code lease}, and loads their content in the same statement.
+     */
+    public List<IngestJob> claim(int limit, Duration lease) {
+        return jdbcTemplate.query(CLAIM_DUE_SQL, JOB_MAPPER, lease.toMillis(), limit);
+    }
+
+    /**
+     * Claims up to {@code limit} due pending jobs for the given knowledge
+     * bases or contexts, typically ids just announced on rag_events.
+     */
+    public List<IngestJob> claimTargets(Collection<UUID> targetIds, int limit, Duration lease) {
+        if (targetIds.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(CLAIM_TARGETS_SQL);
+            ps.setLong(1, lease.toMillis());
+            ps.setArray(2, con.createArrayOf("uuid", targetIds.toArray()));
+            ps.setInt(3, limit);
+            return ps;
+        }, JOB_MAPPER);
+    }
+
+    /**
+     * Adds a job in the caller's transaction, for work that no insert
+     * trigger announces (e.g. re-extracting a context after an update).
+     */
+    public void enqueue(String type, UUID targetId, UUID kbId) {
+        jdbcTemplate.update(ENQUEUE_SQL, type, targetId, kbId);
+    }
+
+    /**
+     * Removes a finished job.
+     */
+    public void complete(IngestJob job) {
+        int updated = jdbcTemplate.update(COMPLETE_SQL, job.id(), job.attempts());
+        if (updated == 0) {
+            log.warn("Ingest job {} was reclaimed before it completed", job.id());
+        }
+    }
+
+    /**
+     * Schedules a failed job for another attempt after {@code retryAfter},
+     * or moves it to DEAD when {@code dead} is set.
+     */
+    public void fail(IngestJob job, String error, Duration retryAfter, boolean dead) {
+        String message = error == null ? "unknown error" : error;
+        if (message.length() > MAX_ERROR_LENGTH) {
+            message = message.substring(0, MAX_ERROR_LENGTH);
+        }
+        jdbcTemplate.update(FAIL_SQL, dead ? "DEAD" : "PENDING", retryAfter.toMillis(), message, job.id(),
+                job.attempts());
+    }
+}
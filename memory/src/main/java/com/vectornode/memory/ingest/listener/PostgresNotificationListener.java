@@ -2,7 +2,7 @@ package com.vectornode.memory.ingest.listener;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.vectornode.memory.ingest.service.IngestionWorker;
+import com.vectornode.memory.ingest.job.IngestJobDispatcher;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +14,12 @@ import org.springframework.stereotype.Component;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -21,12 +27,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Listens to PostgreSQL NOTIFY events on the 'rag_events' channel.
- * Fire-and-forget dispatch to IngestionWorker for async processing.
+ * Notifications carry ids only, so IngestJobDispatcher claims new jobs
+ * without waiting for its next poll; a missed notification delays a job,
+ * it never loses one.
  * 
  * Expected notification payloads:
- * KB_CREATED: {"type": "KB_CREATED", "id": "uuid", "content": "text content"}
- * CONTEXT_CREATED: {"type": "CONTEXT_CREATED", "id": "uuid", "kb_id": "uuid",
- * "text_chunk": "chunk text"}
+ * KB_CREATED: {"type": "KB_CREATED", "id": "uuid"}
+ * CONTEXT_CREATED: {"type": "CONTEXT_CREATED", "id": "uuid", "kb_id": "uuid"}
  */
 @Component
 @Slf4j
@@ -34,9 +41,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class PostgresNotificationListener {
 
     private final DataSource dataSource;
-    private final IngestionWorker ingestionWorker;
+    private final IngestJobDispatcher jobDispatcher;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // Notifications handled per claim
+    private static final int MAX_BATCH = 1000;
+
     private final AtomicBoolean running = new AtomicBoolean(false);
     private ExecutorService listenerExecutor;
     private Connection listenerConnection;
@@ -72,10 +82,17 @@ public class PostgresNotificationListener {
                 // Poll for notifications (blocking for up to 500ms)
                 PGNotification[] notifications = pgConn.getNotifications(500);
 
-                if (notifications != null) {
-                    for (PGNotification notification : notifications) {
-                        handleNotification(notification);
+                if (notifications != null && notifications.length > 0) {
+                    // Drain whatever else is already queued without blocking, so a burst is claimed at once
+                    List<PGNotification> batch = new ArrayList<>(Arrays.asList(notifications));
+                    while (batch.size() < MAX_BATCH) {
+                        PGNotification[] more = pgConn.getNotifications();
+                        if (more == null || more.length == 0) {
+                            break;
+                        }
+                        Collections.addAll(batch, more);
                     }
+                    handleNotifications(batch);
                 }
             } catch (Exception e) {
                 if (running.get()) {
@@ -110,62 +127,54 @@ public class PostgresNotificationListener {
     }
 
     /**
-     * Handle notification - fire-and-forget dispatch to IngestionWorker.
-     * Does NOT wait for processing to complete.
+     * Handle a batch of notifications - dedupes the announced ids and has
+     * the dispatcher claim their jobs, with content, in one query.
      */
-    private void handleNotification(PGNotification notification) {
-        try {
-            String payload = notification.getParameter();
-            log.debug("Received notification: {}", payload);
-
-            JsonNode json = objectMapper.readTree(payload);
-            String type = json.get("type").asText();
-
-            switch (type) {
-                case "KB_CREATED" -> handleKbCreated(json);
-                case "CONTEXT_CREATED" -> handleContextCreated(json);
-                default -> log.warn("Unknown notification type: {}", type);
+    private void handleNotifications(List<PGNotification> notifications) {
+        Set<UUID> targetIds = new LinkedHashSet<>();
+        for (PGNotification notification : notifications) {
+            UUID targetId = parseTarget(notification);
+            if (targetId != null) {
+                targetIds.add(targetId);
             }
-        } catch (Exception e) {
-            log.error("Failed to process notification: {}", e.getMessage(), e);
         }
-    }
+        if (targetIds.isEmpty()) {
+            return;
+        }
 
-    /**
-     * Fire-and-forget: Dispatch KB processing to worker based on converser role.
-     * Payload: {"type": "KB_CREATED", "id": "uuid", "converser": "USER", "content":
-     * "text"}
-     */
-    private void handleKbCreated(JsonNode json) {
-        UUID kbId = UUID.fromString(json.get("id").asText());
-        String content = json.get("content").asText();
-
-        // Default to USER if converser is missing from legacy payloads
-        String converser = json.has("converser") ? json.get("converser").asText() : "USER";
-
-        if ("DOCUMENT".equals(converser)) {
-            log.info("Dispatching KB_CREATED for id: {} to Document Pipeline (fire-and-forget)", kbId);
-            ingestionWorker.processDocumentTree(kbId, content);
-        } else {
-            log.info("Dispatching KB_CREATED for id: {} to Prompt Pipeline (fire-and-forget)", kbId);
-            ingestionWorker.processKnowledgeBase(kbId, content);
+        log.debug("Dispatching {} notified ids from {} notifications", targetIds.size(), notifications.size());
+        try {
+            jobDispatcher.dispatchTargets(targetIds);
+        } catch (Exception e) {
+            // The jobs are still pending; leave them to the dispatcher's own claim round
+            log.error("Failed to dispatch notified jobs: {}", e.getMessage());
+            jobDispatcher.wake();
         }
     }
 
     /**
-     * Fire-and-forget: Dispatch Context processing to worker.
-     * Payload: {"type": "CONTEXT_CREATED", "id": "uuid", "kb_id": "uuid",
-     * "text_chunk": "text"}
+     * Reads the knowledge base or context id from a notification.
+     * Payload: {"type": "KB_CREATED" | "CONTEXT_CREATED", "id": "uuid"}
      */
-    private void handleContextCreated(JsonNode json) {
-        UUID contextId = UUID.fromString(json.get("id").asText());
-        UUID kbId = UUID.fromString(json.get("kb_id").asText());
-        String textChunk = json.get("text_chunk").asText();
+    private UUID parseTarget(PGNotification notification) {
+        try {
+            String payload = notification.getParameter();
+            log.debug("Received notification: {}", payload);
 
-        log.info("Dispatching CONTEXT_CREATED for id: {} (fire-and-forget)", contextId);
+            JsonNode json = objectMapper.readTree(payload);
+            String type = json.get("type").asText();
 
-        // Fire-and-forget - don't wait for result
-        ingestionWorker.processContext(contextId, kbId, textChunk);
+            return switch (type) {
+                case "KB_CREATED", "CONTEXT_CREATED" -> UUID.fromString(json.get("id").asText());
+                default -> {
+                    log.warn("Unknown notification type: {}", type);
+                    yield null;
+                }
+            };
+        } catch (Exception e) {
+            log.error("Failed to parse notification: {}", e.getMessage());
+            return null;
+        }
     }
 
     private void sleep(long ms) {
@@ -0,0 +1,74 @@
+package com.vectornode.memory.ingest.pipeline;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The stages of the ingestion pipeline. Prompts run
+ * compress (LLM) -> embed -> synthesize (similarity lookup and LLM merge)
+ * -> persist; contexts run extract (LLM entities and relations, entity
+ * embeddings) -> persist.
+ *
+ * The LLM stages run on virtual threads; persist runs on a few platform
+ * threads, sized against the connection pool. Each stage has its own
+ * bounded queue, so its queue depth and service time show which stage
+ * limits throughput.
+ */
+@Component
+@RequiredArgsConstructor
+public class IngestPipeline {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${cortex.ingest.pipeline.compress.workers:16}")
+    private int compressWorkers = 16;
+
+    @Value("${cortex.ingest.pipeline.embed.workers:16}")
+    private int embedWorkers = 16;
+
+    @Value("${cortex.ingest.pipeline.synthesize.workers:16}")
+    private int synthesizeWorkers = 16;
+
+    @Value("${cortex.ingest.pipeline.extract.workers:16}")
+    private int extractWorkers = 16;
+
+    @Value("${cortex.ingest.pipeline.persist.workers:4}")
+    private int persistWorkers = 4;
+
+    @Value("${cortex.ingest.pipeline.queue-capacity:64}")
+    private int queueCapacity = 64;
+
+    @Getter
+    private PipelineStage compress;
+    @Getter
+    private PipelineStage embed;
+    @Getter
+    private PipelineStage synthesize;
+    @Getter
+    private PipelineStage extract;
+    @Getter
+    private PipelineStage persist;
+
+    @PostConstruct
+    public void start() {
+        compress = new PipelineStage("compress", compressWorkers, queueCapacity, true, meterRegistry);
+        embed = new PipelineStage("embed", embedWorkers, queueCapacity, true, meterRegistry);
+        synthesize = new PipelineStage("synthesize", synthesizeWorkers, queueCapacity, true, meterRegistry);
+        extract = new PipelineStage("extract", extractWorkers, queueCapacity, true, meterRegistry);
+        persist = new PipelineStage("persist", persistWorkers, queueCapacity, false, meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        compress.close();
+        embed.close();
+        synthesize.close();
+        extract.close();
+        persist.close();
+    }
+}
@@ -0,0 +1,195 @@
+package com.vectornode.memory.ingest.pipeline;
+
+import com.vectornode.memory.config.LLMLane;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One stage of the ingestion pipeline: a bounded queue drained by a fixed
+ * number of workers.
+ *
+ * Submitting to a full queue blocks the caller. Stages hand work to the
+ * next stage from their own workers, so a slow stage fills its queue, then
+ * stalls the stage before it, and finally the thread that submitted the
+ * job. Tasks run in the INGESTION limiter lane.
+ *
+ * With 0 workers the stage runs each task on the submitting thread.
+ * Closing the stage cancels the tasks still queued.
+ *
+ * Exports ingest.stage.queue.depth, .busy, .wait (time queued), .service
+ * (time running) and .backpressure (submissions that found the queue
+ * full), tagged with the stage name.
+ */
+@Slf4j
+public final class PipelineStage implements AutoCloseable {
+
+    public static final String METRIC_PREFIX = "ingest.stage";
+
+    @Getter
+    private final String name;
+    private final BlockingQueue<Queued> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger busy = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final Timer waitTime;
+    private final Timer serviceTime;
+    private final Counter backpressure;
+
+    /**
+     * @param virtualThreads run workers on virtual threads, for stages that
+     *                       mostly wait on the LLM provider
+     */
+    public PipelineStage(String name, int workers, int queueCapacity, boolean virtualThreads,
+            MeterRegistry registry) {
+        if (workers < 0) {
+            throw new IllegalArgumentException("workers must not be negative");
+        }
+        if (workers > 0 && queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.name = name;
+        this.queue = workers > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", () -> queue == null ? 0 : queue.size())
+                .tag("stage", name)
+                .description("Tasks waiting for a worker")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".busy", busy::get)
+                .tag("stage", name)
+                .description("Workers running a task")
+                .register(registry);
+        waitTime = Timer.builder(METRIC_PREFIX + ".wait")
+                .tag("stage", name)
+                .description("Time tasks spent queued before a worker took them")
+                .register(registry);
+        serviceTime = Timer.builder(METRIC_PREFIX + ".service")
+                .tag("stage", name)
+                .description("Time workers spent running a task")
+                .register(registry);
+        backpressure = Counter.builder(METRIC_PREFIX + ".backpressure")
+                .tag("stage", name)
+                .description("Submissions that blocked because the queue was full")
+                .register(registry);
+
+        Thread.Builder builder = virtualThreads
+                ? Thread.ofVirtual().name("ingest-" + name + "-", 0)
+                : Thread.ofPlatform().daemon().name("ingest-" + name + "-", 0);
+        for (int i = 0; i < workers; i++) {
+            this.workers.add(builder.start(this::work));
+        }
+        log.info("Ingest stage '{}' started: workers={}, queueCapacity={}, virtualThreads={}", name, workers,
+                queueCapacity, virtualThreads);
+    }
+
+    /**
+     * Queues the task, blocking while the queue is full, and returns a
+     * future completed with its result on a worker of this stage.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (queue == null) {
+            run(task, result);
+            return result;
+        }
+
+        if (closed) {
+            result.completeExceptionally(new RejectedExecutionException("Ingest stage " + name + " is closed"));
+            return result;
+        }
+        long queuedAt = System.nanoTime();
+        Queued queued = new Queued(() -> {
+            waitTime.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            run(task, result);
+        }, result);
+        if (!queue.offer(queued)) {
+            backpressure.increment();
+            try {
+                queue.put(queued);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(
+                        new RejectedExecutionException("Interrupted while waiting for ingest stage " + name));
+            }
+        }
+        if (closed) {
+            // Closed while this task was being queued; no worker will take it
+            cancelQueued();
+        }
+        return result;
+    }
+
+    private <T> void run(Supplier<T> task, CompletableFuture<T> result) {
+        busy.incrementAndGet();
+        long start = System.nanoTime();
+        T value = null;
+        Throwable error = null;
+        try {
+            value = LLMLane.INGESTION.call(task);
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            serviceTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            busy.decrementAndGet();
+        }
+        // Completed outside the timing: callbacks typically submit to the next stage
+        if (error != null) {
+            result.completeExceptionally(error);
+        } else {
+            result.complete(value);
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                queue.take().task().run();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                log.error("Ingest stage '{}' task failed outside its future: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops the workers and cancels the queued tasks, so nobody waits on a
+     * future that no worker will complete. Tasks already running finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+        if (queue != null) {
+            cancelQueued();
+        }
+    }
+
+    private void cancelQueued() {
+        List<Queued> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        if (!pending.isEmpty()) {
+            log.info("Ingest stage '{}' closed, cancelling {} queued tasks", name, pending.size());
+        }
+        pending.forEach(queued -> queued.result()
+                .completeExceptionally(new CancellationException("Ingest stage " + name + " closed")));
+    }
+
+    private record Queued(Runnable task, CompletableFuture<?> result) {
+    }
+}
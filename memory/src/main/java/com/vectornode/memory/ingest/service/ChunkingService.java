@@ -5,6 +5,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Splits large text into smaller chunks suitable for embedding and retrieval.
@@ -18,6 +19,9 @@ public class ChunkingService {
     // Overlap between chunks for context continuity
     public static final int DEFAULT_OVERLAP = 200;
 
+    // Markdown headings ("## Setup") and numbered headings ("3.2 Installation")
+    private static final Pattern HEADING_LINE = Pattern.compile("^(#{1,6}\\s+\\S.*|\\d+(\\.\\d+)*\\.?\\s+\\p{Lu}.{0,120})$");
+
     /**
      * Splits text into overlapping chunks.
      *
@@ -105,6 +109,69 @@ public class ChunkingService {
         return end;
     }
 
+    /**
+     * Splits text into consecutive windows of at most {@code maxChars}
+     * characters for map-reduce processing. Unlike {@link #chunkText}, the
+     * text is not normalized and windows do not overlap, so concatenating
+     * them yields the original text. Each cut is placed at the latest
+     * heading line in the second half of the window, else the latest
+     * paragraph break there, else the latest sentence end, else at
+     * {@code maxChars}.
+     */
+    public List<String> splitIntoWindows(String text, int maxChars) {
+        List<String> windows = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return windows;
+        }
+        if (maxChars <= 0) {
+            maxChars = DEFAULT_CHUNK_SIZE;
+        }
+
+        int start = 0;
+        while (text.length() - start > maxChars) {
+            int limit = start + maxChars;
+            // Structural cuts only in the second half, so windows stay reasonably full
+            int floor = start + maxChars / 2;
+            int cut = findHeadingBoundary(text, floor, limit);
+            if (cut <= start) {
+                int paragraph = text.lastIndexOf("\n\n", limit - 2);
+                cut = paragraph >= floor ? paragraph + 2 : -1;
+            }
+            if (cut <= start) {
+                int sentence = findSentenceBoundary(text, start, limit - 1);
+                cut = sentence > start && sentence < limit ? sentence : limit;
+            }
+            windows.add(text.substring(start, cut));
+            start = cut;
+        }
+        windows.add(text.substring(start));
+
+        log.debug("Split text of length {} into {} windows", text.length(), windows.size());
+        return windows;
+    }
+
+    /**
+     * Returns the start of the last heading line in (start, end], or -1.
+     * Markdown headings ("# ") and numbered headings ("2.1 Title") count.
+     */
+    private int findHeadingBoundary(String text, int start, int end) {
+        int lineStart = text.lastIndexOf('\n', end - 1);
+        while (lineStart >= start) {
+            int candidate = lineStart + 1;
+            if (candidate > start && candidate <= end && isHeadingLine(text, candidate)) {
+                return candidate;
+            }
+            lineStart = text.lastIndexOf('\n', lineStart - 1);
+        }
+        return -1;
+    }
+
+    private boolean isHeadingLine(String text, int lineStart) {
+        int lineEnd = text.indexOf('\n', lineStart);
+        String line = text.substring(lineStart, lineEnd < 0 ? text.length() : lineEnd);
+        return HEADING_LINE.matcher(line).matches();
+    }
+
     public record CompressedChunk(String restatement, List<String> keywords, String topic, String timestamp) {
     }
 
@@ -139,7 +206,8 @@ public class ChunkingService {
                 + promptRaw;
 
         try {
-            String llmResponse = com.vectornode.memory.config.LLMProvider.callLLM(prompt);
+            String llmResponse = com.vectornode.memory.config.LLMProvider.callLLM(
+                    com.vectornode.memory.config.LLMProvider.PROFILE_EXTRACTION, prompt);
             return parseCompressedChunk(llmResponse, promptRaw);
         } catch (Exception e) {
             log.error("Failed to compress prompt via LLM. Falling back to raw text.", e);
@@ -0,0 +1,252 @@
+package com.vectornode.memory.ingest.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vectornode.memory.ingest.service.PageIndexService.DocumentNode;
+import com.vectornode.memory.ingest.service.PageIndexService.StreamedNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Incremental parser for the PageIndex JSON while the model is still
+ * streaming it.
+ *
+ * Fragments are pushed through Jackson's non-blocking parser. A node is
+ * complete once its own fields are: when its "children" array opens or its
+ * object closes. In anchor mode a section's text runs to the next located
+ * anchor, so a section is only released once the following one is located
+ * (or the response ends). Nodes are released in pre-order, so a parent is
+ * always released before its children.
+ *
+ * Not thread-safe; fragments must be fed in order.
+ */
+@Slf4j
+class DocumentTreeStreamParser {
+
+    private static final class Frame {
+        private final StreamedNode streamed;
+        private String field;
+        private boolean inChildren;
+        private boolean released;
+
+        private Frame(StreamedNode streamed) {
+            this.streamed = streamed;
+        }
+    }
+
+    private static final class Pending {
+        private final StreamedNode streamed;
+        private boolean complete;
+
+        private Pending(StreamedNode streamed) {
+            this.streamed = streamed;
+        }
+    }
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final String text;
+    private final boolean anchors;
+
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    // Released nodes in pre-order, waiting for their content or for a predecessor
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    // Depth inside objects and arrays that are not part of the tree
+    private int skipDepth;
+    private boolean started;
+    private boolean finished;
+    private DocumentNode root;
+
+    // Anchor mode: the root and the last located section, whose text ends at the next anchor
+    private Pending rootEntry;
+    private Pending lastLocated;
+    private int lastStart;
+    private int cursor;
+
+    DocumentTreeStreamParser(ObjectMapper objectMapper, String text, boolean anchors) {
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create streaming JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.text = text;
+        this.anchors = anchors;
+    }
+
+    /**
+     * Consumes the next fragment of the model output and returns the nodes
+     * that became complete. Text before the opening brace (a ```json fence)
+     * and after the closing one is ignored.
+     */
+    List<StreamedNode> feed(String fragment) {
+        if (finished) {
+            return List.of();
+        }
+        if (!started) {
+            int brace = fragment.indexOf('{');
+            if (brace < 0) {
+                return List.of();
+            }
+            started = true;
+            fragment = fragment.substring(brace);
+        }
+
+        List<StreamedNode> released = new ArrayList<>();
+        try {
+            byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token, released);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse document tree from LLM", e);
+        }
+        return released;
+    }
+
+    /**
+     * Called once the stream has ended; releases the nodes still waiting for
+     * the end of the document.
+     */
+    List<StreamedNode> finish() {
+        if (!finished) {
+            throw new RuntimeException("Failed to parse document tree from LLM: response ended inside the JSON");
+        }
+        List<StreamedNode> released = new ArrayList<>();
+        if (anchors) {
+            completeLastLocated(text.length());
+            drain(released);
+        }
+        return released;
+    }
+
+    DocumentNode root() {
+        return root;
+    }
+
+    private void handle(JsonToken token, List<StreamedNode> released) throws IOException {
+        if (skipDepth > 0) {
+            if (token.isStructStart()) {
+                skipDepth++;
+            } else if (token.isStructEnd()) {
+                skipDepth--;
+            }
+            return;
+        }
+
+        Frame top = stack.peek();
+        switch (token) {
+            case START_OBJECT -> {
+                if (top == null) {
+                    root = new DocumentNode();
+                    stack.push(new Frame(new StreamedNode(root, null, 0)));
+                } else if (top.inChildren) {
+                    DocumentNode parent = top.streamed.node();
+                    DocumentNode child = new DocumentNode();
+                    parent.getChildren().add(child);
+                    stack.push(new Frame(new StreamedNode(child, parent, top.streamed.depth() + 1)));
+                } else {
+                    skipDepth = 1;
+                }
+            }
+            case FIELD_NAME -> top.field = parser.currentName();
+            case VALUE_STRING -> set(top, parser.getText());
+            case START_ARRAY -> {
+                if (!top.inChildren && "children".equals(top.field)) {
+                    top.inChildren = true;
+                    release(top, released);
+                } else {
+                    skipDepth = 1;
+                }
+            }
+            case END_ARRAY -> top.inChildren = false;
+            case END_OBJECT -> {
+                stack.pop();
+                release(top, released);
+                finished = stack.isEmpty();
+            }
+            default -> {
+                // Numbers, booleans and nulls carry nothing the tree needs
+            }
+        }
+    }
+
+    private static void set(Frame frame, String value) {
+        if (frame.inChildren || frame.field == null) {
+            return;
+        }
+        DocumentNode node = frame.streamed.node();
+        switch (frame.field) {
+            case "title" -> node.setTitle(value);
+            case "summary" -> node.setSummary(value);
+            case "content" -> node.setContent(value);
+            case "anchor" -> node.setAnchor(value);
+            default -> {
+            }
+        }
+    }
+
+    private void release(Frame frame, List<StreamedNode> released) {
+        if (frame.released) {
+            return;
+        }
+        frame.released = true;
+        DocumentNode node = frame.streamed.node();
+
+        if (!anchors) {
+            node.setContent(Objects.requireNonNullElse(node.getContent(), ""));
+            released.add(frame.streamed);
+            return;
+        }
+
+        Pending entry = new Pending(frame.streamed);
+        pending.add(entry);
+        if (node == root) {
+            // The root keeps the text before the first located section
+            rootEntry = entry;
+            return;
+        }
+
+        node.setContent("");
+        int start = PageIndexService.locateAnchor(text, node.getAnchor(), cursor);
+        if (start < 0) {
+            log.warn("PageIndex anchor not found, merging section into its predecessor: {}", node.getTitle());
+            entry.complete = true;
+        } else {
+            completeLastLocated(start);
+            lastLocated = entry;
+            lastStart = start;
+            cursor = start + 1;
+        }
+        drain(released);
+    }
+
+    private void completeLastLocated(int end) {
+        if (lastLocated == null) {
+            if (rootEntry != null && !rootEntry.complete) {
+                rootEntry.streamed.node().setContent(text.substring(0, end));
+                rootEntry.complete = true;
+            }
+            return;
+        }
+        lastLocated.streamed.node().setContent(text.substring(lastStart, end));
+        lastLocated.complete = true;
+    }
+
+    private void drain(List<StreamedNode> released) {
+        while (!pending.isEmpty() && pending.peek().complete) {
+            released.add(pending.poll().streamed);
+        }
+    }
+}
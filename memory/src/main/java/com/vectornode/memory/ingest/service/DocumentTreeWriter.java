@@ -0,0 +1,309 @@
+package com.vectornode.memory.ingest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vectornode.memory.ingest.service.PageIndexService.DocumentNode;
+import com.vectornode.memory.ingest.service.PageIndexService.StreamedNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persists PageIndex trees with JDBC batch inserts.
+ *
+ * Nodes arrive in pre-order batches. Context ids are generated up front,
+ * so each batch is written as one lookup of existing section entities by
+ * name, one upsert of the missing ones, plus one batch insert each for
+ * contexts, entity-context junction rows and HAS_SUBSECTION relations,
+ * instead of a persist, flush and query per node.
+ *
+ * Each batch commits in its own transaction, so the caller holds no
+ * connection while the model generates the rest of the tree. Opening a
+ * tree removes the contexts a failed earlier attempt left behind.
+ */
+@Component
+@Slf4j
+public class DocumentTreeWriter {
+
+    private static final String KB_UID_SQL = "SELECT uid FROM knowledge_bases WHERE id = ?";
+
+    private static final String DELETE_PARTIAL_SQL = "DELETE FROM contexts WHERE kb_id = ?";
+
+    private static final String INSERT_CONTEXT_SQL = """
+            INSERT INTO contexts (id, kb_id, text_chunk, vector_embedding, chunk_index, metadata, created_at)
+            VALUES (?, ?, ?, CAST(? AS vector), ?, CAST(? AS jsonb), NOW())
+            """;
+
+    /*
+     * Each name with its normalized key, as the entities unique index computes it, and the oldest entity
+     * of that key if there is one. Names are only ever normalized here, so Java and the index agree.
+     */
+    private static final String FIND_ENTITIES_SQL = """
+            SELECT n.name, lower(btrim(n.name)) AS name_key, e.id
+            FROM unnest(CAST(? AS text[])) AS n(name)
+            LEFT JOIN LATERAL (
+                SELECT id FROM entities
+                WHERE lower(btrim(entity_name)) = lower(btrim(n.name))
+                ORDER BY created_at
+                LIMIT 1
+            ) e ON true
+            """;
+
+    /*
+     * Section entities the lookup did not find, one row per key. Another tree may have created the same
+     * section since the lookup; the no-op update then makes RETURNING yield its id instead of failing the
+     * batch on the unique index. xmax = 0 marks a fresh insert.
+     */
+    private static final String UPSERT_ENTITIES_SQL = """
+            INSERT INTO entities (entity_name, entity_type, description, vector_embedding, metadata, created_at)
+            SELECT name, 'DOCUMENT_SECTION', ?, CAST(embedding AS vector), CAST(metadata AS jsonb), NOW()
+            FROM unnest(CAST(? AS text[]), CAST(? AS text[]), CAST(? AS text[])) AS s(name, embedding, metadata)
+            ON CONFLICT (lower(btrim(entity_name)), COALESCE(entity_type, ''))
+            DO UPDATE SET entity_name = entities.entity_name
+            RETURNING id, lower(btrim(entity_name)) AS name_key, (xmax = 0) AS inserted
+            """;
+
+    private static final String INSERT_JUNCTION_SQL = """
+            INSERT INTO entity_context_junction (entity_id, context_id) VALUES (?, ?)
+            """;
+
+    private static final String INSERT_RELATION_SQL = """
+            INSERT INTO relations (id, source_entity_id, target_entity_id, relation_type, edge_weight, metadata,
+                                   created_at)
+            VALUES (?, ?, ?, 'HAS_SUBSECTION', 1, CAST(? AS jsonb), NOW())
+            ON CONFLICT (source_entity_id, target_entity_id, relation_type) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public DocumentTreeWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Starts writing a tree for the knowledge base.
+     */
+    public Tree open(UUID kbId) {
+        String kbUid = transactionTemplate.execute(status -> {
+            // Section entities and relations of an earlier attempt are kept and reused by name
+            int removed = jdbcTemplate.update(DELETE_PARTIAL_SQL, kbId);
+            if (removed > 0) {
+                log.info("Removed {} contexts left by an earlier attempt at document {}", removed, kbId);
+            }
+            return jdbcTemplate.queryForObject(KB_UID_SQL, String.class, kbId);
+        });
+        return new Tree(kbId, kbUid);
+    }
+
+    /**
+     * Write state of one document: ids of the nodes saved so far, so later
+     * batches can link to parents from earlier ones.
+     */
+    public final class Tree {
+
+        private final UUID kbId;
+        private final String kbUid;
+        private final Map<DocumentNode, UUID> contextIds = new IdentityHashMap<>();
+        private final Map<DocumentNode, UUID> entityIds = new IdentityHashMap<>();
+        // Vectors of saved nodes that have no section entity yet (the root until its first child)
+        private final Map<DocumentNode, String> pendingVectors = new IdentityHashMap<>();
+        // Section titles to their key from FIND_ENTITIES_SQL, and entity ids by that key
+        private final Map<String, String> keysByName = new HashMap<>();
+        private final Map<String, UUID> entitiesByKey = new HashMap<>();
+
+        private Tree(UUID kbId, String kbUid) {
+            this.kbId = kbId;
+            this.kbUid = kbUid;
+        }
+
+        public int size() {
+            return contextIds.size();
+        }
+
+        /**
+         * Writes and commits a batch of nodes whose parents are in this batch
+         * or an earlier one. {@code embeddings} is parallel to {@code batch}.
+         */
+        public void write(List<StreamedNode> batch, List<float[]> embeddings) {
+            transactionTemplate.executeWithoutResult(status -> writeBatch(batch, embeddings));
+        }
+
+        private void writeBatch(List<StreamedNode> batch, List<float[]> embeddings) {
+            List<Object[]> contexts = new ArrayList<>(batch.size());
+            Map<DocumentNode, String> vectors = new IdentityHashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                StreamedNode streamed = batch.get(i);
+                DocumentNode node = streamed.node();
+                UUID contextId = UUID.randomUUID();
+                String vector = toVectorString(embeddings.get(i));
+                contextIds.put(node, contextId);
+                vectors.put(node, vector);
+                contexts.add(new Object[] { contextId, kbId, node.getContent(), vector, streamed.depth(),
+                        objectMapper.createObjectNode()
+                                .put("title", node.getTitle())
+                                .put("summary", node.getSummary())
+                                .put("depth", streamed.depth())
+                                .put("type", "page_index_node")
+                                .toString() });
+            }
+            batchInsert(INSERT_CONTEXT_SQL, contexts);
+
+            // Every node that takes part in a relation is represented by a section entity
+            Map<DocumentNode, String> needEntity = new LinkedHashMap<>();
+            for (StreamedNode streamed : batch) {
+                if (streamed.parent() == null) {
+                    continue;
+                }
+                if (!entityIds.containsKey(streamed.parent())) {
+                    needEntity.putIfAbsent(streamed.parent(), entityName(streamed.parent()));
+                }
+                needEntity.putIfAbsent(streamed.node(), entityName(streamed.node()));
+            }
+            List<Object[]> junctions = new ArrayList<>();
+            int created = resolveEntities(needEntity, vectors, junctions);
+            for (StreamedNode streamed : batch) {
+                if (!entityIds.containsKey(streamed.node())) {
+                    pendingVectors.put(streamed.node(), vectors.get(streamed.node()));
+                }
+            }
+            batchInsert(INSERT_JUNCTION_SQL, junctions);
+
+            List<Object[]> relations = new ArrayList<>();
+            for (StreamedNode streamed : batch) {
+                if (streamed.parent() != null) {
+                    relations.add(new Object[] { UUID.randomUUID(), entityIds.get(streamed.parent()),
+                            entityIds.get(streamed.node()),
+                            objectMapper.createObjectNode()
+                                    .put("extractedFrom", "page_index")
+                                    .put("parentContextId", contextIds.get(streamed.parent()).toString())
+                                    .put("childContextId", contextIds.get(streamed.node()).toString())
+                                    .toString() });
+                }
+            }
+            batchInsert(INSERT_RELATION_SQL, relations);
+
+            log.info("PAGE_INDEX_BATCH | kb={} | nodes={} | new_entities={} | relations={}", kbId, batch.size(),
+                    created, relations.size());
+        }
+
+        /**
+         * Section entities are shared by name: an existing entity (from the
+         * database or an earlier node of this tree) is reused, otherwise one
+         * is upserted and, if this tree created it, linked to the node's
+         * context.
+         *
+         * @return the number of entities created
+         */
+        private int resolveEntities(Map<DocumentNode, String> needEntity, Map<DocumentNode, String> vectors,
+                List<Object[]> junctions) {
+            List<String> unknown = needEntity.values().stream()
+                    .filter(name -> !keysByName.containsKey(name))
+                    .distinct()
+                    .toList();
+            if (!unknown.isEmpty()) {
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(FIND_ENTITIES_SQL);
+                    ps.setArray(1, con.createArrayOf("text", unknown.toArray()));
+                    return ps;
+                }, rs -> {
+                    String key = rs.getString("name_key");
+                    keysByName.put(rs.getString("name"), key);
+                    UUID existing = rs.getObject("id", UUID.class);
+                    if (existing != null) {
+                        entitiesByKey.putIfAbsent(key, existing);
+                    }
+                });
+            }
+
+            // The first node of each missing key provides the new entity
+            Map<String, DocumentNode> missing = new LinkedHashMap<>();
+            needEntity.forEach((node, name) -> {
+                String key = keysByName.get(name);
+                if (!entitiesByKey.containsKey(key)) {
+                    missing.putIfAbsent(key, node);
+                }
+            });
+            int created = missing.isEmpty() ? 0 : upsertEntities(missing, needEntity, vectors, junctions);
+
+            needEntity.forEach((node, name) -> {
+                entityIds.put(node, entitiesByKey.get(keysByName.get(name)));
+                pendingVectors.remove(node);
+            });
+            return created;
+        }
+
+        private int upsertEntities(Map<String, DocumentNode> missing, Map<DocumentNode, String> needEntity,
+                Map<DocumentNode, String> vectors, List<Object[]> junctions) {
+            List<String> names = new ArrayList<>(missing.size());
+            List<String> entityVectors = new ArrayList<>(missing.size());
+            List<String> metadata = new ArrayList<>(missing.size());
+            missing.values().forEach(node -> {
+                names.add(needEntity.get(node));
+                entityVectors.add(vectors.containsKey(node) ? vectors.get(node) : pendingVectors.get(node));
+                metadata.add(objectMapper.createObjectNode()
+                        .put("isSectionEntity", true)
+                        .put("contextId", contextIds.get(node).toString())
+                        .toString());
+            });
+
+            int[] created = { 0 };
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(UPSERT_ENTITIES_SQL);
+                ps.setString(1, "Section from document " + kbUid);
+                ps.setArray(2, con.createArrayOf("text", names.toArray()));
+                ps.setArray(3, con.createArrayOf("text", entityVectors.toArray()));
+                ps.setArray(4, con.createArrayOf("text", metadata.toArray()));
+                return ps;
+            }, rs -> {
+                String key = rs.getString("name_key");
+                UUID entityId = rs.getObject("id", UUID.class);
+                entitiesByKey.put(key, entityId);
+                if (rs.getBoolean("inserted")) {
+                    junctions.add(new Object[] { entityId, contextIds.get(missing.get(key)) });
+                    created[0]++;
+                }
+            });
+            return created[0];
+        }
+
+        private String entityName(DocumentNode node) {
+            return node.getTitle() != null
+                    ? node.getTitle()
+                    : "Section_" + contextIds.get(node).toString().substring(0, 8);
+        }
+    }
+
+    private void batchInsert(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+        }
+    }
+
+    // Converts float array to PostgreSQL vector string format
+    private static String toVectorString(float[] embedding) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < embedding.length; i++) {
+            sb.append(embedding[i]);
+            if (i < embedding.length - 1) {
+                sb.append(",");
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
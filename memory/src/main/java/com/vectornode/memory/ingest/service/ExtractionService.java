@@ -84,7 +84,7 @@ public class ExtractionService {
             }
 
             String prompt = String.format(EXTRACTION_PROMPT, contextText);
-            String response = LLMProvider.callLLM(prompt);
+            String response = LLMProvider.callLLM(LLMProvider.PROFILE_EXTRACTION, prompt);
 
             // Clean response (remove markdown code blocks if present)
             response = cleanJsonResponse(response);
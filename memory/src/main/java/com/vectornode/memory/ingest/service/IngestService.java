@@ -1,6 +1,7 @@
 package com.vectornode.memory.ingest.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vectornode.memory.config.EmbeddingDimensions;
 import com.vectornode.memory.config.LLMProvider;
 import com.vectornode.memory.entity.KnowledgeBase;
 import com.vectornode.memory.ingest.dto.request.IngestDocumentRequest;
@@ -105,7 +106,7 @@ public class IngestService {
                                         .converser(com.vectornode.memory.entity.enums.ConverserRole.DOCUMENT)
                                         .content(request.getDocumentText())
                                         // Documents might be too large to embed whole natively - we will leave it null
-                                        .vectorEmbedding(new float[768])
+                                        .vectorEmbedding(new float[EmbeddingDimensions.get()])
                                         .build();
 
                         // Add metadata
@@ -0,0 +1,336 @@
+package com.vectornode.memory.ingest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vectornode.memory.entity.Context;
+import com.vectornode.memory.entity.KnowledgeBase;
+import com.vectornode.memory.ingest.job.IngestJob;
+import com.vectornode.memory.ingest.job.IngestJobQueue;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persist stage of the ingestion pipeline. Receives the results of the LLM
+ * stages and writes each in one short transaction, so no connection is
+ * held while the model is generating.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IngestionWriter {
+
+    /*
+     * Extracted entities, one row per input in order. Rows are deduplicated by normalized name and type
+     * before the insert, since one statement may not update the same row twice; entities that already
+     * exist take a no-op update so that RETURNING yields their id too. xmax = 0 marks a fresh insert.
+     */
+    private static final String UPSERT_ENTITIES_SQL = """
+            WITH input AS (
+                SELECT * FROM unnest(CAST(? AS text[]), CAST(? AS text[]), CAST(? AS text[]),
+                                     CAST(? AS text[]), CAST(? AS text[]))
+                    WITH ORDINALITY AS i(name, type, description, embedding, metadata, ord)
+            ), upserted AS (
+                INSERT INTO entities (entity_name, entity_type, description, vector_embedding, metadata, created_at)
+                SELECT DISTINCT ON (lower(btrim(name)), COALESCE(type, ''))
+                       name, type, description, CAST(embedding AS vector), CAST(metadata AS jsonb), NOW()
+                FROM input
+                ORDER BY lower(btrim(name)), COALESCE(type, ''), ord
+                ON CONFLICT (lower(btrim(entity_name)), COALESCE(entity_type, ''))
+                DO UPDATE SET entity_name = entities.entity_name
+                RETURNING id, entity_name, entity_type, (xmax = 0) AS inserted
+            )
+            SELECT i.ord, u.id, u.entity_name, u.inserted
+            FROM input i
+            JOIN upserted u ON lower(btrim(u.entity_name)) = lower(btrim(i.name))
+                           AND COALESCE(u.entity_type, '') = COALESCE(i.type, '')
+            ORDER BY i.ord
+            """;
+
+    private static final String INSERT_JUNCTIONS_SQL = """
+            INSERT INTO entity_context_junction (entity_id, context_id)
+            SELECT entity_id, ? FROM unnest(CAST(? AS uuid[])) AS j(entity_id)
+            ON CONFLICT DO NOTHING
+            """;
+
+    /*
+     * Relations name their endpoints, not entities. An endpoint resolves to the extracted entity with the
+     * same normalized name; when one name was extracted under several types ("Apple" ORGANIZATION and
+     * PRODUCT), the entity spelled exactly like the endpoint wins, then the one extracted first. Repeated
+     * triples add up to one edge weight. Mentions that resolve to no edge are returned with a null id.
+     */
+    private static final String UPSERT_RELATIONS_SQL = """
+            WITH entity AS (
+                SELECT * FROM unnest(CAST(? AS uuid[]), CAST(? AS text[])) WITH ORDINALITY AS e(id, name, ord)
+            ), mention AS (
+                SELECT * FROM unnest(CAST(? AS text[]), CAST(? AS text[]), CAST(? AS text[]))
+                    AS m(source_name, target_name, relation_type)
+            ), resolved AS (
+                SELECT m.*,
+                       (SELECT e.id FROM entity e
+                        WHERE lower(btrim(e.name)) = lower(btrim(m.source_name))
+                        ORDER BY e.name = m.source_name DESC, e.ord LIMIT 1) AS source_id,
+                       (SELECT e.id FROM entity e
+                        WHERE lower(btrim(e.name)) = lower(btrim(m.target_name))
+                        ORDER BY e.name = m.target_name DESC, e.ord LIMIT 1) AS target_id
+                FROM mention m
+            ), upserted AS (
+                INSERT INTO relations (source_entity_id, target_entity_id, relation_type, edge_weight, metadata,
+                                       created_at)
+                SELECT source_id, target_id, relation_type, CAST(count(*) AS int),
+                       jsonb_build_object('extractedFrom', 'context', 'contextId', CAST(? AS text),
+                                          'edgeWeight', count(*)),
+                       NOW()
+                FROM resolved
+                WHERE source_id IS NOT NULL AND target_id IS NOT NULL AND relation_type IS NOT NULL
+                GROUP BY source_id, target_id, relation_type
+                ON CONFLICT (source_entity_id, target_entity_id, relation_type)
+                DO UPDATE SET edge_weight = relations.edge_weight + EXCLUDED.edge_weight
+                RETURNING id, source_entity_id, target_entity_id, relation_type, edge_weight,
+                          (xmax = 0) AS inserted
+            )
+            SELECT id, source_entity_id, target_entity_id, relation_type, edge_weight, inserted,
+                   NULL AS source_name, NULL AS target_name
+            FROM upserted
+            UNION ALL
+            SELECT NULL, NULL, NULL, relation_type, NULL, NULL, source_name, target_name
+            FROM resolved
+            WHERE source_id IS NULL OR target_id IS NULL OR relation_type IS NULL
+            """;
+
+    private final ObjectMapper objectMapper;
+    private final IngestJobQueue ingestJobQueue;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * A compressed prompt after synthesis: either a new memory, or the
+     * merged text of the existing context it was folded into.
+     *
+     * @param existingContextId context to update; null to insert a new one
+     */
+    public record Memory(UUID existingContextId, String text, float[] embedding,
+            ChunkingService.CompressedChunk compressed) {
+    }
+
+    /**
+     * Entities and relations extracted from a text, with one embedding per
+     * entity.
+     */
+    public record Extraction(ExtractionService.ExtractionResult result, List<float[]> entityEmbeddings) {
+    }
+
+    /**
+     * Inserts or updates the memory's context. Either way a CONTEXT_CREATED
+     * job is committed with it, so entities are extracted from the new text
+     * by a separate job: the insert trigger enqueues it for new contexts,
+     * and merges enqueue it here.
+     *
+     * @return the context id
+     */
+    @Transactional
+    public UUID writeMemory(UUID kbId, Memory memory) {
+        if (memory.existingContextId() == null) {
+            return insertContext(kbId, memory);
+        }
+        Context merged = mergeContext(memory);
+        ingestJobQueue.enqueue(IngestJob.CONTEXT_CREATED, merged.getId(),
+                merged.getKnowledgeBase() != null ? merged.getKnowledgeBase().getId() : null);
+        return merged.getId();
+    }
+
+    /**
+     * Persists the entities and relations extracted from a context with
+     * three set-based statements: an entity upsert, the junction rows and a
+     * relation upsert that resolves endpoint names to the upserted entities
+     * and adds to the edge weight of existing relations.
+     */
+    @Transactional
+    public void writeExtraction(UUID contextId, Extraction extraction) {
+        saveExtraction(contextId, extraction);
+    }
+
+    private UUID insertContext(UUID kbId, Memory memory) {
+        ChunkingService.CompressedChunk compressed = memory.compressed();
+        Context context = Context.builder()
+                .knowledgeBase(entityManager.getReference(KnowledgeBase.class, kbId))
+                .textChunk(memory.text())
+                .vectorEmbedding(memory.embedding())
+                .chunkIndex(0)
+                .build();
+
+        // Add metadata for SimpleMem
+        context.setMetadata(objectMapper.createObjectNode()
+                .put("topic", compressed.topic())
+                .put("timestamp", compressed.timestamp())
+                .put("chunkLength", memory.text().length())
+                .putPOJO("keywords", compressed.keywords()));
+
+        entityManager.persist(context);
+        entityManager.flush(); // ensure ID is generated
+
+        log.info("CONTEXT_INSERTED | id={} | kb_id={} | topic={} | keywords={}",
+                context.getId(),
+                kbId,
+                compressed.topic(),
+                compressed.keywords());
+        return context.getId();
+    }
+
+    private Context mergeContext(Memory memory) {
+        ChunkingService.CompressedChunk compressed = memory.compressed();
+        Context existingContext = entityManager.find(Context.class, memory.existingContextId());
+        existingContext.setTextChunk(memory.text());
+        existingContext.setVectorEmbedding(memory.embedding());
+
+        // Update metadata with new keywords
+        ObjectNode meta = (ObjectNode) existingContext.getMetadata();
+        if (meta == null)
+            meta = objectMapper.createObjectNode();
+
+        ArrayNode keywordsNode = meta.putArray("keywords");
+        compressed.keywords().forEach(keywordsNode::add);
+
+        meta.put("topic", compressed.topic());
+        meta.put("lastMergedTimestamp", compressed.timestamp());
+        meta.put("synthesisCount", meta.has("synthesisCount") ? meta.get("synthesisCount").asInt() + 1 : 1);
+
+        existingContext.setMetadata(meta);
+        entityManager.merge(existingContext);
+
+        log.info("CONTEXT_MERGED | id={} | new_text_length={} | synthesis_count={}",
+                existingContext.getId(), memory.text().length(), meta.get("synthesisCount").asInt());
+        return existingContext;
+    }
+
+    private void saveExtraction(UUID contextId, Extraction extraction) {
+        ExtractionService.ExtractionResult result = extraction.result();
+        List<ExtractionService.ExtractedEntity> extracted = result.getEntities();
+        if (extracted.isEmpty()) {
+            return;
+        }
+
+        // 1. Upsert all entities in one statement; each extracted entity gets the id of its row
+        int count = extracted.size();
+        String[] names = new String[count];
+        String[] types = new String[count];
+        String[] descriptions = new String[count];
+        String[] vectors = new String[count];
+        String[] metadata = new String[count];
+        for (int i = 0; i < count; i++) {
+            ExtractionService.ExtractedEntity entity = extracted.get(i);
+            float[] embedding = extraction.entityEmbeddings().get(i);
+            names[i] = entity.getName();
+            types[i] = entity.getType();
+            descriptions[i] = entity.getDescription();
+            vectors[i] = toVectorString(embedding);
+            metadata[i] = objectMapper.createObjectNode()
+                    .put("extractedFrom", "context")
+                    .put("contextId", contextId.toString())
+                    .put("embeddingDimensions", embedding.length)
+                    .put("descriptionLength", entity.getDescription() != null ? entity.getDescription().length() : 0)
+                    .toString();
+        }
+
+        UUID[] entityIds = new UUID[count];
+        Set<UUID> logged = new HashSet<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(UPSERT_ENTITIES_SQL);
+            ps.setArray(1, con.createArrayOf("text", names));
+            ps.setArray(2, con.createArrayOf("text", types));
+            ps.setArray(3, con.createArrayOf("text", descriptions));
+            ps.setArray(4, con.createArrayOf("text", vectors));
+            ps.setArray(5, con.createArrayOf("text", metadata));
+            return ps;
+        }, rs -> {
+            int index = rs.getInt("ord") - 1;
+            UUID entityId = rs.getObject("id", UUID.class);
+            entityIds[index] = entityId;
+            if (logged.add(entityId)) {
+                if (rs.getBoolean("inserted")) {
+                    log.info("ENTITY_ROW | id={} | name={} | type={} | description_length={} | vector_dims={}",
+                            entityId, names[index], types[index],
+                            descriptions[index] != null ? descriptions[index].length() : 0,
+                            extraction.entityEmbeddings().get(index).length);
+                } else {
+                    log.info("ENTITY_EXISTS | id={} | name={}", entityId, rs.getString("entity_name"));
+                }
+            }
+        });
+
+        // 2. Link the entities to the context (entity_context_junction)
+        UUID[] linked = logged.toArray(UUID[]::new);
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_JUNCTIONS_SQL);
+            ps.setObject(1, contextId);
+            ps.setArray(2, con.createArrayOf("uuid", linked));
+            return ps;
+        });
+        log.info("JUNCTION_ROWS | context_id={} | entities={}", contextId, linked.length);
+
+        // 3. Resolve relation endpoints against these entities and upsert the edges
+        List<ExtractionService.ExtractedRelation> relations = result.getRelations();
+        if (relations.isEmpty()) {
+            return;
+        }
+        String[] sourceNames = relations.stream().map(ExtractionService.ExtractedRelation::getSourceName)
+                .toArray(String[]::new);
+        String[] targetNames = relations.stream().map(ExtractionService.ExtractedRelation::getTargetName)
+                .toArray(String[]::new);
+        String[] relationTypes = relations.stream().map(ExtractionService.ExtractedRelation::getRelationType)
+                .toArray(String[]::new);
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(UPSERT_RELATIONS_SQL);
+            ps.setArray(1, con.createArrayOf("uuid", entityIds));
+            ps.setArray(2, con.createArrayOf("text", names));
+            ps.setArray(3, con.createArrayOf("text", sourceNames));
+            ps.setArray(4, con.createArrayOf("text", targetNames));
+            ps.setArray(5, con.createArrayOf("text", relationTypes));
+            ps.setString(6, contextId.toString());
+            return ps;
+        }, rs -> {
+            UUID relationId = rs.getObject("id", UUID.class);
+            if (relationId == null) {
+                String relationType = rs.getString("relation_type");
+                log.warn("RELATION_SKIPPED | source={} | target={} | relation_type={} | reason={}",
+                        rs.getString("source_name"), rs.getString("target_name"), relationType,
+                        relationType == null ? "missing_relation_type" : "source_or_target_not_found");
+                return;
+            }
+            log.info("{} | id={} | source={} | target={} | type={} | edge_weight={}",
+                    rs.getBoolean("inserted") ? "RELATION_NEW" : "RELATION_INCREMENT",
+                    relationId,
+                    rs.getObject("source_entity_id", UUID.class),
+                    rs.getObject("target_entity_id", UUID.class),
+                    rs.getString("relation_type"),
+                    rs.getInt("edge_weight"));
+        });
+    }
+
+    // Converts float array to PostgreSQL vector string format
+    private static String toVectorString(float[] embedding) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < embedding.length; i++) {
+            sb.append(embedding[i]);
+            if (i < embedding.length - 1) {
+                sb.append(",");
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
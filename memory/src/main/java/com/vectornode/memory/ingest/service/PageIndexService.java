@@ -3,14 +3,27 @@ package com.vectornode.memory.ingest.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vectornode.memory.config.LLMAsync;
+import com.vectornode.memory.config.LLMLane;
 import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.ingest.splitter.StructuralDocumentParser;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Service for extracting hierarchical "Table of Contents" trees from large
@@ -22,20 +35,448 @@ import java.util.List;
 @Slf4j
 public class PageIndexService {
 
+    // Documents longer than this are processed as concurrent windows; 0 disables windowing
+    public static final int DEFAULT_WINDOW_CHARS = 16_000;
+
+    // Heading markup that may precede an anchor on its line
+    private static final Pattern HEADING_MARKUP = Pattern.compile("[\\s#*\\d.]*");
+
+    // Sections summarised per LLM call when structural summaries use the model
+    public static final int SUMMARY_BATCH_SIZE = 20;
+    // Section text sent per section in a summary batch
+    private static final int SUMMARY_INPUT_CHARS = 1_500;
+    private static final int EXTRACTIVE_SUMMARY_CHARS = 200;
+
+    private static final Pattern FIRST_SENTENCE = Pattern.compile("^.+?[.!?](?=\\s|$)");
+
     private final ObjectMapper objectMapper;
+    private final ChunkingService chunkingService;
+    private final StructuralDocumentParser structuralParser;
+
+    // Markdown/HTML/numbered headings are turned into a tree directly; the LLM only handles unstructured text
+    @Value("${cortex.pageindex.structural-parser:true}")
+    private boolean structuralParserEnabled = true;
+
+    @Value("${cortex.pageindex.window-chars:" + DEFAULT_WINDOW_CHARS + "}")
+    private int windowChars = DEFAULT_WINDOW_CHARS;
+
+    /**
+     * CONTENT: the model echoes every section's text in its output.
+     * ANCHORS: the model returns only titles, summaries and the first line of
+     * each section; section text is sliced from the document locally, so
+     * output tokens no longer grow with document size.
+     */
+    public enum OutputMode {
+        CONTENT, ANCHORS
+    }
+
+    @Value("${cortex.pageindex.output-mode:anchors}")
+    private String outputMode = "anchors";
+
+    /**
+     * Summaries for structurally parsed trees. EXTRACTIVE: the first sentence
+     * of each section, no LLM call. LLM: sections are summarised by the model
+     * in batches of {@value #SUMMARY_BATCH_SIZE}; a batch that fails keeps
+     * its extractive summaries.
+     */
+    public enum SummaryMode {
+        EXTRACTIVE, LLM
+    }
+
+    @Value("${cortex.pageindex.structural-summaries:extractive}")
+    private String structuralSummaries = "extractive";
+
+    // Windows are generated concurrently; like the single-call path, they have no timeout of their own
+    private final ExecutorService windowExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     @Data
     public static class DocumentNode {
         private String title;
         private String summary;
         private String content;
+        // First line of the section as it appears in the document (ANCHORS mode)
+        private String anchor;
         private List<DocumentNode> children = new ArrayList<>();
     }
 
+    /**
+     * A node of a streamed tree with its parent (null for the root) and depth.
+     */
+    public record StreamedNode(DocumentNode node, DocumentNode parent, int depth) {
+    }
+
     public DocumentNode generateDocumentTree(String documentText) {
         log.info("Generating document tree for text of length: {}", documentText.length());
 
-        String prompt = """
+        Optional<DocumentNode> structured = parseStructure(documentText);
+        if (structured.isPresent()) {
+            return structured.get();
+        }
+
+        if (isWindowed(documentText)) {
+            return generateWindowedTree(documentText);
+        }
+
+        return generateTree(documentText, "");
+    }
+
+    /**
+     * Streaming variant of {@link #generateDocumentTree}: nodes are emitted in
+     * pre-order, parents first, each with its final content, while the model
+     * is still generating the rest of the tree. Only the single-call LLM path
+     * streams; structured and windowed documents emit their finished tree.
+     */
+    public Flux<StreamedNode> streamDocumentTree(String documentText) {
+        return Flux.defer(() -> {
+            log.info("Streaming document tree for text of length: {}", documentText.length());
+
+            Optional<DocumentNode> structured = parseStructure(documentText);
+            if (structured.isPresent()) {
+                return Flux.fromIterable(preOrder(structured.get()));
+            }
+            if (isWindowed(documentText)) {
+                return Flux.fromIterable(preOrder(generateWindowedTree(documentText)));
+            }
+
+            boolean anchors = outputMode() == OutputMode.ANCHORS;
+            String prompt = anchors ? buildAnchorPrompt(documentText, "") : buildTreePrompt(documentText, "");
+            DocumentTreeStreamParser parser = new DocumentTreeStreamParser(objectMapper, documentText, anchors);
+            return LLMProvider.streamLLM(LLMProvider.PROFILE_EXTRACTION, prompt)
+                    .concatMapIterable(parser::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(parser.finish())));
+        });
+    }
+
+    /**
+     * Flattens a tree into pre-order, the order nodes are streamed in.
+     */
+    public static List<StreamedNode> preOrder(DocumentNode root) {
+        List<StreamedNode> nodes = new ArrayList<>();
+        collectPreOrder(root, null, 0, nodes);
+        return nodes;
+    }
+
+    private static void collectPreOrder(DocumentNode node, DocumentNode parent, int depth, List<StreamedNode> nodes) {
+        nodes.add(new StreamedNode(node, parent, depth));
+        if (node.getChildren() != null) {
+            for (DocumentNode child : node.getChildren()) {
+                collectPreOrder(child, node, depth + 1, nodes);
+            }
+        }
+    }
+
+    private Optional<DocumentNode> parseStructure(String documentText) {
+        if (!structuralParserEnabled) {
+            return Optional.empty();
+        }
+        Optional<DocumentNode> parsed = structuralParser.parse(documentText);
+        if (parsed.isEmpty()) {
+            return parsed;
+        }
+        log.info("Document has explicit headings, building tree without the LLM");
+        return Optional.of(summarize(parsed.get()));
+    }
+
+    private boolean isWindowed(String documentText) {
+        return windowChars > 0 && documentText.length() > windowChars;
+    }
+
+    private DocumentNode generateTree(String text, String scope) {
+        if (outputMode() == OutputMode.ANCHORS) {
+            String llmResponse = LLMProvider.callLLM(LLMProvider.PROFILE_EXTRACTION, buildAnchorPrompt(text, scope));
+            return sliceByAnchors(parseLlmResponse(llmResponse), text);
+        }
+        String llmResponse = LLMProvider.callLLM(LLMProvider.PROFILE_EXTRACTION, buildTreePrompt(text, scope));
+        return parseLlmResponse(llmResponse);
+    }
+
+    private OutputMode outputMode() {
+        return OutputMode.valueOf(outputMode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private SummaryMode summaryMode() {
+        return SummaryMode.valueOf(structuralSummaries.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Fills in summaries for a structurally parsed tree. Extractive summaries
+     * are always set first, so a failed LLM batch still leaves one.
+     */
+    private DocumentNode summarize(DocumentNode root) {
+        List<DocumentNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        collectSections(root, nodes);
+        for (DocumentNode node : nodes) {
+            node.setSummary(extractiveSummary(node));
+        }
+        if (root.getSummary().isEmpty() && !root.getChildren().isEmpty()) {
+            root.setSummary("Sections: " + String.join(", ",
+                    root.getChildren().stream().map(DocumentNode::getTitle).toList()));
+        }
+        if (summaryMode() != SummaryMode.LLM) {
+            return root;
+        }
+
+        // Summaries are short outputs, so batches use the regular async executor and its timeout
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int from = 0; from < nodes.size(); from += SUMMARY_BATCH_SIZE) {
+            List<DocumentNode> batch = nodes.subList(from, Math.min(from + SUMMARY_BATCH_SIZE, nodes.size()));
+            futures.add(LLMAsync.supply(() -> summarizeBatch(batch)));
+        }
+        int summarized = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            try {
+                summarized += LLMAsync.await(future);
+            } catch (RuntimeException e) {
+                log.warn("Summary batch failed, keeping extractive summaries: {}", e.getMessage());
+            }
+        }
+        log.info("Summarized {} of {} sections in {} LLM calls", summarized, nodes.size(), futures.size());
+        return root;
+    }
+
+    private int summarizeBatch(List<DocumentNode> batch) {
+        try {
+            String response = LLMProvider.callLLM(LLMProvider.PROFILE_EXTRACTION, buildSummaryPrompt(batch));
+            JsonNode summaries = objectMapper.readTree(extractJson(response));
+            if (!summaries.isArray() || summaries.size() != batch.size()) {
+                log.warn("Summary batch returned {} summaries for {} sections, keeping extractive summaries",
+                        summaries.size(), batch.size());
+                return 0;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                String summary = summaries.get(i).asText("").strip();
+                if (!summary.isEmpty()) {
+                    batch.get(i).setSummary(summary);
+                }
+            }
+            return batch.size();
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Summary batch of {} sections failed, keeping extractive summaries: {}", batch.size(),
+                    e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * First sentence of the section body (the text after its heading line),
+     * without markup.
+     */
+    static String extractiveSummary(DocumentNode node) {
+        String content = Objects.requireNonNullElse(node.getContent(), "");
+        if (node.getAnchor() != null) {
+            int lineEnd = content.indexOf('\n');
+            content = lineEnd < 0 ? "" : content.substring(lineEnd + 1);
+        }
+        String body = StructuralDocumentParser.plainText(content.replaceAll("[#*_`>|]+", " "));
+        Matcher sentence = FIRST_SENTENCE.matcher(body);
+        String summary = sentence.find() ? sentence.group() : body;
+        return summary.length() > EXTRACTIVE_SUMMARY_CHARS
+                ? summary.substring(0, EXTRACTIVE_SUMMARY_CHARS).strip() + "..."
+                : summary;
+    }
+
+    private static String buildSummaryPrompt(List<DocumentNode> batch) {
+        StringBuilder sections = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            DocumentNode node = batch.get(i);
+            String content = Objects.requireNonNullElse(node.getContent(), "");
+            sections.append("[").append(i + 1).append("] ")
+                    .append(Objects.requireNonNullElse(node.getTitle(), "Introduction")).append("\n")
+                    .append(content, 0, Math.min(content.length(), SUMMARY_INPUT_CHARS)).append("\n\n");
+        }
+        return """
+                Summarize each numbered section below in one sentence.
+                Output ONLY a JSON array of %d strings, one summary per section in the same order,
+                enclosed in triple backticks ````json ... ````.
+
+                Sections:
+                """.formatted(batch.size())
+                + sections;
+    }
+
+    /**
+     * Map-reduce mode for documents larger than one window: the document is
+     * split at heading or paragraph boundaries, each window's subtree is
+     * generated concurrently, and the subtrees are merged without another
+     * LLM call. Latency is bounded by the slowest window.
+     */
+    private DocumentNode generateWindowedTree(String documentText) {
+        List<String> windows = chunkingService.splitIntoWindows(documentText, windowChars);
+        log.info("Document exceeds {} chars, generating tree over {} windows", windowChars, windows.size());
+
+        // Window calls keep the caller's rate-limiter lane; the limiter bounds their concurrency
+        LLMLane lane = LLMLane.current();
+        List<CompletableFuture<DocumentNode>> futures = new ArrayList<>(windows.size());
+        for (int i = 0; i < windows.size(); i++) {
+            String scope = "This is part %d of %d of a larger document; describe only this part.%n"
+                    .formatted(i + 1, windows.size());
+            String window = windows.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> lane.call(() -> generateTree(window, scope)),
+                    windowExecutor));
+        }
+
+        List<DocumentNode> subtrees = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<DocumentNode> future : futures) {
+                subtrees.add(LLMAsync.await(future));
+            }
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return mergeWindowTrees(subtrees);
+    }
+
+    /**
+     * Reduces per-window trees into one: the first window's root becomes the
+     * document root; the text before the first section of each later window
+     * continues the previous window's last section; every window's sections
+     * are appended in order.
+     */
+    static DocumentNode mergeWindowTrees(List<DocumentNode> subtrees) {
+        DocumentNode root = new DocumentNode();
+        DocumentNode first = subtrees.get(0);
+        root.setTitle(first.getTitle());
+        root.setContent(Objects.requireNonNullElse(first.getContent(), ""));
+
+        StringBuilder summary = new StringBuilder();
+        for (DocumentNode subtree : subtrees) {
+            if (subtree.getSummary() != null && !subtree.getSummary().isBlank()) {
+                summary.append(summary.isEmpty() ? "" : " ").append(subtree.getSummary().strip());
+            }
+        }
+        root.setSummary(summary.toString());
+
+        for (int i = 0; i < subtrees.size(); i++) {
+            DocumentNode subtree = subtrees.get(i);
+            if (i > 0 && subtree.getContent() != null && !subtree.getContent().isBlank()) {
+                DocumentNode last = lastDescendant(root);
+                last.setContent(Objects.requireNonNullElse(last.getContent(), "") + subtree.getContent());
+            }
+            if (subtree.getChildren() != null) {
+                root.getChildren().addAll(subtree.getChildren());
+            }
+        }
+        return root;
+    }
+
+    private static DocumentNode lastDescendant(DocumentNode node) {
+        while (node.getChildren() != null && !node.getChildren().isEmpty()) {
+            node = node.getChildren().get(node.getChildren().size() - 1);
+        }
+        return node;
+    }
+
+    /**
+     * Fills in section content from the anchors the model returned. Anchors
+     * are located in document order; each located section runs from its
+     * anchor to the next located anchor, and the root keeps the text before
+     * the first one. A section whose anchor cannot be found gets no content
+     * of its own; its text stays with the preceding section, so no text is
+     * lost or duplicated.
+     */
+    static DocumentNode sliceByAnchors(DocumentNode root, String text) {
+        List<DocumentNode> sections = new ArrayList<>();
+        collectSections(root, sections);
+
+        List<DocumentNode> located = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        int cursor = 0;
+        for (DocumentNode section : sections) {
+            int start = locateAnchor(text, section.getAnchor(), cursor);
+            section.setContent("");
+            if (start < 0) {
+                log.warn("PageIndex anchor not found, merging section into its predecessor: {}", section.getTitle());
+                continue;
+            }
+            located.add(section);
+            starts.add(start);
+            cursor = start + 1;
+        }
+
+        root.setContent(text.substring(0, starts.isEmpty() ? text.length() : starts.get(0)));
+        for (int i = 0; i < located.size(); i++) {
+            int end = i + 1 < starts.size() ? starts.get(i + 1) : text.length();
+            located.get(i).setContent(text.substring(starts.get(i), end));
+        }
+        return root;
+    }
+
+    private static void collectSections(DocumentNode node, List<DocumentNode> sections) {
+        if (node.getChildren() == null) {
+            node.setChildren(new ArrayList<>());
+        }
+        for (DocumentNode child : node.getChildren()) {
+            sections.add(child);
+            collectSections(child, sections);
+        }
+    }
+
+    /**
+     * Finds the anchor at or after {@code from}: verbatim first, then ignoring
+     * case and whitespace differences. A match preceded on its line only by
+     * heading markup ("#", numbering) is moved to the start of the line.
+     */
+    static int locateAnchor(String text, String anchor, int from) {
+        if (anchor == null || anchor.isBlank() || from >= text.length()) {
+            return -1;
+        }
+        String needle = anchor.strip();
+        int start = text.indexOf(needle, from);
+        if (start < 0) {
+            String[] words = needle.split("\\s+");
+            StringBuilder pattern = new StringBuilder();
+            for (String word : words) {
+                pattern.append(pattern.isEmpty() ? "" : "\\s+").append(Pattern.quote(word));
+            }
+            Matcher matcher = Pattern.compile(pattern.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)
+                    .matcher(text);
+            if (!matcher.find(from)) {
+                return -1;
+            }
+            start = matcher.start();
+        }
+
+        int lineStart = text.lastIndexOf('\n', start - 1) + 1;
+        if (lineStart >= from && HEADING_MARKUP.matcher(text.substring(lineStart, start)).matches()) {
+            return lineStart;
+        }
+        return start;
+    }
+
+    private static String buildAnchorPrompt(String documentText, String scope) {
+        return """
+                Analyze the following document and output a nested JSON structure representing its Table of Contents.
+                Do NOT copy section text into the output: sections are cut out of the document using their anchors.
+                The JSON MUST strictly follow this exact structure, enclosed in triple backticks ````json ... ````:
+                {
+                  "title": "Root Document Title",
+                  "summary": "A brief summary of the entire document.",
+                  "children": [
+                     {
+                       "title": "Section 1 Title",
+                       "summary": "Summary of Section 1",
+                       "anchor": "The first line of section 1 (usually its heading), copied verbatim from the document",
+                       "children": [ ... any subsections ... ]
+                     }
+                  ]
+                }
+
+                List sections in the order they appear in the document. Every anchor must be copied exactly and be unique.
+                If there are no sections, leave "children" empty [].
+                Ensure valid JSON formatting.
+                """
+                + scope
+                + """
+
+                Document:
+                """
+                + documentText;
+    }
+
+    private static String buildTreePrompt(String documentText, String scope) {
+        return """
                 Analyze the following document and output a nested JSON structure representing its Table of Contents.
                 The JSON MUST strictly follow this exact structure, enclosed in triple backticks ````json ... ````:
                 {
@@ -55,46 +496,49 @@ public class PageIndexService {
                 If there are no sections, just put all the text in the root "content" field and leave "children" empty [].
                 Ensure all text from the document is fully preserved within the "content" fields of the respective nodes.
                 Ensure valid JSON formatting.
+                """
+                + scope
+                + """
 
                 Document:
                 """
                 + documentText;
-
-        String llmResponse = LLMProvider.callLLM(prompt);
-        return parseLlmResponse(llmResponse);
     }
 
     private DocumentNode parseLlmResponse(String llmResponse) {
         try {
-            // Find the JSON block in the response
-            int startIndex = llmResponse.indexOf("```json");
+            return objectMapper.readValue(extractJson(llmResponse), DocumentNode.class);
+
+        } catch (Exception e) {
+            log.error("Failed to parse LLM JSON response for document tree. Raw response: {}", llmResponse, e);
+            throw new RuntimeException("Failed to parse document tree from LLM", e);
+        }
+    }
+
+    private static String extractJson(String llmResponse) {
+        // Find the JSON block in the response
+        int startIndex = llmResponse.indexOf("```json");
+        if (startIndex != -1) {
+            startIndex += 7;
+            int endIndex = llmResponse.lastIndexOf("```");
+            if (endIndex > startIndex) {
+                llmResponse = llmResponse.substring(startIndex, endIndex).trim();
+            } else {
+                llmResponse = llmResponse.substring(startIndex).trim();
+            }
+        } else {
+            // Try without specific language tag
+            startIndex = llmResponse.indexOf("```");
             if (startIndex != -1) {
-                startIndex += 7;
+                startIndex += 3;
                 int endIndex = llmResponse.lastIndexOf("```");
                 if (endIndex > startIndex) {
                     llmResponse = llmResponse.substring(startIndex, endIndex).trim();
                 } else {
                     llmResponse = llmResponse.substring(startIndex).trim();
                 }
-            } else {
-                // Try without specific language tag
-                startIndex = llmResponse.indexOf("```");
-                if (startIndex != -1) {
-                    startIndex += 3;
-                    int endIndex = llmResponse.lastIndexOf("```");
-                    if (endIndex > startIndex) {
-                        llmResponse = llmResponse.substring(startIndex, endIndex).trim();
-                    } else {
-                        llmResponse = llmResponse.substring(startIndex).trim();
-                    }
-                }
             }
-
-            return objectMapper.readValue(llmResponse, DocumentNode.class);
-
-        } catch (Exception e) {
-            log.error("Failed to parse LLM JSON response for document tree. Raw response: {}", llmResponse, e);
-            throw new RuntimeException("Failed to parse document tree from LLM", e);
         }
+        return llmResponse;
     }
 }
@@ -0,0 +1,162 @@
+package com.vectornode.memory.ingest.splitter;
+
+import com.vectornode.memory.ingest.service.PageIndexService.DocumentNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds PageIndex trees from explicit document structure without an LLM.
+ *
+ * Recognises, in order of preference, HTML headings ({@code <h1>}-{@code <h6>}),
+ * Markdown ATX headings ({@code #}-{@code ######}, outside fenced code
+ * blocks) and numbered section headings ("2.1 Installation"). The document is
+ * scanned once; each section runs from its heading to the next heading, and
+ * the root keeps the text before the first one, so concatenating the
+ * contents in pre-order yields the original text. Summaries are left empty.
+ */
+@Component
+@Slf4j
+public class StructuralDocumentParser {
+
+    // Fewer headings than this is not treated as structure
+    public static final int MIN_HEADINGS = 2;
+
+    private static final Pattern HTML_HEADING = Pattern.compile("<h([1-6])\\b[^>]*>(.*?)</h\\1\\s*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern MARKDOWN_HEADING = Pattern.compile("^ {0,3}(#{1,6})[ \\t]+(.+?)[ \\t#]*$");
+    private static final Pattern CODE_FENCE = Pattern.compile("^ {0,3}(```|~~~).*$");
+    // Short capitalised line with no closing punctuation, so numbered list items are not taken as headings
+    private static final Pattern NUMBERED_HEADING = Pattern.compile("^(\\d+(?:\\.\\d+)*)\\.?[ \\t]+(\\p{Lu}[^\\n.!?:;]{0,80})$");
+    private static final Pattern TAG = Pattern.compile("<[^>]+>");
+
+    private record Heading(int start, int level, String title) {
+    }
+
+    /**
+     * Returns the document tree, or empty when the text has no recognisable
+     * structure and should go through the LLM.
+     */
+    public Optional<DocumentNode> parse(String text) {
+        if (text == null || text.isBlank()) {
+            return Optional.empty();
+        }
+
+        List<Heading> headings = htmlHeadings(text);
+        String format = "html";
+        if (headings.size() < MIN_HEADINGS) {
+            headings = lineHeadings(text, false);
+            format = "markdown";
+        }
+        if (headings.size() < MIN_HEADINGS) {
+            headings = lineHeadings(text, true);
+            format = "numbered";
+        }
+        if (headings.size() < MIN_HEADINGS) {
+            return Optional.empty();
+        }
+
+        log.debug("Parsed {} {} headings from document of length {}", headings.size(), format, text.length());
+        return Optional.of(buildTree(text, headings));
+    }
+
+    private static List<Heading> htmlHeadings(String text) {
+        List<Heading> headings = new ArrayList<>();
+        Matcher matcher = HTML_HEADING.matcher(text);
+        while (matcher.find()) {
+            String title = plainText(matcher.group(2));
+            if (!title.isEmpty()) {
+                headings.add(new Heading(matcher.start(), Integer.parseInt(matcher.group(1)), title));
+            }
+        }
+        return headings;
+    }
+
+    private static List<Heading> lineHeadings(String text, boolean numbered) {
+        List<Heading> headings = new ArrayList<>();
+        boolean inFence = false;
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            String line = text.substring(lineStart, lineEnd).stripTrailing();
+
+            if (CODE_FENCE.matcher(line).matches()) {
+                inFence = !inFence;
+            } else if (!inFence) {
+                Matcher matcher = (numbered ? NUMBERED_HEADING : MARKDOWN_HEADING).matcher(line);
+                if (matcher.matches()) {
+                    int level = numbered
+                            ? matcher.group(1).split("\\.").length
+                            : matcher.group(1).length();
+                    headings.add(new Heading(lineStart, level, matcher.group(2).strip()));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return headings;
+    }
+
+    private static DocumentNode buildTree(String text, List<Heading> headings) {
+        DocumentNode root = new DocumentNode();
+        root.setContent(text.substring(0, headings.get(0).start()));
+
+        // Stack of open sections; a heading closes every section at its level or deeper
+        Deque<DocumentNode> stack = new ArrayDeque<>();
+        Deque<Integer> levels = new ArrayDeque<>();
+        stack.push(root);
+        levels.push(0);
+
+        for (int i = 0; i < headings.size(); i++) {
+            Heading heading = headings.get(i);
+            int end = i + 1 < headings.size() ? headings.get(i + 1).start() : text.length();
+
+            DocumentNode node = new DocumentNode();
+            node.setTitle(heading.title());
+            node.setAnchor(heading.title());
+            node.setContent(text.substring(heading.start(), end));
+
+            while (levels.peek() >= heading.level()) {
+                stack.pop();
+                levels.pop();
+            }
+            stack.peek().getChildren().add(node);
+            stack.push(node);
+            levels.push(heading.level());
+        }
+
+        // A single top-level heading is the document title: promote it to the root
+        if (root.getChildren().size() == 1 && root.getContent().isBlank()) {
+            DocumentNode title = root.getChildren().get(0);
+            title.setContent(root.getContent() + title.getContent());
+            return title;
+        }
+        root.setTitle(headings.get(0).title());
+        return root;
+    }
+
+    /**
+     * Text of an HTML fragment with tags removed, common entities decoded and
+     * whitespace collapsed.
+     */
+    public static String plainText(String html) {
+        return TAG.matcher(html).replaceAll(" ")
+                .replace("&nbsp;", " ")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&amp;", "&")
+                .replaceAll("\\s+", " ")
+                .strip();
+    }
+}
@@ -7,8 +7,10 @@ import com.vectornode.memory.query.dto.response.QueryResponse;
 import com.vectornode.memory.query.service.QueryService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.Instant;
 import java.util.List;
@@ -218,4 +220,10 @@ public class QueryController {
     public ResponseEntity<QueryResponse> routeQuery(@Valid @RequestBody QueryRequest request) {
         return ResponseEntity.ok(queryService.routeQuery(request));
     }
+
+    // Streams retrieved results, then answer tokens, as Server-Sent Events
+    @PostMapping(value = "/route/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamRouteQuery(@Valid @RequestBody QueryRequest request) {
+        return queryService.streamRouteQuery(request);
+    }
 }
@@ -25,6 +25,11 @@ public class QueryRequest {
 
     private Map<String, Object> filters;
 
+    // Agentic router only: set to false to return retrieved context without
+    // generating an answer
+    @Builder.Default
+    private boolean generateAnswer = true;
+
     // Optional: Choose strategy if we implement multiple (e.g., VECTOR, GRAPH,
     // HYBRID)
     // private SearchStrategy strategy;
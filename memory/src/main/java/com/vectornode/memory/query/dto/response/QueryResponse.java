@@ -15,6 +15,7 @@ public class QueryResponse {
     private String query;
     private List<SearchResult> results;
     private long processingTimeMs;
+    private String answer; // Generated answer (agentic router only)
 
     @Data
     @Builder
@@ -72,6 +72,82 @@ public interface ContextRepository extends JpaRepository<Context, UUID> {
                      @Param("queryVector") String queryVector,
                      @Param("limit") int limit);
 
+       // QUANTIZED VECTOR SEARCH (cortex.vector.index-mode = halfvec / binary): the
+       // ANN pass runs on the quantized column's index, then the top candidates are
+       // re-ranked by exact cosine distance on the full-precision vectors.
+       // Returns [id, text_chunk, chunk_index, similarity_score]
+       @Query(value = """
+                     SELECT c.id, c.text_chunk, c.chunk_index,
+                            1 - (c.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                     FROM (
+                            SELECT id FROM contexts
+                            ORDER BY vector_embedding_half <=> CAST(:queryVector AS halfvec)
+                            LIMIT :candidates
+                     ) ann
+                     JOIN contexts c ON c.id = ann.id
+                     ORDER BY c.vector_embedding <=> CAST(:queryVector AS vector)
+                     LIMIT :limit
+                     """, nativeQuery = true)
+       List<Object[]> findSimilarWithScoreHalfvec(
+                     @Param("queryVector") String queryVector,
+                     @Param("candidates") int candidates,
+                     @Param("limit") int limit);
+
+       @Query(value = """
+                     SELECT c.id, c.text_chunk, c.chunk_index,
+                            1 - (c.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                     FROM (
+                            SELECT id FROM contexts
+                            ORDER BY vector_embedding_bit <~> binary_quantize(CAST(:queryVector AS vector))
+                            LIMIT :candidates
+                     ) ann
+                     JOIN contexts c ON c.id = ann.id
+                     ORDER BY c.vector_embedding <=> CAST(:queryVector AS vector)
+                     LIMIT :limit
+                     """, nativeQuery = true)
+       List<Object[]> findSimilarWithScoreBinary(
+                     @Param("queryVector") String queryVector,
+                     @Param("candidates") int candidates,
+                     @Param("limit") int limit);
+
+       @Query(value = """
+                     SELECT c.id, c.text_chunk, c.chunk_index,
+                            1 - (c.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                     FROM (
+                            SELECT id FROM contexts
+                            WHERE created_at > NOW() - (INTERVAL '1 day' * :days)
+                            ORDER BY vector_embedding_half <=> CAST(:queryVector AS halfvec)
+                            LIMIT :candidates
+                     ) ann
+                     JOIN contexts c ON c.id = ann.id
+                     ORDER BY c.vector_embedding <=> CAST(:queryVector AS vector)
+                     LIMIT :limit
+                     """, nativeQuery = true)
+       List<Object[]> findRecentSimilarWithScoreHalfvec(
+                     @Param("days") int days,
+                     @Param("queryVector") String queryVector,
+                     @Param("candidates") int candidates,
+                     @Param("limit") int limit);
+
+       @Query(value = """
+                     SELECT c.id, c.text_chunk, c.chunk_index,
+                            1 - (c.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                     FROM (
+                            SELECT id FROM contexts
+                            WHERE created_at > NOW() - (INTERVAL '1 day' * :days)
+                            ORDER BY vector_embedding_bit <~> binary_quantize(CAST(:queryVector AS vector))
+                            LIMIT :candidates
+                     ) ann
+                     JOIN contexts c ON c.id = ann.id
+                     ORDER BY c.vector_embedding <=> CAST(:queryVector AS vector)
+                     LIMIT :limit
+                     """, nativeQuery = true)
+       List<Object[]> findRecentSimilarWithScoreBinary(
+                     @Param("days") int days,
+                     @Param("queryVector") String queryVector,
+                     @Param("candidates") int candidates,
+                     @Param("limit") int limit);
+
        // FETCH SIBLINGS: Gets other chunks from the same document/query.
        @Query(value = """
                      SELECT * FROM contexts
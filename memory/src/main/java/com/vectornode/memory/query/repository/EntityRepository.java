@@ -49,6 +49,43 @@ public interface EntityRepository extends JpaRepository<RagEntity, UUID> {
                         @Param("queryVector") String queryVector,
                         @Param("limit") int limit);
 
+        // Quantized variants (cortex.vector.index-mode = halfvec / binary): ANN pass on
+        // the quantized index, exact cosine re-rank of the candidates.
+        // Returns [id, entity_name, entity_type, description, similarity_score]
+        @Query(value = """
+                        SELECT e.id, e.entity_name, e.entity_type, e.description,
+                               1 - (e.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                        FROM (
+                               SELECT id FROM entities
+                               ORDER BY vector_embedding_half <=> CAST(:queryVector AS halfvec)
+                               LIMIT :candidates
+                        ) ann
+                        JOIN entities e ON e.id = ann.id
+                        ORDER BY e.vector_embedding <=> CAST(:queryVector AS vector)
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<Object[]> findSimilarEntitiesWithScoreHalfvec(
+                        @Param("queryVector") String queryVector,
+                        @Param("candidates") int candidates,
+                        @Param("limit") int limit);
+
+        @Query(value = """
+                        SELECT e.id, e.entity_name, e.entity_type, e.description,
+                               1 - (e.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                        FROM (
+                               SELECT id FROM entities
+                               ORDER BY vector_embedding_bit <~> binary_quantize(CAST(:queryVector AS vector))
+                               LIMIT :candidates
+                        ) ann
+                        JOIN entities e ON e.id = ann.id
+                        ORDER BY e.vector_embedding <=> CAST(:queryVector AS vector)
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<Object[]> findSimilarEntitiesWithScoreBinary(
+                        @Param("queryVector") String queryVector,
+                        @Param("candidates") int candidates,
+                        @Param("limit") int limit);
+
         // Vector similarity search for entities (without score).
         @Query(value = """
                         SELECT * FROM entities
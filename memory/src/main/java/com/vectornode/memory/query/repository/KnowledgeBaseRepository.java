@@ -30,6 +30,43 @@ public interface KnowledgeBaseRepository extends JpaRepository<KnowledgeBase, UU
                         @Param("queryVector") String queryVector,
                         @Param("limit") int limit);
 
+        // Quantized variants (cortex.vector.index-mode = halfvec / binary): ANN pass on
+        // the quantized index, exact cosine re-rank of the candidates.
+        // Returns [id, content, uid, converser, similarity_score]
+        @Query(value = """
+                        SELECT kb.id, kb.content, kb.uid, kb.converser,
+                               1 - (kb.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                        FROM (
+                               SELECT id FROM knowledge_bases
+                               ORDER BY vector_embedding_half <=> CAST(:queryVector AS halfvec)
+                               LIMIT :candidates
+                        ) ann
+                        JOIN knowledge_bases kb ON kb.id = ann.id
+                        ORDER BY kb.vector_embedding <=> CAST(:queryVector AS vector)
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<Object[]> findSimilarWithScoreHalfvec(
+                        @Param("queryVector") String queryVector,
+                        @Param("candidates") int candidates,
+                        @Param("limit") int limit);
+
+        @Query(value = """
+                        SELECT kb.id, kb.content, kb.uid, kb.converser,
+                               1 - (kb.vector_embedding <=> CAST(:queryVector AS vector)) AS similarity_score
+                        FROM (
+                               SELECT id FROM knowledge_bases
+                               ORDER BY vector_embedding_bit <~> binary_quantize(CAST(:queryVector AS vector))
+                               LIMIT :candidates
+                        ) ann
+                        JOIN knowledge_bases kb ON kb.id = ann.id
+                        ORDER BY kb.vector_embedding <=> CAST(:queryVector AS vector)
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<Object[]> findSimilarWithScoreBinary(
+                        @Param("queryVector") String queryVector,
+                        @Param("candidates") int candidates,
+                        @Param("limit") int limit);
+
         // SEMANTIC SEARCH (without score): For backward compatibility
         @Query(value = """
                         SELECT * FROM knowledge_bases
@@ -0,0 +1,150 @@
+package com.vectornode.memory.query.service;
+
+import com.vectornode.memory.config.LLMBulkhead;
+import com.vectornode.memory.config.LLMCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One streamed answer. Holds the bulkhead slot and circuit breaker permit
+ * of the request until the stream ends, however it ends: completion, a
+ * failure, a client disconnect or the emitter timeout. Ending the stream
+ * early cancels the token subscription, and with it the provider request.
+ */
+@Slf4j
+final class AnswerStream {
+
+    private final SseEmitter emitter;
+    private final LLMBulkhead.Permit slot;
+    private final LLMCircuitBreaker.Permit breaker;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final AtomicReference<Disposable> generation = new AtomicReference<>();
+
+    AnswerStream(SseEmitter emitter, LLMBulkhead.Permit slot, LLMCircuitBreaker.Permit breaker, long timeoutMs) {
+        this.emitter = emitter;
+        this.slot = slot;
+        this.breaker = breaker;
+        // Run by the container; a timed-out stream counts against the breaker like a slow call
+        emitter.onTimeout(() -> {
+            if (end(new TimeoutException("Stream exceeded " + timeoutMs + "ms"))) {
+                log.warn("Agentic Router stream timed out after {}ms", timeoutMs);
+            }
+            emitter.complete();
+        });
+        emitter.onError(error -> {
+            if (end(error)) {
+                log.info("Agentic Router stream aborted, client disconnected: {}", error.getMessage());
+            }
+        });
+        emitter.onCompletion(() -> end(new CancellationException("Stream closed")));
+    }
+
+    boolean isOpen() {
+        return !ended.get();
+    }
+
+    void send(String name, Object data) throws IOException {
+        emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+    }
+
+    /**
+     * Sends one "token" event per fragment, then "done". Tokens are sent on
+     * boundedElastic, since a slow client blocks send() and must not stall
+     * the provider's event loop.
+     */
+    void generate(Flux<String> tokens) {
+        Disposable subscription = tokens
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(token -> {
+                    try {
+                        send("token", Map.of("text", token));
+                    } catch (IOException e) {
+                        // Cancels the subscription and goes to fail()
+                        throw new UncheckedIOException(e);
+                    }
+                }, this::fail, this::complete);
+        generation.set(subscription);
+        if (ended.get()) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Sends "done" and completes the emitter.
+     */
+    void complete() {
+        if (!isOpen()) {
+            return;
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        try {
+            send("done", Map.of("processingTimeMs", totalTime));
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        // Recorded before complete(), whose completion callback would count as a cancellation
+        if (end(null)) {
+            emitter.complete();
+            log.info("Agentic Router stream completed in {}ms", totalTime);
+        }
+    }
+
+    /**
+     * Reports the failure as an "error" event, or just closes the emitter
+     * if the client is gone. Failures after the stream ended are dropped.
+     */
+    void fail(Throwable error) {
+        if (!end(error)) {
+            return;
+        }
+        if (error instanceof IOException || error instanceof UncheckedIOException) {
+            log.info("Agentic Router stream aborted, client disconnected: {}", error.getMessage());
+            emitter.completeWithError(error);
+            return;
+        }
+        log.error("Agentic Router stream failed: {}", error.getMessage());
+        try {
+            send("error", Map.of("message", String.valueOf(error.getMessage())));
+            emitter.complete();
+        } catch (IOException sendFailure) {
+            emitter.completeWithError(error);
+        }
+    }
+
+    /**
+     * Ends the stream once: cancels generation, records the outcome with the
+     * breaker (null for success) and releases the bulkhead slot.
+     *
+     * @return false if the stream had already ended
+     */
+    boolean end(Throwable error) {
+        if (!ended.compareAndSet(false, true)) {
+            return false;
+        }
+        Disposable subscription = generation.get();
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        if (error == null) {
+            breaker.onSuccess();
+        } else {
+            breaker.onError(error);
+        }
+        slot.close();
+        return true;
+    }
+}
@@ -1,6 +1,10 @@
 package com.vectornode.memory.query.service;
 
+import com.vectornode.memory.config.LLMAsync;
+import com.vectornode.memory.config.LLMBulkhead;
+import com.vectornode.memory.config.LLMCircuitBreaker;
 import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.config.VectorIndexMode;
 import com.vectornode.memory.entity.Context;
 import com.vectornode.memory.entity.KnowledgeBase;
 import com.vectornode.memory.entity.RagEntity;
@@ -11,10 +15,15 @@ import com.vectornode.memory.query.repository.ContextRepository;
 import com.vectornode.memory.query.repository.EntityRepository;
 import com.vectornode.memory.query.repository.KnowledgeBaseRepository;
 import com.vectornode.memory.query.repository.RelationRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -23,16 +32,29 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class QueryService {
 
+        // Upper bound on a streamed answer; the emitter is closed by the container after this
+        private static final long STREAM_TIMEOUT_MS = 120_000;
+
         private final ContextRepository contextRepository;
         private final EntityRepository entityRepository;
         private final KnowledgeBaseRepository knowledgeBaseRepository;
         private final RelationRepository relationRepository;
+        private final JdbcTemplate jdbcTemplate;
+        private final PlatformTransactionManager transactionManager;
+
+        // Streamed routes block on retrieval and token delivery off the servlet thread
+        private final ExecutorService streamExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
         // ==================== CONTEXT OPERATIONS ====================
 
@@ -41,10 +63,10 @@ public class QueryService {
                 long startTime = System.currentTimeMillis();
                 log.info("Searching contexts for query: {}", request.getQuery());
 
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
+                float[] embedding = embed(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
-                List<Object[]> rows = contextRepository.findSimilarWithScore(vectorString, request.getLimit());
+                List<Object[]> rows = similarContexts(vectorString, request.getLimit());
 
                 List<QueryResponse.SearchResult> results = rows.stream()
                                 .map(row -> QueryResponse.SearchResult.builder()
@@ -152,11 +174,10 @@ public class QueryService {
                 // log.info("Searching recent contexts (last {} days) for: {}", days,
                 // request.getQuery());
 
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
+                float[] embedding = embed(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
-                List<Object[]> rows = contextRepository.findRecentSimilarWithScore(days, vectorString,
-                                request.getLimit());
+                List<Object[]> rows = recentSimilarContexts(days, vectorString, request.getLimit());
 
                 List<QueryResponse.SearchResult> results = rows.stream()
                                 .map(row -> QueryResponse.SearchResult.builder()
@@ -213,10 +234,10 @@ public class QueryService {
                 long startTime = System.currentTimeMillis();
                 log.info("Searching entities for query: {}", request.getQuery());
 
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
+                float[] embedding = embed(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
-                List<Object[]> rows = entityRepository.findSimilarEntitiesWithScore(vectorString, request.getLimit());
+                List<Object[]> rows = similarEntities(vectorString, request.getLimit());
 
                 List<QueryResponse.SearchResult> results = rows.stream()
                                 .map(row -> QueryResponse.SearchResult.builder()
@@ -262,7 +283,7 @@ public class QueryService {
         // Disambiguate entity using vector similarity
         public Optional<RagEntity> disambiguateEntity(String entityName, String contextText) {
                 log.info("Disambiguating entity '{}' with context", entityName);
-                float[] embedding = LLMProvider.getEmbedding(contextText);
+                float[] embedding = embed(contextText);
                 String vectorString = toVectorString(embedding);
                 return entityRepository.disambiguateEntity(entityName, vectorString);
         }
@@ -337,10 +358,10 @@ public class QueryService {
                 long startTime = System.currentTimeMillis();
                 log.info("Searching history for query: {}", request.getQuery());
 
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
+                float[] embedding = embed(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
-                List<Object[]> rows = knowledgeBaseRepository.findSimilarWithScore(vectorString, request.getLimit());
+                List<Object[]> rows = similarKnowledgeBases(vectorString, request.getLimit());
 
                 List<QueryResponse.SearchResult> results = rows.stream()
                                 .map(row -> QueryResponse.SearchResult.builder()
@@ -586,13 +607,13 @@ public class QueryService {
                 long startTime = System.currentTimeMillis();
                 log.info("Performing hybrid search for query: {}", request.getQuery());
 
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
+                float[] embedding = embed(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
                 List<QueryResponse.SearchResult> allResults = new ArrayList<>();
 
                 // Step 1: Vector search on contexts (with scores)
-                List<Object[]> contextRows = contextRepository.findSimilarWithScore(vectorString, request.getLimit());
+                List<Object[]> contextRows = similarContexts(vectorString, request.getLimit());
                 for (Object[] row : contextRows) {
                         UUID contextId = (UUID) row[0];
                         double score = ((Number) row[3]).doubleValue();
@@ -620,8 +641,7 @@ public class QueryService {
                 }
 
                 // Step 3: Vector search on entities directly (with scores)
-                List<Object[]> entityRows = entityRepository.findSimilarEntitiesWithScore(vectorString,
-                                request.getLimit());
+                List<Object[]> entityRows = similarEntities(vectorString, request.getLimit());
                 for (Object[] row : entityRows) {
                         allResults.add(QueryResponse.SearchResult.builder()
                                         .id((UUID) row[0])
@@ -656,18 +676,173 @@ public class QueryService {
                 return sb.toString();
         }
 
+        // Vector searches honour cortex.vector.index-mode: quantized modes search the
+        // compact index and re-rank the candidates on the full-precision vectors
+        private List<Object[]> similarContexts(String vectorString, int limit) {
+                return switch (VectorIndexMode.current()) {
+                        case FULL -> contextRepository.findSimilarWithScore(vectorString, limit);
+                        case HALFVEC -> quantizedSearch(limit, candidates -> contextRepository
+                                        .findSimilarWithScoreHalfvec(vectorString, candidates, limit));
+                        case BINARY -> quantizedSearch(limit, candidates -> contextRepository
+                                        .findSimilarWithScoreBinary(vectorString, candidates, limit));
+                };
+        }
+
+        private List<Object[]> recentSimilarContexts(int days, String vectorString, int limit) {
+                return switch (VectorIndexMode.current()) {
+                        case FULL -> contextRepository.findRecentSimilarWithScore(days, vectorString, limit);
+                        case HALFVEC -> quantizedSearch(limit, candidates -> contextRepository
+                                        .findRecentSimilarWithScoreHalfvec(days, vectorString, candidates, limit));
+                        case BINARY -> quantizedSearch(limit, candidates -> contextRepository
+                                        .findRecentSimilarWithScoreBinary(days, vectorString, candidates, limit));
+                };
+        }
+
+        private List<Object[]> similarEntities(String vectorString, int limit) {
+                return switch (VectorIndexMode.current()) {
+                        case FULL -> entityRepository.findSimilarEntitiesWithScore(vectorString, limit);
+                        case HALFVEC -> quantizedSearch(limit, candidates -> entityRepository
+                                        .findSimilarEntitiesWithScoreHalfvec(vectorString, candidates, limit));
+                        case BINARY -> quantizedSearch(limit, candidates -> entityRepository
+                                        .findSimilarEntitiesWithScoreBinary(vectorString, candidates, limit));
+                };
+        }
+
+        private List<Object[]> similarKnowledgeBases(String vectorString, int limit) {
+                return switch (VectorIndexMode.current()) {
+                        case FULL -> knowledgeBaseRepository.findSimilarWithScore(vectorString, limit);
+                        case HALFVEC -> quantizedSearch(limit, candidates -> knowledgeBaseRepository
+                                        .findSimilarWithScoreHalfvec(vectorString, candidates, limit));
+                        case BINARY -> quantizedSearch(limit, candidates -> knowledgeBaseRepository
+                                        .findSimilarWithScoreBinary(vectorString, candidates, limit));
+                };
+        }
+
+        // An HNSW scan returns at most hnsw.ef_search rows, so the ANN pass raises it to the
+        // candidate count; SET LOCAL only holds in the transaction the query runs in
+        private List<Object[]> quantizedSearch(int limit, IntFunction<List<Object[]>> search) {
+                int candidates = VectorIndexMode.candidates(limit);
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                transaction.setReadOnly(true);
+                return transaction.execute(status -> {
+                        jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + VectorIndexMode.efSearch(candidates));
+                        return search.apply(candidates);
+                });
+        }
+
         // ==================== AGENTIC ROUTER (DUAL-PIPELINE) ====================
 
         /**
          * Entry point for the Dual-Pipeline Query.
          * 1. Classifies intent using LLM (PROMPT vs DOCUMENT)
          * 2. Routes to appropriate search execution
-         * 3. Generates a final answer
+         * 3. Generates a final answer, unless the request opts out
          */
         public QueryResponse routeQuery(QueryRequest request) {
+                return guarded(() -> route(request));
+        }
+
+        private QueryResponse route(QueryRequest request) {
                 long startTime = System.currentTimeMillis();
                 log.info("Agentic Router processing query: {}", request.getQuery());
 
+                List<QueryResponse.SearchResult> retrievedContext = retrieveRouted(request);
+
+                // 3. Final Generation
+                String finalAnswer = null;
+                if (request.isGenerateAnswer()) {
+                        finalAnswer = LLMProvider.callLLM(LLMProvider.PROFILE_ANSWER, buildAnswerPrompt(request.getQuery(), retrievedContext));
+                }
+
+                long totalTime = System.currentTimeMillis() - startTime;
+                log.info("Agentic Router completed in {}ms", totalTime);
+
+                return QueryResponse.builder()
+                                .query(request.getQuery())
+                                .results(retrievedContext)
+                                .answer(finalAnswer)
+                                .processingTimeMs(totalTime)
+                                .build();
+        }
+
+        /**
+         * Streaming variant of routeQuery. Emits a "results" event with the
+         * retrieved context, then one "token" event per answer fragment as the
+         * chat model produces it, then "done". Failures are reported as an
+         * "error" event.
+         */
+        public SseEmitter streamRouteQuery(QueryRequest request) {
+                // Admission happens here so a rejected stream fails fast with 503 instead of an
+                // SSE error event; both permits are held until the stream ends
+                LLMCircuitBreaker.Permit breaker = LLMCircuitBreaker.acquire();
+                LLMBulkhead.Permit slot;
+                try {
+                        slot = LLMBulkhead.acquire();
+                } catch (RuntimeException e) {
+                        breaker.onError(e);
+                        throw e;
+                }
+
+                SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+                AnswerStream stream = new AnswerStream(emitter, slot, breaker, STREAM_TIMEOUT_MS);
+                try {
+                        streamExecutor.execute(() -> streamRoute(request, stream));
+                } catch (RuntimeException e) {
+                        stream.end(e);
+                        throw e;
+                }
+                return emitter;
+        }
+
+        @PreDestroy
+        void shutdownStreams() {
+                streamExecutor.close();
+        }
+
+        private void streamRoute(QueryRequest request, AnswerStream stream) {
+                long startTime = System.currentTimeMillis();
+                log.info("Agentic Router streaming query: {}", request.getQuery());
+
+                try {
+                        List<QueryResponse.SearchResult> retrievedContext = retrieveRouted(request);
+                        if (!stream.isOpen()) {
+                                // Client disconnected or timed out during retrieval; skip generation
+                                return;
+                        }
+                        stream.send("results", QueryResponse.builder()
+                                        .query(request.getQuery())
+                                        .results(retrievedContext)
+                                        .processingTimeMs(System.currentTimeMillis() - startTime)
+                                        .build());
+
+                        if (request.isGenerateAnswer()) {
+                                stream.generate(LLMProvider.streamLLM(LLMProvider.PROFILE_ANSWER,
+                                                buildAnswerPrompt(request.getQuery(), retrievedContext)));
+                        } else {
+                                stream.complete();
+                        }
+                } catch (Exception e) {
+                        stream.fail(e);
+                }
+        }
+
+        /**
+         * Runs an LLM-dependent call under the circuit breaker and the LLM
+         * bulkhead. SQL-only reads bypass both, so they stay fast while the
+         * provider is degraded.
+         */
+        private static <T> T guarded(Supplier<T> call) {
+                return LLMCircuitBreaker.call(() -> LLMBulkhead.call(call));
+        }
+
+        private static float[] embed(String text) {
+                return guarded(() -> LLMProvider.getEmbedding(text));
+        }
+
+        /**
+         * Classifies the query and runs the matching search pipeline.
+         */
+        private List<QueryResponse.SearchResult> retrieveRouted(QueryRequest request) {
                 // 1. Classification
                 String classificationPrompt = """
                                 Analyze this query and classify the user's intent into exactly one of these two categories:
@@ -681,25 +856,39 @@ public class QueryService {
                                 """
                                 .formatted(request.getQuery());
 
-                String classification = LLMProvider.callLLM(classificationPrompt).trim().toUpperCase();
-                log.info("Agentic Router classified query as: {}", classification);
+                // Both routes search by the query embedding, so compute it alongside the
+                // classification instead of after it
+                // Classification is a pure function of the query, so repeats are served from the
+                // response cache
+                CompletableFuture<String> classificationFuture = LLMProvider.callLLMAsync(classificationPrompt, true);
+                CompletableFuture<float[]> embeddingFuture = LLMProvider.embedAsync(request.getQuery());
 
-                List<QueryResponse.SearchResult> retrievedContext;
+                String classification;
+                float[] embedding;
+                try {
+                        classification = LLMAsync.await(classificationFuture).trim().toUpperCase();
+                        embedding = LLMAsync.await(embeddingFuture);
+                } catch (RuntimeException e) {
+                        classificationFuture.cancel(true);
+                        embeddingFuture.cancel(true);
+                        throw e;
+                }
+                log.info("Agentic Router classified query as: {}", classification);
 
                 // 2. Routed Execution
                 if ("PROMPT".equals(classification)) {
-                        retrievedContext = executePromptSearch(request);
-                } else {
-                        retrievedContext = executeDocumentSearch(request);
+                        return executePromptSearch(request, embedding);
                 }
+                return executeDocumentSearch(request, embedding);
+        }
 
-                // 3. Final Generation
+        private String buildAnswerPrompt(String query, List<QueryResponse.SearchResult> retrievedContext) {
                 StringBuilder contextBuilder = new StringBuilder();
                 for (QueryResponse.SearchResult result : retrievedContext) {
                         contextBuilder.append("- ").append(result.getContent()).append("\n");
                 }
 
-                String finalPrompt = """
+                return """
                                 Answer the user's question using ONLY the provided context. If the context does not contain the answer, say "I don't know based on my memory."
 
                                 Context:
@@ -707,28 +896,14 @@ public class QueryService {
 
                                 Question: "%s"
                                 """
-                                .formatted(contextBuilder.toString(), request.getQuery());
-
-                String finalAnswer = LLMProvider.callLLM(finalPrompt);
-
-                long totalTime = System.currentTimeMillis() - startTime;
-                log.info("Agentic Router completed in {}ms", totalTime);
-
-                // Return a custom metadata block containing the final answer and routing debug
-                // info
-                return QueryResponse.builder()
-                                .query(request.getQuery())
-                                .results(retrievedContext)
-                                .processingTimeMs(totalTime)
-                                .build();
+                                .formatted(contextBuilder.toString(), query);
         }
 
         /**
          * SimpleMem Hybrid Search (Vector + Keyword)
          */
-        private List<QueryResponse.SearchResult> executePromptSearch(QueryRequest request) {
+        private List<QueryResponse.SearchResult> executePromptSearch(QueryRequest request, float[] embedding) {
                 log.info("Executing SimpleMEM Hybrid Search");
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
                 // We use the existing hybridSearch functionality or similar logic.
@@ -737,7 +912,7 @@ public class QueryService {
                 // Optional: filter by metadata keywords if needed, but vector search covers the
                 // baseline.
 
-                List<Object[]> contextRows = contextRepository.findSimilarWithScore(vectorString, request.getLimit());
+                List<Object[]> contextRows = similarContexts(vectorString, request.getLimit());
                 List<QueryResponse.SearchResult> results = new ArrayList<>();
 
                 for (Object[] row : contextRows) {
@@ -755,7 +930,7 @@ public class QueryService {
         /**
          * PageIndex Agentic Traversal
          */
-        private List<QueryResponse.SearchResult> executeDocumentSearch(QueryRequest request) {
+        private List<QueryResponse.SearchResult> executeDocumentSearch(QueryRequest request, float[] embedding) {
                 log.info("Executing PageIndex Traversal");
 
                 // Find root nodes (sections with depth 0, or nodes that have no incoming
@@ -764,11 +939,10 @@ public class QueryService {
                 // relevant DOCUMENT_SECTION entity,
                 // then traverse its children.
 
-                float[] embedding = LLMProvider.getEmbedding(request.getQuery());
                 String vectorString = toVectorString(embedding);
 
                 // Vector search to find the closest entry point
-                List<Object[]> entityRows = entityRepository.findSimilarEntitiesWithScore(vectorString, 5);
+                List<Object[]> entityRows = similarEntities(vectorString, 5);
                 List<QueryResponse.SearchResult> results = new ArrayList<>();
 
                 if (entityRows.isEmpty())
@@ -830,7 +1004,7 @@ public class QueryService {
                                 .formatted(optionsStr.toString(), originalQuery);
 
                 try {
-                        int selectedIndex = Integer.parseInt(LLMProvider.callLLM(prompt).trim());
+                        int selectedIndex = Integer.parseInt(LLMProvider.callLLM(prompt, true).trim());
                         if (selectedIndex >= 0 && selectedIndex < options.size()) {
                                 String selectedBranchName = options.get(selectedIndex);
                                 Optional<UUID> nextEntityId = entityRepository.findIdByName(selectedBranchName);
@@ -2,6 +2,7 @@ package com.vectornode.memory.setup.dto.request;
 
 import com.vectornode.memory.entity.enums.LLMApiProvider;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 
 @Data
@@ -18,4 +19,24 @@ public class SetupRequest {
     private String embedModelName;
 
     private String baseUrl;
+
+    // Max inputs per multi-input embedding request (defaults to
+    // LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE)
+    @Positive
+    private Integer embeddingBatchSize;
+
+    // Dimensions requested from the embedding model (defaults to
+    // cortex.llm.embedding.dimensions). Larger values are Matryoshka-truncated to
+    // the stored dimension. Azure only sends the option when this is set.
+    @Positive
+    private Integer embeddingDimensions;
+
+    // Registry profile to configure, e.g. "extraction" or "answer" (defaults
+    // to LLMProvider.PROFILE_DEFAULT). Embeddings always use the default profile.
+    private String profile;
+
+    // Append this provider to the profile's fallback chain instead of
+    // replacing its primary. Calls are hedged to fallbacks when the primary
+    // is slow and fail over to them on 5xx or timeouts.
+    private Boolean fallback;
 }
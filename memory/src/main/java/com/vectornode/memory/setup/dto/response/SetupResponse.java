@@ -10,9 +10,12 @@ import java.time.Instant;
 public class SetupResponse {
     private String message;
     private boolean success;
+    private String profile;
+    private boolean fallback;
     private String configuredProvider;
     private String configuredChatModel;
     private String configuredEmbedModel;
+    private int embeddingDimensions;
     private String baseUrl;
     private Instant timestamp;
 }
@@ -1,5 +1,6 @@
 package com.vectornode.memory.setup.service;
 
+import com.vectornode.memory.config.EmbeddingDimensions;
 import com.vectornode.memory.config.LLMProvider;
 import com.vectornode.memory.setup.dto.request.SetupRequest;
 import com.vectornode.memory.setup.dto.response.SetupResponse;
@@ -14,6 +15,9 @@ public class SetupService {
 
     public SetupResponse configureLLM(SetupRequest request) {
         log.info("Received runtime setup request for Provider: {}", request.getProvider());
+        String profile = request.getProfile() == null || request.getProfile().isBlank()
+                ? LLMProvider.PROFILE_DEFAULT
+                : request.getProfile();
 
         if (request.getProvider() == null) {
             throw new IllegalArgumentException("Provider is required");
@@ -46,29 +50,60 @@ public class SetupService {
         // Initialize LLMProvider with SEPARATE chat and embedding models
         log.info("Initializing LLMProvider with chatModel: {} and embedModel: {}...",
                 request.getChatModelName(), request.getEmbedModelName());
+        int embeddingBatchSize = request.getEmbeddingBatchSize() != null
+                ? request.getEmbeddingBatchSize()
+                : LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE;
+        if (Boolean.TRUE.equals(request.getFallback())) {
+            // Probed by addFallback before it joins the chain
+            LLMProvider.addFallback(
+                    profile,
+                    request.getProvider().name(),
+                    request.getApiKey(),
+                    effectiveBaseUrl,
+                    request.getChatModelName(),
+                    request.getEmbedModelName(),
+                    embeddingBatchSize,
+                    request.getEmbeddingDimensions());
+            log.info("Fallback provider added to profile '{}'.", profile);
+            return buildResponse(request, profile, effectiveBaseUrl, true);
+        }
+
         new LLMProvider(
+                profile,
                 request.getProvider().name(),
                 request.getApiKey(),
                 effectiveBaseUrl,
                 request.getChatModelName(),
-                request.getEmbedModelName());
+                request.getEmbedModelName(),
+                embeddingBatchSize,
+                request.getEmbeddingDimensions());
 
-        // Test embedding
-        log.info("Testing embedding model...");
-        LLMProvider.getEmbedding("test");
-        log.info("Embedding test successful.");
+        // Test embedding (only the default profile serves embeddings)
+        if (LLMProvider.PROFILE_DEFAULT.equals(profile)) {
+            log.info("Testing embedding model...");
+            LLMProvider.getEmbedding("test");
+            log.info("Embedding test successful.");
+        }
 
         // Test LLM call
-        log.info("Testing LLM call...");
-        LLMProvider.callLLM("Hello");
+        log.info("Testing LLM call for profile '{}'...", profile);
+        LLMProvider.callLLM(profile, "Hello");
         log.info("LLM call test successful.");
 
+        return buildResponse(request, profile, effectiveBaseUrl, false);
+    }
+
+    private SetupResponse buildResponse(SetupRequest request, String profile, String effectiveBaseUrl,
+            boolean fallback) {
         return SetupResponse.builder()
                 .message("Setup params validated and probed successfully. Backend is ready.")
                 .success(true)
+                .profile(profile)
+                .fallback(fallback)
                 .configuredProvider(request.getProvider().name())
                 .configuredChatModel(request.getChatModelName())
                 .configuredEmbedModel(request.getEmbedModelName())
+                .embeddingDimensions(EmbeddingDimensions.get())
                 .baseUrl(effectiveBaseUrl)
                 .timestamp(Instant.now())
                 .build();
@@ -0,0 +1,44 @@
+-- Keeps the vector columns at the configured embedding dimension
+-- (cortex.llm.embedding.dimensions, passed in as the embedding_dimensions placeholder).
+-- Re-run on every start (last run: ${flyway:timestamp}); columns already at the target size are left alone.
+-- Shrinking applies the same Matryoshka truncation as the application (prefix + L2 renormalization);
+-- growing is only possible while the table is empty.
+
+DO $$
+DECLARE
+    target INT := ${embedding_dimensions};
+    tables TEXT[] := ARRAY['knowledge_bases', 'contexts', 'entities'];
+    indexes TEXT[] := ARRAY['idx_kb_vector', 'idx_contexts_vector', 'idx_entities_vector'];
+    current_dims INT;
+    has_rows BOOLEAN;
+BEGIN
+    FOR i IN 1 .. array_length(tables, 1) LOOP
+        SELECT atttypmod INTO current_dims
+        FROM pg_attribute
+        WHERE attrelid = tables[i]::regclass AND attname = 'vector_embedding';
+
+        CONTINUE WHEN current_dims = target;
+
+        EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I)', tables[i]) INTO has_rows;
+        IF has_rows AND (current_dims < 0 OR current_dims < target) THEN
+            RAISE EXCEPTION 'Cannot grow %.vector_embedding from % to % dimensions: table is not empty',
+                tables[i], current_dims, target;
+        END IF;
+
+        -- Quantized copies depend on the column; R__vector_index_mode recreates them
+        EXECUTE format('ALTER TABLE %I DROP COLUMN IF EXISTS vector_embedding_half', tables[i]);
+        EXECUTE format('ALTER TABLE %I DROP COLUMN IF EXISTS vector_embedding_bit', tables[i]);
+        EXECUTE format('DROP INDEX IF EXISTS %I', indexes[i]);
+        IF has_rows THEN
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN vector_embedding TYPE vector(%s) '
+                || 'USING l2_normalize(subvector(vector_embedding, 1, %s))::vector(%s)',
+                tables[i], target, target, target);
+        ELSE
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN vector_embedding TYPE vector(%s)', tables[i], target);
+        END IF;
+        EXECUTE format('CREATE INDEX %I ON %I USING hnsw (vector_embedding vector_cosine_ops)',
+            indexes[i], tables[i]);
+
+        RAISE NOTICE 'Resized %.vector_embedding from % to % dimensions', tables[i], current_dims, target;
+    END LOOP;
+END $$;
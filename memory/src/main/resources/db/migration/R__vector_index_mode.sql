@@ -0,0 +1,49 @@
+-- Quantized storage for the ANN candidate pass (cortex.vector.index-mode, passed in as vector_index_mode).
+--   full    : HNSW on the float32 vector_embedding column only
+--   halfvec : HNSW on a generated halfvec copy (vector_embedding_half), about 2x smaller
+--   binary  : HNSW on a generated binary-quantized copy (vector_embedding_bit), about 32x smaller
+-- Quantized modes drop the float32 index; queries re-rank candidates on vector_embedding itself.
+-- Re-run on every start (last run: ${flyway:timestamp}); adding a generated column rewrites the table once.
+
+DO $$
+DECLARE
+    mode TEXT := lower('${vector_index_mode}');
+    dims INT := ${embedding_dimensions};
+    tables TEXT[] := ARRAY['knowledge_bases', 'contexts', 'entities'];
+    prefixes TEXT[] := ARRAY['idx_kb', 'idx_contexts', 'idx_entities'];
+BEGIN
+    IF mode NOT IN ('full', 'halfvec', 'binary') THEN
+        RAISE EXCEPTION 'Unknown vector index mode: %', mode;
+    END IF;
+
+    FOR i IN 1 .. array_length(tables, 1) LOOP
+        IF mode = 'full' THEN
+            EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I USING hnsw (vector_embedding vector_cosine_ops)',
+                prefixes[i] || '_vector', tables[i]);
+        ELSE
+            EXECUTE format('DROP INDEX IF EXISTS %I', prefixes[i] || '_vector');
+        END IF;
+
+        IF mode = 'halfvec' THEN
+            EXECUTE format('ALTER TABLE %I ADD COLUMN IF NOT EXISTS vector_embedding_half halfvec(%s) '
+                || 'GENERATED ALWAYS AS (vector_embedding::halfvec(%s)) STORED', tables[i], dims, dims);
+            EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I '
+                || 'USING hnsw (vector_embedding_half halfvec_cosine_ops)', prefixes[i] || '_vector_half', tables[i]);
+        ELSE
+            EXECUTE format('ALTER TABLE %I DROP COLUMN IF EXISTS vector_embedding_half', tables[i]);
+        END IF;
+
+        IF mode = 'binary' THEN
+            EXECUTE format('ALTER TABLE %I ADD COLUMN IF NOT EXISTS vector_embedding_bit bit(%s) '
+                || 'GENERATED ALWAYS AS (binary_quantize(vector_embedding)::bit(%s)) STORED', tables[i], dims, dims);
+            EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I '
+                || 'USING hnsw (vector_embedding_bit bit_hamming_ops)', prefixes[i] || '_vector_bit', tables[i]);
+        ELSE
+            EXECUTE format('ALTER TABLE %I DROP COLUMN IF EXISTS vector_embedding_bit', tables[i]);
+        END IF;
+    END LOOP;
+
+    -- Quantized searches SET LOCAL hnsw.ef_search per query; clear the database-wide value
+    -- earlier runs of this migration set, which only reached connections opened after them
+    EXECUTE format('ALTER DATABASE %I RESET hnsw.ef_search', current_database());
+END $$;
@@ -0,0 +1,14 @@
+-- Persistent, content-addressed embedding cache.
+-- Survives restarts so re-ingesting a corpus does not pay for every embedding again.
+
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    model_id TEXT NOT NULL,
+    content_hash CHAR(64) NOT NULL, -- hex SHA-256 of the embedded text
+    embedding vector NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    last_accessed_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (model_id, content_hash)
+);
+
+-- Used by the retention / LRU sweeper
+CREATE INDEX IF NOT EXISTS idx_embedding_cache_last_accessed ON embedding_cache(last_accessed_at);
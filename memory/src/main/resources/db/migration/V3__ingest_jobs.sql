@@ -0,0 +1,50 @@
+-- Durable outbox for the ingestion pipeline.
+-- Jobs are enqueued by triggers in the same transaction as the row they refer to, so a committed
+-- knowledge base or context always has its job. Workers claim jobs with FOR UPDATE SKIP LOCKED;
+-- the rag_events notifications only wake them up early.
+
+CREATE TABLE IF NOT EXISTS ingest_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    job_type VARCHAR NOT NULL,                -- KB_CREATED | CONTEXT_CREATED
+    target_id UUID NOT NULL,                  -- knowledge_bases.id or contexts.id
+    kb_id UUID,
+    status VARCHAR NOT NULL DEFAULT 'PENDING', -- PENDING | RUNNING | DEAD (done jobs are deleted)
+    attempts INT NOT NULL DEFAULT 0,
+    available_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    locked_until TIMESTAMPTZ,                 -- lease of the worker running the job
+    last_error TEXT,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+-- Claim scans: due pending jobs and running jobs whose lease expired
+CREATE INDEX IF NOT EXISTS idx_ingest_jobs_pending ON ingest_jobs(available_at) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_ingest_jobs_running ON ingest_jobs(locked_until) WHERE status = 'RUNNING';
+
+CREATE OR REPLACE FUNCTION enqueue_kb_job()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO ingest_jobs (job_type, target_id, kb_id) VALUES ('KB_CREATED', NEW.id, NEW.id);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION enqueue_context_job()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO ingest_jobs (job_type, target_id, kb_id) VALUES ('CONTEXT_CREATED', NEW.id, NEW.kb_id);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS enqueue_kb_job ON knowledge_bases;
+CREATE TRIGGER enqueue_kb_job
+    AFTER INSERT ON knowledge_bases
+    FOR EACH ROW
+    EXECUTE FUNCTION enqueue_kb_job();
+
+DROP TRIGGER IF EXISTS enqueue_context_job ON contexts;
+CREATE TRIGGER enqueue_context_job
+    AFTER INSERT ON contexts
+    FOR EACH ROW
+    EXECUTE FUNCTION enqueue_context_job();
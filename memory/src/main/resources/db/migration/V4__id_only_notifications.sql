@@ -0,0 +1,28 @@
+-- rag_events notifications carry ids only. Content used to be part of the payload, which failed on
+-- Postgres's 8000-byte NOTIFY limit for large documents; workers now load it when claiming the job.
+
+CREATE OR REPLACE FUNCTION notify_kb_event()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('rag_events', json_build_object(
+        'type', 'KB_CREATED',
+        'id', NEW.id
+    )::text);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION notify_context_event()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('rag_events', json_build_object(
+        'type', 'CONTEXT_CREATED',
+        'id', NEW.id,
+        'kb_id', NEW.kb_id
+    )::text);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Claims of notified jobs look them up by target id
+CREATE INDEX IF NOT EXISTS idx_ingest_jobs_target ON ingest_jobs(target_id);
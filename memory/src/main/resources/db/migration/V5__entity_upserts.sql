@@ -0,0 +1,34 @@
+-- Entities are unique by normalized name and type, so concurrent extractions upsert into the same row
+-- instead of each inserting a duplicate. Existing duplicates are merged into their oldest row first.
+
+CREATE TEMP TABLE entity_merge AS
+SELECT id,
+       first_value(id) OVER (PARTITION BY lower(btrim(entity_name)), COALESCE(entity_type, '')
+                             ORDER BY created_at, id) AS keep_id
+FROM entities;
+DELETE FROM entity_merge WHERE id = keep_id;
+
+INSERT INTO entity_context_junction (entity_id, context_id)
+SELECT m.keep_id, j.context_id
+FROM entity_context_junction j
+JOIN entity_merge m ON m.id = j.entity_id
+ON CONFLICT DO NOTHING;
+
+-- Edges of merged entities are folded into the surviving pair, adding up their weights
+INSERT INTO relations (source_entity_id, target_entity_id, relation_type, edge_weight, metadata, created_at)
+SELECT COALESCE(ms.keep_id, r.source_entity_id), COALESCE(mt.keep_id, r.target_entity_id), r.relation_type,
+       SUM(r.edge_weight)::int, (array_agg(r.metadata ORDER BY r.created_at))[1], MIN(r.created_at)
+FROM relations r
+LEFT JOIN entity_merge ms ON ms.id = r.source_entity_id
+LEFT JOIN entity_merge mt ON mt.id = r.target_entity_id
+WHERE ms.id IS NOT NULL OR mt.id IS NOT NULL
+GROUP BY 1, 2, 3
+ON CONFLICT (source_entity_id, target_entity_id, relation_type)
+DO UPDATE SET edge_weight = relations.edge_weight + EXCLUDED.edge_weight;
+
+-- Junction rows and relations of the merged entities cascade
+DELETE FROM entities WHERE id IN (SELECT id FROM entity_merge);
+DROP TABLE entity_merge;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_entities_name_type
+    ON entities (lower(btrim(entity_name)), COALESCE(entity_type, ''));
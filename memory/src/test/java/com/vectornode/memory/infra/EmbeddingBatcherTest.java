@@ -0,0 +1,140 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.EmbeddingBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the query-embedding micro-batcher.
+ */
+class EmbeddingBatcherTest {
+
+    @AfterEach
+    void tearDown() {
+        EmbeddingBatcher.configure(Duration.ZERO, EmbeddingBatcher.DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @Test
+    @DisplayName("Should call the model directly when batching is disabled")
+    void shouldBypassWhenDisabled() {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed("query")).thenReturn(new float[] { 1f });
+
+        float[] embedding = EmbeddingBatcher.embed(model, "query");
+
+        assertEquals(1f, embedding[0]);
+        verify(model, never()).embed(anyList());
+    }
+
+    @Test
+    @DisplayName("Should coalesce concurrent requests into one multi-input call")
+    void shouldCoalesceConcurrentRequests() throws Exception {
+        EmbeddingBatcher.configure(Duration.ofMillis(200), 4);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingBatcher.bindMetrics(registry);
+
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> new float[] { Float.parseFloat(t) }).toList();
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String text = String.valueOf(i);
+                futures.add(pool.submit(() -> EmbeddingBatcher.embed(model, text)));
+            }
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals((float) i, futures.get(i).get(5, TimeUnit.SECONDS)[0]);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        verify(model, times(1)).embed(anyList());
+        assertEquals(1, registry.summary(EmbeddingBatcher.BATCH_SIZE_METRIC).count());
+        assertEquals(4.0, registry.summary(EmbeddingBatcher.BATCH_SIZE_METRIC).totalAmount());
+        assertEquals(4, registry.timer(EmbeddingBatcher.QUEUE_DELAY_METRIC).count());
+    }
+
+    @Test
+    @DisplayName("Should dispatch a lone request once the window elapses")
+    void shouldFlushAfterWindow() {
+        EmbeddingBatcher.configure(Duration.ofMillis(5), 32);
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed("query")).thenReturn(new float[] { 3f });
+
+        assertEquals(3f, EmbeddingBatcher.embed(model, "query")[0]);
+    }
+
+    @Test
+    @DisplayName("Should propagate provider failures to every caller in the batch")
+    void shouldPropagateFailures() {
+        EmbeddingBatcher.configure(Duration.ofMillis(5), 32);
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed("query")).thenThrow(new IllegalStateException("provider down"));
+
+        assertThrows(IllegalStateException.class, () -> EmbeddingBatcher.embed(model, "query"));
+    }
+
+    @Test
+    @DisplayName("Should complete every caller when the model throws an Error")
+    void shouldPropagateErrors() throws Exception {
+        EmbeddingBatcher.configure(Duration.ofMillis(200), 2);
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenThrow(new AssertionError("model bug"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<float[]> first = pool.submit(() -> EmbeddingBatcher.embed(model, "a"));
+            Future<float[]> second = pool.submit(() -> EmbeddingBatcher.embed(model, "b"));
+
+            for (Future<float[]> future : List.of(first, second)) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(AssertionError.class, e.getCause());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should fail the batch when the model returns fewer vectors than inputs")
+    void shouldFailOnVectorCountMismatch() throws Exception {
+        EmbeddingBatcher.configure(Duration.ofMillis(200), 2);
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenReturn(List.of(new float[] { 1f }));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<float[]> first = pool.submit(() -> EmbeddingBatcher.embed(model, "a"));
+            Future<float[]> second = pool.submit(() -> EmbeddingBatcher.embed(model, "b"));
+
+            for (Future<float[]> future : List.of(first, second)) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
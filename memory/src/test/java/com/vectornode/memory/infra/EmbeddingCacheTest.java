@@ -0,0 +1,155 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.EmbeddingCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the in-process embedding cache.
+ */
+class EmbeddingCacheTest {
+
+    @BeforeEach
+    void setUp() {
+        EmbeddingCache.configure(EmbeddingCache.DEFAULT_MAX_WEIGHT_BYTES);
+    }
+
+    @Test
+    @DisplayName("Should load once and serve repeated texts from cache")
+    void shouldServeRepeatedTextsFromCache() {
+        AtomicInteger loads = new AtomicInteger();
+
+        float[] first = EmbeddingCache.get("GEMINI", "embed", "User", text -> {
+            loads.incrementAndGet();
+            return new float[] { 1f, 2f };
+        });
+        float[] second = EmbeddingCache.get("GEMINI", "embed", "User", text -> {
+            loads.incrementAndGet();
+            return new float[] { 3f, 4f };
+        });
+
+        assertEquals(1, loads.get());
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    @DisplayName("Should key entries by provider and model")
+    void shouldKeyByProviderAndModel() {
+        AtomicInteger loads = new AtomicInteger();
+
+        EmbeddingCache.get("GEMINI", "embed-a", "User", text -> new float[] { loads.incrementAndGet() });
+        EmbeddingCache.get("GEMINI", "embed-b", "User", text -> new float[] { loads.incrementAndGet() });
+        EmbeddingCache.get("OPENAI", "embed-a", "User", text -> new float[] { loads.incrementAndGet() });
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should pass only uncached texts to the batch loader, preserving order")
+    void shouldBatchLoadOnlyMisses() {
+        EmbeddingCache.get("GEMINI", "embed", "b", text -> new float[] { 2f });
+
+        List<List<String>> batches = new ArrayList<>();
+        List<float[]> result = EmbeddingCache.getAll("GEMINI", "embed", List.of("a", "b", "c"), missing -> {
+            batches.add(missing);
+            return missing.stream().map(t -> new float[] { t.charAt(0) - 'a' + 1f }).toList();
+        });
+
+        assertEquals(List.of(List.of("a", "c")), batches);
+        assertEquals(1f, result.get(0)[0]);
+        assertEquals(2f, result.get(1)[0]);
+        assertEquals(3f, result.get(2)[0]);
+    }
+
+    @Test
+    @DisplayName("Should coalesce concurrent misses for the same text into one load")
+    void shouldCoalesceConcurrentMisses() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> EmbeddingCache.get("GEMINI", "embed", "same query", text -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new float[] { 42f };
+                })));
+            }
+
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<float[]> future : futures) {
+                assertEquals(42f, future.get(5, TimeUnit.SECONDS)[0]);
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should not cache failed loads")
+    void shouldNotCacheFailures() {
+        assertThrows(IllegalStateException.class, () -> EmbeddingCache.get("GEMINI", "embed", "flaky", text -> {
+            throw new IllegalStateException("provider down");
+        }));
+
+        float[] embedding = EmbeddingCache.get("GEMINI", "embed", "flaky", text -> new float[] { 7f });
+        assertEquals(7f, embedding[0]);
+    }
+
+    @Test
+    @DisplayName("Should fail pending loads when the loader throws an Error")
+    void shouldFailPendingLoadsOnError() {
+        assertThrows(AssertionError.class, () -> EmbeddingCache.getAll("GEMINI", "embed", List.of("a", "b"),
+                texts -> {
+                    throw new AssertionError("stub failed");
+                }));
+
+        // An incomplete future would block this caller in join()
+        List<float[]> embeddings = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> EmbeddingCache.getAll("GEMINI", "embed", List.of("a", "b"),
+                        texts -> List.of(new float[] { 1f }, new float[] { 2f })));
+        assertEquals(2f, embeddings.get(1)[0]);
+    }
+
+    @Test
+    @DisplayName("Should return copies so callers cannot mutate cached vectors")
+    void shouldReturnDefensiveCopies() {
+        float[] first = EmbeddingCache.get("GEMINI", "embed", "User", text -> new float[] { 1f });
+        first[0] = 99f;
+
+        float[] second = EmbeddingCache.get("GEMINI", "embed", "User", text -> new float[] { 5f });
+        assertEquals(1f, second[0]);
+    }
+
+    @Test
+    @DisplayName("Should drop all entries on invalidation")
+    void shouldInvalidateAll() {
+        EmbeddingCache.get("GEMINI", "embed", "User", text -> new float[] { 1f });
+        EmbeddingCache.invalidateAll();
+
+        float[] reloaded = EmbeddingCache.get("GEMINI", "embed", "User", text -> new float[] { 2f });
+        assertEquals(2f, reloaded[0]);
+    }
+}
@@ -0,0 +1,83 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.EmbeddingDimensions;
+import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.config.MatryoshkaEmbeddingModel;
+import com.vectornode.memory.config.ProviderRegistry;
+import com.vectornode.memory.config.StubEmbeddingModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for configurable embedding dimensions and Matryoshka truncation.
+ */
+class EmbeddingDimensionsTest {
+
+    @AfterEach
+    void tearDown() {
+        EmbeddingDimensions.configure(EmbeddingDimensions.DEFAULT_DIMENSIONS);
+        ProviderRegistry.remove("dims-test");
+    }
+
+    private static double norm(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return Math.sqrt(sum);
+    }
+
+    @Test
+    @DisplayName("Should keep the prefix and renormalize to unit length")
+    void shouldTruncateAndRenormalize() {
+        float[] truncated = EmbeddingDimensions.truncate(new float[] { 3f, 4f, 12f }, 2);
+
+        assertArrayEquals(new float[] { 0.6f, 0.8f }, truncated, 1e-6f);
+    }
+
+    @Test
+    @DisplayName("Should pass through vectors of the target size and reject shorter ones")
+    void shouldValidateLength() {
+        float[] exact = { 1f, 2f };
+
+        assertSame(exact, EmbeddingDimensions.truncate(exact, 2));
+        assertThrows(IllegalStateException.class, () -> EmbeddingDimensions.truncate(exact, 3));
+        assertThrows(IllegalArgumentException.class, () -> EmbeddingDimensions.configure(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> EmbeddingDimensions.configure(EmbeddingDimensions.MAX_INDEXED_DIMENSIONS + 1));
+    }
+
+    @Test
+    @DisplayName("Should truncate single and batched embeddings from the wrapped model")
+    void shouldTruncateModelOutput() {
+        MatryoshkaEmbeddingModel model = new MatryoshkaEmbeddingModel(new StubEmbeddingModel(768), 256);
+
+        float[] single = model.embed("hello");
+        List<float[]> batch = model.embed(List.of("hello", "world"));
+
+        assertEquals(256, single.length);
+        assertEquals(1.0, norm(single), 1e-4);
+        assertArrayEquals(single, batch.get(0));
+        assertEquals(256, model.dimensions());
+    }
+
+    @Test
+    @DisplayName("Should request full-size vectors and store them at the configured dimension")
+    void shouldApplyStoredDimensionInProvider() {
+        EmbeddingDimensions.configure(384);
+
+        new LLMProvider("dims-test", "STUB", null, null, "stub-chat", "stub-embed",
+                LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE, 768);
+
+        float[] vector = ProviderRegistry.get("dims-test").embeddingModel().embed("hello");
+        assertEquals(384, vector.length);
+        assertEquals(1.0, norm(vector), 1e-4);
+        assertThrows(IllegalArgumentException.class, () -> new LLMProvider("dims-test", "STUB", null, null,
+                "stub-chat", "stub-embed", LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE, 256));
+    }
+}
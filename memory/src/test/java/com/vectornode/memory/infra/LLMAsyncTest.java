@@ -0,0 +1,84 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.LLMAsync;
+import com.vectornode.memory.setup.exception.custom.LlmProviderException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the virtual-thread executor behind the async LLM API.
+ */
+class LLMAsyncTest {
+
+    @AfterEach
+    void tearDown() {
+        LLMAsync.configure(LLMAsync.DEFAULT_TIMEOUT);
+    }
+
+    @Test
+    @DisplayName("Should run the call on a virtual thread and return its result")
+    void shouldRunOnVirtualThread() {
+        CompletableFuture<Boolean> future = LLMAsync.supply(() -> Thread.currentThread().isVirtual());
+
+        assertTrue(LLMAsync.await(future));
+    }
+
+    @Test
+    @DisplayName("Should rethrow the original provider exception")
+    void shouldUnwrapFailures() {
+        CompletableFuture<String> future = LLMAsync.supply(() -> {
+            throw new IllegalArgumentException("LLM Call failed: boom");
+        });
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> LLMAsync.await(future));
+        assertEquals("LLM Call failed: boom", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("Should time out and interrupt the blocked call")
+    void shouldTimeOutAndInterrupt() throws Exception {
+        LLMAsync.configure(Duration.ofMillis(50));
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<String> future = LLMAsync.supply(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "late";
+        });
+
+        assertThrows(LlmProviderException.class, () -> LLMAsync.await(future));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Should interrupt the blocked call when the future is cancelled")
+    void shouldInterruptOnCancel() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<String> future = LLMAsync.supply(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "late";
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        future.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
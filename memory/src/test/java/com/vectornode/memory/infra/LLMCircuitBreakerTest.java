@@ -0,0 +1,125 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.LLMBulkhead;
+import com.vectornode.memory.config.LLMCircuitBreaker;
+import com.vectornode.memory.setup.exception.custom.LlmUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the LLM circuit breaker and bulkhead.
+ */
+class LLMCircuitBreakerTest {
+
+    @BeforeEach
+    void setUp() {
+        LLMCircuitBreaker.configure(new LLMCircuitBreaker.Settings(4, 4, 0.5, Duration.ZERO,
+                Duration.ofMillis(100), 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        LLMCircuitBreaker.configure(LLMCircuitBreaker.Settings.defaults());
+        LLMBulkhead.configure(LLMBulkhead.DEFAULT_MAX_CONCURRENT, LLMBulkhead.DEFAULT_MAX_WAIT);
+    }
+
+    private static void fail503() {
+        assertThrows(TransientAiException.class, () -> LLMCircuitBreaker.call(() -> {
+            throw new TransientAiException("503");
+        }));
+    }
+
+    @Test
+    @DisplayName("Should open once the failure rate reaches the threshold and fail fast")
+    void shouldOpenOnFailureRate() {
+        LLMCircuitBreaker.call(() -> "ok");
+        LLMCircuitBreaker.call(() -> "ok");
+        fail503();
+        assertEquals(LLMCircuitBreaker.State.CLOSED, LLMCircuitBreaker.state());
+        fail503();
+
+        assertEquals(LLMCircuitBreaker.State.OPEN, LLMCircuitBreaker.state());
+        LlmUnavailableException e = assertThrows(LlmUnavailableException.class,
+                () -> LLMCircuitBreaker.call(() -> "never called"));
+        assertTrue(e.getRetryAfter().compareTo(Duration.ofMillis(100)) <= 0);
+    }
+
+    @Test
+    @DisplayName("Should not count client errors as provider failures")
+    void shouldIgnoreClientErrors() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(NonTransientAiException.class, () -> LLMCircuitBreaker.call(() -> {
+                throw new NonTransientAiException("400");
+            }));
+        }
+
+        assertEquals(LLMCircuitBreaker.State.CLOSED, LLMCircuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("Should close after successful half-open probes and reopen on a failed probe")
+    void shouldProbeWhenHalfOpen() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            fail503();
+        }
+        Thread.sleep(150);
+
+        LLMCircuitBreaker.Permit first = LLMCircuitBreaker.acquire();
+        LLMCircuitBreaker.Permit second = LLMCircuitBreaker.acquire();
+        assertEquals(LLMCircuitBreaker.State.HALF_OPEN, LLMCircuitBreaker.state());
+        // Only halfOpenProbes calls are let through
+        assertThrows(LlmUnavailableException.class, LLMCircuitBreaker::acquire);
+        first.onSuccess();
+        second.onSuccess();
+        assertEquals(LLMCircuitBreaker.State.CLOSED, LLMCircuitBreaker.state());
+
+        for (int i = 0; i < 4; i++) {
+            fail503();
+        }
+        Thread.sleep(150);
+        fail503();
+        assertEquals(LLMCircuitBreaker.State.OPEN, LLMCircuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("Should free the half-open probe when the call throws an Error")
+    void shouldReleaseProbeOnError() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            fail503();
+        }
+        Thread.sleep(150);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(AssertionError.class, () -> LLMCircuitBreaker.call(() -> {
+                throw new AssertionError("stub failed");
+            }));
+        }
+
+        // Leaked probes would leave the breaker rejecting every call
+        assertEquals("ok", LLMCircuitBreaker.call(() -> "ok"));
+        assertEquals("ok", LLMCircuitBreaker.call(() -> "ok"));
+        assertEquals(LLMCircuitBreaker.State.CLOSED, LLMCircuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("Should reject requests beyond the bulkhead capacity and free slots on close")
+    void shouldBoundConcurrency() {
+        LLMBulkhead.configure(1, Duration.ofMillis(10));
+
+        LLMBulkhead.Permit held = LLMBulkhead.acquire();
+        assertThrows(LlmUnavailableException.class, LLMBulkhead::acquire);
+        held.close();
+        held.close();
+
+        assertEquals("ok", LLMBulkhead.call(() -> "ok"));
+        assertEquals("ok", LLMBulkhead.call(() -> "ok"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.LLMHedger;
+import com.vectornode.memory.config.ProviderSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for hedged and failover calls across a provider chain.
+ */
+class LLMHedgerTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        LLMHedger.bindMetrics(registry);
+        LLMHedger.configure(Duration.ofMillis(50), Duration.ofMillis(50));
+    }
+
+    @AfterEach
+    void tearDown() {
+        LLMHedger.configure(LLMHedger.DEFAULT_CHAT_DELAY, LLMHedger.DEFAULT_EMBEDDING_DELAY);
+    }
+
+    @Test
+    @DisplayName("Should hedge a slow primary and cancel it when the secondary wins")
+    void shouldHedgeSlowPrimary() throws Exception {
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+
+        String result = LLMHedger.call(LLMHedger.CallType.CHAT, List.of("primary", "secondary"), provider -> {
+            if (provider.equals("primary")) {
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    primaryInterrupted.countDown();
+                }
+                return "late";
+            }
+            return "fast";
+        });
+
+        assertEquals("fast", result);
+        assertTrue(primaryInterrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, registry.get("llm.hedge.fired").tag("type", "chat").counter().count());
+        assertEquals(1, registry.get("llm.hedge.wins").tag("type", "chat").tag("winner", "secondary")
+                .counter().count());
+    }
+
+    @Test
+    @DisplayName("Should not hedge a primary that answers within the delay")
+    void shouldNotHedgeFastPrimary() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = LLMHedger.call(LLMHedger.CallType.EMBEDDING, List.of("primary", "secondary"), provider -> {
+            calls.incrementAndGet();
+            return provider;
+        });
+
+        assertEquals("primary", result);
+        assertEquals(1, calls.get());
+        assertEquals(0, registry.get("llm.hedge.fired").tag("type", "embedding").counter().count());
+    }
+
+    @Test
+    @DisplayName("Should fail over immediately on a server error")
+    void shouldFailOverOnServerError() {
+        LLMHedger.configure(Duration.ZERO, Duration.ZERO);
+
+        String result = LLMHedger.call(LLMHedger.CallType.CHAT, List.of("primary", "secondary"), provider -> {
+            if (provider.equals("primary")) {
+                throw new TransientAiException("503 Service Unavailable");
+            }
+            return "recovered";
+        });
+
+        assertEquals("recovered", result);
+        assertEquals(1, registry.get("llm.hedge.failovers").tag("type", "chat").counter().count());
+    }
+
+    @Test
+    @DisplayName("Should not fail over on client errors and rethrow the last error when all fail")
+    void shouldPropagateErrors() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(NonTransientAiException.class, () -> LLMHedger.call(LLMHedger.CallType.CHAT,
+                List.of("primary", "secondary"), provider -> {
+                    calls.incrementAndGet();
+                    throw new NonTransientAiException("401 Unauthorized");
+                }));
+        assertEquals(1, calls.get());
+
+        TransientAiException e = assertThrows(TransientAiException.class, () -> LLMHedger.call(
+                LLMHedger.CallType.CHAT, List.of("primary", "secondary"), provider -> {
+                    throw new TransientAiException("500 from " + provider);
+                }));
+        assertTrue(e.getMessage().startsWith("500 from"));
+    }
+
+    @Test
+    @DisplayName("Should only hedge embeddings to fallbacks serving the same embedding model")
+    void shouldFilterEmbeddingChain() {
+        ProviderSnapshot primary = new ProviderSnapshot("default", null, null, "OPENAI/gpt@a", "OPENAI",
+                "text-embedding-3-small#768>768@https://api.openai.com", 100);
+        ProviderSnapshot sameModel = new ProviderSnapshot("default", null, null, "AZURE/gpt@b", "AZURE",
+                "text-embedding-3-small#768>768@https://cortexdb.openai.azure.com/", 100);
+        ProviderSnapshot otherModel = new ProviderSnapshot("default", null, null, "LOCAL/llama@c", "LOCAL",
+                "nomic-embed-text#768>768@http://localhost:11434", 100);
+
+        ProviderSnapshot chained = primary.withFallback(sameModel).withFallback(otherModel);
+
+        assertEquals(List.of(primary, sameModel, otherModel).size(), chained.chain().size());
+        assertEquals(2, chained.embeddingChain().size());
+        assertEquals("AZURE", chained.embeddingChain().get(1).embeddingProvider());
+    }
+}
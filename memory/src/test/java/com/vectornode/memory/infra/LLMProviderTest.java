@@ -1,18 +1,26 @@
 package com.vectornode.memory.infra;
 
+import com.vectornode.memory.config.EmbeddingCache;
+import com.vectornode.memory.config.EmbeddingStore;
 import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.config.ProviderRegistry;
+import com.vectornode.memory.config.ProviderSnapshot;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 /**
  * Integration tests for LLMProvider with real API calls.
@@ -154,6 +162,17 @@ class LLMProviderTest {
         assertTrue(exception.getMessage().contains("Unsupported provider"));
     }
 
+    @Test
+    @DisplayName("Should require a model path for the LOCAL provider")
+    void shouldRequireModelPathForLocalProvider() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> new LLMProvider("local-test", "local", null, null, "unused", "all-mpnet-base-v2",
+                        LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE));
+
+        assertTrue(exception.getMessage().contains("cortex.llm.local.model-path"));
+        assertFalse(ProviderRegistry.profiles().contains("local-test"));
+    }
+
     @Test
     @DisplayName("Should throw exception for null API key")
     void shouldThrowExceptionForNullApiKey() {
@@ -223,15 +242,12 @@ class LLMProviderTest {
 
     @Test
     @DisplayName("Should throw exception when calling getEmbedding before initialization")
-    void shouldThrowExceptionWhenEmbeddingModelNotInitialized() throws Exception {
-        // Use reflection to reset the static embeddingModel field to null
-        java.lang.reflect.Field embeddingModelField = LLMProvider.class.getDeclaredField("embeddingModel");
-        embeddingModelField.setAccessible(true);
-        Object originalValue = embeddingModelField.get(null);
+    void shouldThrowExceptionWhenEmbeddingModelNotInitialized() {
+        ProviderSnapshot original = ProviderRegistry.getDefault();
 
         try {
-            // Set embeddingModel to null to simulate uninitialized state
-            embeddingModelField.set(null, null);
+            // Empty the registry to simulate uninitialized state
+            ProviderRegistry.clear();
 
             // Now calling getEmbedding should throw IllegalArgumentException (wraps
             // IllegalStateException)
@@ -242,22 +258,18 @@ class LLMProviderTest {
             assertTrue(exception.getMessage().contains("EmbeddingModel not initialized"),
                     "Exception message should indicate EmbeddingModel not initialized");
         } finally {
-            // Restore original value to not affect other tests
-            embeddingModelField.set(null, originalValue);
+            // Restore original snapshot to not affect other tests
+            restoreDefault(original);
         }
     }
 
     @Test
     @DisplayName("Should throw exception when calling callLLM before initialization")
-    void shouldThrowExceptionWhenChatClientNotInitialized() throws Exception {
-        // Use reflection to reset the static chatClient field to null
-        java.lang.reflect.Field chatClientField = LLMProvider.class.getDeclaredField("chatClient");
-        chatClientField.setAccessible(true);
-        Object originalValue = chatClientField.get(null);
+    void shouldThrowExceptionWhenChatClientNotInitialized() {
+        ProviderSnapshot original = ProviderRegistry.getDefault();
 
         try {
-            // Set chatClient to null to simulate uninitialized state
-            chatClientField.set(null, null);
+            ProviderRegistry.clear();
 
             // Now calling callLLM should throw IllegalArgumentException (wraps
             // IllegalStateException)
@@ -268,8 +280,48 @@ class LLMProviderTest {
             assertTrue(exception.getMessage().contains("ChatClient not initialized"),
                     "Exception message should indicate ChatClient not initialized");
         } finally {
-            // Restore original value to not affect other tests
-            chatClientField.set(null, originalValue);
+            restoreDefault(original);
+        }
+    }
+
+    @Test
+    @DisplayName("Should serve embeddings from the persistent store before calling the provider")
+    void shouldUsePersistentStoreBeforeProvider() {
+        ProviderSnapshot original = ProviderRegistry.getDefault();
+
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed("fresh")).thenReturn(new float[] { 2f });
+        EmbeddingStore store = mock(EmbeddingStore.class);
+        String storedHash = EmbeddingCache.sha256("stored");
+        when(store.findAll(eq("TEST/test-embed"), anyCollection()))
+                .thenReturn(Map.of(storedHash, new float[] { 1f }));
+
+        try {
+            ProviderRegistry.register(new ProviderSnapshot(ProviderRegistry.DEFAULT_PROFILE, null, model,
+                    "TEST/test-chat", "TEST", "test-embed", LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE));
+            LLMProvider.setEmbeddingStore(store);
+            EmbeddingCache.invalidateAll();
+
+            List<float[]> embeddings = LLMProvider.getEmbeddings(List.of("stored", "fresh"));
+
+            assertEquals(1f, embeddings.get(0)[0]);
+            assertEquals(2f, embeddings.get(1)[0]);
+            // Only the text missing from the store goes to the provider, as a single-item call
+            verify(model).embed("fresh");
+            verify(store).saveAll(eq("TEST/test-embed"),
+                    argThat(m -> m.size() == 1 && m.containsKey(EmbeddingCache.sha256("fresh"))));
+        } finally {
+            LLMProvider.setEmbeddingStore(null);
+            EmbeddingCache.invalidateAll();
+            restoreDefault(original);
+        }
+    }
+
+    private static void restoreDefault(ProviderSnapshot original) {
+        if (original != null) {
+            ProviderRegistry.register(original);
+        } else {
+            ProviderRegistry.remove(ProviderRegistry.DEFAULT_PROFILE);
         }
     }
 
@@ -0,0 +1,169 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.LLMLane;
+import com.vectornode.memory.config.LLMRateLimiter;
+import com.vectornode.memory.config.RetryAfterErrorHandler;
+import com.vectornode.memory.setup.exception.custom.LlmRateLimitedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the per-provider adaptive LLM rate limiter.
+ */
+class LLMRateLimiterTest {
+
+    private LLMRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        LLMRateLimiter.configure(new LLMRateLimiter.Settings(4, 1, 8, 0.5, 0, 0, 0.2,
+                Duration.ofMillis(500), Duration.ofSeconds(5), Duration.ofMillis(200), 3, Duration.ofMillis(50)));
+        // Limiters are registered per provider name; use a fresh one per test
+        limiter = LLMRateLimiter.forProvider("TEST-" + UUID.randomUUID());
+    }
+
+    @AfterEach
+    void tearDown() {
+        LLMRateLimiter.configure(LLMRateLimiter.Settings.defaults());
+    }
+
+    @Test
+    @DisplayName("Should halve the lane limit on 429 and grow it back on success")
+    void shouldAdjustLimitAimd() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = LLMLane.INGESTION.call(() -> limiter.execute(10, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new LlmRateLimitedException("429", Duration.ofMillis(10));
+            }
+            return "ok";
+        }));
+
+        assertEquals("ok", result);
+        assertEquals(2, calls.get());
+        // 4 * 0.5 = 2, then +1/2 after the successful retry
+        assertEquals(2, limiter.currentLimit(LLMLane.INGESTION));
+        assertEquals(4, limiter.currentLimit(LLMLane.QUERY));
+    }
+
+    @Test
+    @DisplayName("Should wait for Retry-After before retrying")
+    void shouldHonourRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.nanoTime();
+
+        LLMLane.INGESTION.call(() -> limiter.execute(10, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new LlmRateLimitedException("429", Duration.ofMillis(150));
+            }
+            return "ok";
+        }));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    @DisplayName("Should fail query calls fast when the provider asks for a long pause")
+    void shouldFailQueryFastOnLongRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+
+        LlmRateLimitedException e = assertThrows(LlmRateLimitedException.class,
+                () -> limiter.execute(10, () -> {
+                    calls.incrementAndGet();
+                    throw new LlmRateLimitedException("429", Duration.ofSeconds(30));
+                }));
+
+        assertEquals(1, calls.get());
+        assertEquals(Duration.ofSeconds(30), e.getRetryAfter());
+    }
+
+    @Test
+    @DisplayName("Should not let a saturated ingestion lane block query calls")
+    void shouldIsolateLanes() throws Exception {
+        CountDownLatch saturated = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                pool.execute(LLMLane.INGESTION.wrap(() -> limiter.execute(10, () -> {
+                    saturated.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                })));
+            }
+            assertTrue(saturated.await(5, TimeUnit.SECONDS));
+
+            assertEquals("answer", limiter.execute(10, () -> "answer"));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should pass non-throttling failures through without retrying")
+    void shouldNotRetryOtherFailures() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> LLMLane.INGESTION.call(() -> limiter.execute(10, () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("bad request");
+        })));
+
+        assertEquals(1, calls.get());
+        assertEquals(4, limiter.currentLimit(LLMLane.INGESTION));
+    }
+
+    @Test
+    @DisplayName("Should release the lane permit when the call throws an Error")
+    void shouldReleasePermitOnError() {
+        // More failures than the lane limit of 4: a leaked permit would make the last call time out
+        for (int i = 0; i < 6; i++) {
+            assertThrows(AssertionError.class, () -> limiter.execute(10, () -> {
+                throw new AssertionError("callee bug");
+            }));
+            AtomicReference<Throwable> streamError = new AtomicReference<>();
+            limiter.executeStream(10, () -> {
+                throw new AssertionError("callee bug");
+            }).subscribe(token -> {
+            }, streamError::set);
+            assertInstanceOf(AssertionError.class, streamError.get());
+        }
+
+        assertEquals("ok", limiter.execute(10, () -> "ok"));
+        assertEquals(4, limiter.currentLimit(LLMLane.QUERY));
+    }
+
+    @Test
+    @DisplayName("Should parse Retry-After seconds and retry-after-ms headers")
+    void shouldParseRetryAfterHeaders() {
+        HttpHeaders seconds = new HttpHeaders();
+        seconds.set(HttpHeaders.RETRY_AFTER, "7");
+        HttpHeaders millis = new HttpHeaders();
+        millis.set("retry-after-ms", "250");
+        millis.set(HttpHeaders.RETRY_AFTER, "1");
+
+        assertEquals(Duration.ofSeconds(7), RetryAfterErrorHandler.parseRetryAfter(seconds));
+        assertEquals(Duration.ofMillis(250), RetryAfterErrorHandler.parseRetryAfter(millis));
+        assertNull(RetryAfterErrorHandler.parseRetryAfter(new HttpHeaders()));
+    }
+}
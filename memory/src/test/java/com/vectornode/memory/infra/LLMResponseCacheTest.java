@@ -0,0 +1,81 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.LLMResponseCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the deterministic-prompt LLM response cache.
+ */
+class LLMResponseCacheTest {
+
+    @BeforeEach
+    void setUp() {
+        LLMResponseCache.configure(LLMResponseCache.DEFAULT_TTL, LLMResponseCache.DEFAULT_MAX_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LLMResponseCache.configure(LLMResponseCache.DEFAULT_TTL, LLMResponseCache.DEFAULT_MAX_SIZE);
+    }
+
+    @Test
+    @DisplayName("Should serve repeated prompts from cache and report the hit ratio")
+    void shouldServeRepeatedPrompts() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LLMResponseCache.bindMetrics(registry);
+        AtomicInteger calls = new AtomicInteger();
+
+        String first = LLMResponseCache.get("GEMINI/chat", "classify: hello", p -> {
+            calls.incrementAndGet();
+            return "PROMPT";
+        });
+        String second = LLMResponseCache.get("GEMINI/chat", "classify: hello", p -> {
+            calls.incrementAndGet();
+            return "DOCUMENT";
+        });
+
+        assertEquals("PROMPT", first);
+        assertEquals("PROMPT", second);
+        assertEquals(1, calls.get());
+        assertEquals(0.5, registry.get(LLMResponseCache.METRIC_NAME + ".hit.ratio").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should key entries by chat model")
+    void shouldKeyByChatModel() {
+        LLMResponseCache.get("GEMINI/chat-a", "classify: hello", p -> "PROMPT");
+        String other = LLMResponseCache.get("GEMINI/chat-b", "classify: hello", p -> "DOCUMENT");
+
+        assertEquals("DOCUMENT", other);
+    }
+
+    @Test
+    @DisplayName("Should not cache failed calls")
+    void shouldNotCacheFailures() {
+        assertThrows(IllegalArgumentException.class, () -> LLMResponseCache.get("GEMINI/chat", "pick branch", p -> {
+            throw new IllegalArgumentException("LLM Call failed: timeout");
+        }));
+
+        assertEquals("1", LLMResponseCache.get("GEMINI/chat", "pick branch", p -> "1"));
+    }
+
+    @Test
+    @DisplayName("Should expire entries after the TTL")
+    void shouldExpireAfterTtl() throws Exception {
+        LLMResponseCache.configure(Duration.ofMillis(50), 100);
+        LLMResponseCache.get("GEMINI/chat", "pick branch", p -> "0");
+
+        Thread.sleep(150);
+
+        assertEquals("2", LLMResponseCache.get("GEMINI/chat", "pick branch", p -> "2"));
+    }
+}
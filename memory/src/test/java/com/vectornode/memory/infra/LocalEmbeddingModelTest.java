@@ -0,0 +1,172 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.EmbeddingDimensions;
+import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.config.LocalEmbeddingModel;
+import com.vectornode.memory.config.ProviderRegistry;
+import com.vectornode.memory.config.ProviderSnapshot;
+import com.vectornode.memory.config.StubEmbeddingModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the in-process LOCAL embedding model.
+ */
+class LocalEmbeddingModelTest {
+
+    // Directory with a small ONNX sentence-embedding export (model.onnx and tokenizer.json)
+    private static final String TEST_MODEL_ENV = "CORTEX_LOCAL_TEST_MODEL";
+
+    @AfterEach
+    void tearDown() {
+        LocalEmbeddingModel.configure(LocalEmbeddingModel.Settings.defaults());
+    }
+
+    /**
+     * Stub model that records batch sizes, the threads batches ran on, and
+     * the highest number of batches running at once.
+     */
+    static class RecordingModel extends StubEmbeddingModel {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        RecordingModel() {
+            super(4);
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                batchSizes.add(request.getInstructions().size());
+                threads.add(Thread.currentThread().getName());
+                return super.call(request);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should split inputs into batches on the inference threads and keep their order")
+    void shouldBatchOnInferenceThreads() {
+        RecordingModel onnx = new RecordingModel();
+        LocalEmbeddingModel model = new LocalEmbeddingModel(onnx, 2, 2, 4);
+        List<String> texts = List.of("a", "b", "c", "d", "e");
+
+        EmbeddingResponse response = model.call(new EmbeddingRequest(texts, null));
+
+        assertEquals(List.of(2, 2, 1), onnx.batchSizes.stream().sorted(Collections.reverseOrder()).toList());
+        assertTrue(onnx.threads.stream().allMatch(name -> name.startsWith("local-embed-")));
+        assertEquals(5, response.getResults().size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(i, response.getResults().get(i).getIndex());
+            assertArrayEquals(new StubEmbeddingModel(4).embed(texts.get(i)), response.getResults().get(i).getOutput());
+        }
+    }
+
+    @Test
+    @DisplayName("Should run at most one batch per inference thread and queue the rest")
+    void shouldBoundConcurrentInference() throws Exception {
+        RecordingModel onnx = new RecordingModel();
+        LocalEmbeddingModel model = new LocalEmbeddingModel(onnx, 2, 1, 1);
+
+        List<CompletableFuture<List<float[]>>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<String> texts = List.of("x" + i, "y" + i, "z" + i);
+            calls.add(CompletableFuture.supplyAsync(() -> model.embed(texts)));
+        }
+        for (CompletableFuture<List<float[]>> call : calls) {
+            assertEquals(3, call.get(10, TimeUnit.SECONDS).size());
+        }
+
+        // Callers block while the one-slot queue is full instead of failing
+        assertEquals(12, onnx.batchSizes.size());
+        assertTrue(onnx.maxRunning.get() <= 2);
+    }
+
+    @Test
+    @DisplayName("Should rethrow inference failures to the caller")
+    void shouldPropagateFailures() {
+        EmbeddingModel failing = new StubEmbeddingModel(4) {
+            @Override
+            public float[] embed(Document document) {
+                throw new IllegalStateException("session closed");
+            }
+        };
+        LocalEmbeddingModel model = new LocalEmbeddingModel(failing, 1, 1, 1);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> model.embed(new Document("text")));
+        assertEquals("session closed", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("Should embed with a real ONNX model and keep the profile's chat model")
+    void shouldEmbedWithOnnxModel() {
+        String dir = System.getenv(TEST_MODEL_ENV);
+        Assumptions.assumeTrue(dir != null && !dir.isBlank(), TEST_MODEL_ENV + " not set");
+        ProviderSnapshot original = ProviderRegistry.get("local-test");
+
+        try {
+            LocalEmbeddingModel.configure(new LocalEmbeddingModel.Settings(dir + "/model.onnx", null,
+                    LocalEmbeddingModel.DEFAULT_MODEL_OUTPUT_NAME, 1, 8, 4));
+            LocalEmbeddingModel model = LocalEmbeddingModel.load();
+
+            List<float[]> vectors = model.embed(List.of("The cat sat on the mat.", "A cat is sitting on a mat.",
+                    "Quarterly revenue grew by ten percent."));
+            assertEquals(model.dimensions(), vectors.get(0).length);
+            assertTrue(cosine(vectors.get(0), vectors.get(1)) > cosine(vectors.get(0), vectors.get(2)));
+            assertSame(model, LocalEmbeddingModel.load());
+
+            // Match the stored width to the test model so no truncation applies
+            EmbeddingDimensions.configure(model.dimensions());
+            new LLMProvider("local-test", "stub", null, null, "stub-chat", "stub-embed",
+                    LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE, model.dimensions());
+            new LLMProvider("local-test", "local", null, null, "unused", "test-model",
+                    LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE, model.dimensions());
+
+            ProviderSnapshot snapshot = ProviderRegistry.get("local-test");
+            assertEquals("LOCAL", snapshot.embeddingProvider());
+            assertEquals("STUB/stub-chat@null", snapshot.chatModelId());
+        } finally {
+            EmbeddingDimensions.configure(EmbeddingDimensions.DEFAULT_DIMENSIONS);
+            ProviderRegistry.remove("local-test");
+            if (original != null && "local-test".equals(original.profile())) {
+                ProviderRegistry.register(original);
+            }
+        }
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
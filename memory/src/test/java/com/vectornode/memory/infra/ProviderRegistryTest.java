@@ -0,0 +1,112 @@
+package com.vectornode.memory.infra;
+
+import com.vectornode.memory.config.ProviderRegistry;
+import com.vectornode.memory.config.ProviderSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the atomically swapped provider snapshot registry.
+ */
+class ProviderRegistryTest {
+
+    private Map<String, ProviderSnapshot> saved;
+
+    @BeforeEach
+    void setUp() {
+        // Other tests may have configured real providers; keep them intact
+        saved = new HashMap<>();
+        for (String profile : ProviderRegistry.profiles()) {
+            saved.put(profile, ProviderRegistry.get(profile));
+        }
+        ProviderRegistry.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ProviderRegistry.clear();
+        saved.values().forEach(ProviderRegistry::register);
+    }
+
+    private static ProviderSnapshot snapshot(String profile, String chatModelId) {
+        return new ProviderSnapshot(profile, null, null, chatModelId, "TEST", "embed", 100);
+    }
+
+    @Test
+    @DisplayName("Should fall back to the default profile for unknown profiles")
+    void shouldFallBackToDefault() {
+        ProviderSnapshot defaults = snapshot(ProviderRegistry.DEFAULT_PROFILE, "strong");
+        ProviderRegistry.register(defaults);
+
+        assertSame(defaults, ProviderRegistry.get("extraction"));
+        assertSame(defaults, ProviderRegistry.getDefault());
+    }
+
+    @Test
+    @DisplayName("Should keep named profiles independent of the default")
+    void shouldResolveNamedProfiles() {
+        ProviderRegistry.register(snapshot(ProviderRegistry.DEFAULT_PROFILE, "strong"));
+        ProviderSnapshot cheap = snapshot("extraction", "cheap");
+
+        assertNull(ProviderRegistry.register(cheap));
+
+        assertSame(cheap, ProviderRegistry.get("extraction"));
+        assertEquals("strong", ProviderRegistry.get("answer").chatModelId());
+        assertEquals(Set.of("default", "extraction"), ProviderRegistry.profiles());
+    }
+
+    @Test
+    @DisplayName("Should return the replaced snapshot and leave earlier readers on it")
+    void shouldSwapAtomically() {
+        ProviderSnapshot first = snapshot(ProviderRegistry.DEFAULT_PROFILE, "v1");
+        ProviderRegistry.register(first);
+        ProviderSnapshot inFlight = ProviderRegistry.getDefault();
+
+        ProviderSnapshot replaced = ProviderRegistry.register(snapshot(ProviderRegistry.DEFAULT_PROFILE, "v2"));
+
+        assertSame(first, replaced);
+        assertEquals("v1", inFlight.chatModelId());
+        assertEquals("v2", ProviderRegistry.getDefault().chatModelId());
+    }
+
+    @Test
+    @DisplayName("Should never expose a missing default while profiles are swapped concurrently")
+    void shouldStayConsistentUnderConcurrentSwaps() throws Exception {
+        ProviderRegistry.register(snapshot(ProviderRegistry.DEFAULT_PROFILE, "v0"));
+        AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        for (int t = 0; t < 2; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    ProviderRegistry.register(snapshot(ProviderRegistry.DEFAULT_PROFILE, "v" + i));
+                    ProviderRegistry.register(snapshot("extraction", "e" + i));
+                }
+            });
+            pool.execute(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (ProviderRegistry.get("extraction") == null) {
+                        failed.set(true);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertFalse(failed.get());
+        assertEquals(Set.of("default", "extraction"), ProviderRegistry.profiles());
+    }
+}
@@ -0,0 +1,185 @@
+package com.vectornode.memory.infra;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.config.ProviderRegistry;
+import com.vectornode.memory.config.StubEmbeddingModel;
+import com.vectornode.memory.config.StubLatency;
+import com.vectornode.memory.ingest.service.ChunkingService;
+import com.vectornode.memory.ingest.service.ExtractionService;
+import com.vectornode.memory.ingest.service.PageIndexService;
+import com.vectornode.memory.ingest.splitter.StructuralDocumentParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the deterministic STUB provider.
+ */
+class StubProviderTest {
+
+    @BeforeEach
+    void setUp() {
+        // Registered under the extraction profile only, so the default profile is untouched
+        new LLMProvider(LLMProvider.PROFILE_EXTRACTION, "STUB", null, null, "stub-chat", "stub-embed",
+                LLMProvider.DEFAULT_EMBEDDING_BATCH_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ProviderRegistry.remove(LLMProvider.PROFILE_EXTRACTION);
+        StubLatency.configure(StubLatency.NONE, StubLatency.NONE);
+    }
+
+    @Test
+    @DisplayName("Should return the same unit-length vector for the same text")
+    void shouldEmbedDeterministically() {
+        StubEmbeddingModel model = new StubEmbeddingModel();
+
+        float[] first = model.embed("hello world");
+        float[] again = new StubEmbeddingModel().embed("hello world");
+        float[] other = model.embed("goodbye world");
+
+        assertEquals(768, first.length);
+        assertArrayEquals(first, again);
+        assertFalse(Arrays.equals(first, other));
+        double norm = 0;
+        for (float v : first) {
+            norm += v * v;
+        }
+        assertEquals(1.0, norm, 1e-4);
+        assertEquals(2, model.embed(List.of("a", "b")).size());
+    }
+
+    @Test
+    @DisplayName("Should answer the extraction prompt with parseable entities and relations")
+    void shouldServeCannedExtraction() {
+        ExtractionService.ExtractionResult result = new ExtractionService()
+                .extractFromText("Alice works at Acme in Paris.");
+
+        assertEquals(List.of("Alice", "Acme", "Paris"),
+                result.getEntities().stream().map(ExtractionService.ExtractedEntity::getName).toList());
+        assertEquals(1, result.getRelations().size());
+        assertEquals("RELATED_TO", result.getRelations().get(0).getRelationType());
+    }
+
+    @Test
+    @DisplayName("Should answer the compression and PageIndex prompts with parseable JSON")
+    void shouldServeCannedCompressionAndDocumentTree() {
+        ChunkingService.CompressedChunk chunk = new ChunkingService().compressPrompt("Bob moved to Berlin");
+        PageIndexService.DocumentNode tree = new PageIndexService(new ObjectMapper(), new ChunkingService(),
+                new StructuralDocumentParser())
+                .generateDocumentTree("Title line\nBody text");
+
+        assertEquals("Bob moved to Berlin", chunk.restatement());
+        assertEquals(List.of("moved", "berlin"), chunk.keywords());
+        assertEquals("Title line", tree.getTitle());
+        assertEquals("Title line\nBody text", tree.getContent());
+        assertTrue(tree.getChildren().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should generate windowed document trees that keep every character")
+    void shouldGenerateWindowedDocumentTree() {
+        PageIndexService service = new PageIndexService(new ObjectMapper(), new ChunkingService(),
+                new StructuralDocumentParser());
+        ReflectionTestUtils.setField(service, "windowChars", 120);
+        // The headings would otherwise bypass the model entirely
+        ReflectionTestUtils.setField(service, "structuralParserEnabled", false);
+        String section = "Body sentence for this section of the manual. ".repeat(2);
+        String document = "Manual\n" + section + "\n# Setup\n" + section + "\n# Usage\n" + section;
+
+        PageIndexService.DocumentNode tree = service.generateDocumentTree(document);
+
+        assertEquals("Manual", tree.getTitle());
+        assertEquals(List.of("Setup", "Usage"),
+                tree.getChildren().stream().map(PageIndexService.DocumentNode::getTitle).toList());
+        // Sections are sliced from the windows and stitched back together without gaps
+        assertEquals(document, preOrderContent(tree));
+
+        ReflectionTestUtils.setField(service, "outputMode", "content");
+        assertEquals(document, preOrderContent(service.generateDocumentTree(document)));
+    }
+
+    @Test
+    @DisplayName("Should build structured documents locally and summarise sections in batches")
+    void shouldSummarizeStructuredDocumentInBatches() {
+        PageIndexService service = new PageIndexService(new ObjectMapper(), new ChunkingService(),
+                new StructuralDocumentParser());
+        ReflectionTestUtils.setField(service, "structuralSummaries", "llm");
+        StringBuilder document = new StringBuilder("# Manual\nOverview of the manual.\n");
+        for (int i = 1; i <= PageIndexService.SUMMARY_BATCH_SIZE + 5; i++) {
+            document.append("## Step ").append(i).append("\nDo step ").append(i).append(".\n");
+        }
+
+        PageIndexService.DocumentNode tree = service.generateDocumentTree(document.toString());
+
+        assertEquals("Manual", tree.getTitle());
+        assertEquals(PageIndexService.SUMMARY_BATCH_SIZE + 5, tree.getChildren().size());
+        assertEquals("Summary of Manual", tree.getSummary());
+        assertEquals("Summary of Step 25", tree.getChildren().get(24).getSummary());
+        assertEquals(document.toString(), preOrderContent(tree));
+    }
+
+    @Test
+    @DisplayName("Should stream document tree nodes in pre-order from the streamed model output")
+    void shouldStreamDocumentTree() {
+        PageIndexService service = new PageIndexService(new ObjectMapper(), new ChunkingService(),
+                new StructuralDocumentParser());
+        ReflectionTestUtils.setField(service, "structuralParserEnabled", false);
+        String document = "Manual\nIntro.\n# Setup\nInstall it.\n# Usage\nRun it.\n";
+
+        List<PageIndexService.StreamedNode> nodes = service.streamDocumentTree(document).collectList().block();
+
+        assertEquals(List.of("Manual", "Setup", "Usage"),
+                nodes.stream().map(node -> node.node().getTitle()).toList());
+        assertEquals(document, String.join("", nodes.stream().map(node -> node.node().getContent()).toList()));
+        assertSame(nodes.get(0).node(), nodes.get(2).parent());
+    }
+
+    private static String preOrderContent(PageIndexService.DocumentNode node) {
+        StringBuilder text = new StringBuilder(node.getContent());
+        node.getChildren().forEach(child -> text.append(preOrderContent(child)));
+        return text.toString();
+    }
+
+    @Test
+    @DisplayName("Should sample fixed, tail and lognormal latencies")
+    void shouldSampleLatency() {
+        StubLatency fixed = new StubLatency(StubLatency.Distribution.FIXED, Duration.ofMillis(20), 0, 0,
+                Duration.ZERO);
+        StubLatency alwaysTail = new StubLatency(StubLatency.Distribution.FIXED, Duration.ofMillis(20), 0, 1,
+                Duration.ofMillis(500));
+        StubLatency lognormal = new StubLatency(StubLatency.distribution("lognormal"), Duration.ofMillis(20), 0.5,
+                0, Duration.ZERO);
+
+        assertEquals(Duration.ofMillis(20), fixed.sample());
+        assertEquals(Duration.ofMillis(500), alwaysTail.sample());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(lognormal.sample().toNanos() > 0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new StubLatency(StubLatency.Distribution.FIXED,
+                Duration.ZERO, 0, 2, Duration.ZERO));
+    }
+
+    @Test
+    @DisplayName("Should delay stub chat calls by the configured latency")
+    void shouldApplyChatLatency() {
+        StubLatency.configure(new StubLatency(StubLatency.Distribution.FIXED, Duration.ofMillis(50), 0, 0,
+                Duration.ZERO), StubLatency.NONE);
+        long start = System.nanoTime();
+
+        String answer = LLMProvider.callLLM(LLMProvider.PROFILE_EXTRACTION, "Anything else");
+
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertTrue(answer.startsWith("Stub answer"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.vectornode.memory.ingest.job;
+
+import com.vectornode.memory.ingest.service.IngestionWorker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for claiming and running ingest jobs.
+ */
+@ExtendWith(MockitoExtension.class)
+class IngestJobDispatcherTest {
+
+    @Mock
+    private IngestJobQueue queue;
+
+    @Mock
+    private IngestionWorker ingestionWorker;
+
+    private IngestJobDispatcher dispatcher;
+    private final UUID kbId = UUID.randomUUID();
+    private final UUID contextId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new IngestJobDispatcher(queue, ingestionWorker);
+        ReflectionTestUtils.setField(dispatcher, "slots", new Semaphore(4));
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 2);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+    }
+
+    private IngestJob kbJob(int attempts, String converser, String content) {
+        return new IngestJob(1, IngestJob.KB_CREATED, kbId, kbId, attempts, converser, content);
+    }
+
+    @Test
+    @DisplayName("should route jobs to the matching pipeline and complete them")
+    void shouldRouteAndCompleteJobs() {
+        IngestJob prompt = kbJob(1, "USER", "Hello");
+        IngestJob document = new IngestJob(2, IngestJob.KB_CREATED, kbId, kbId, 1, "DOCUMENT", "# Doc");
+        IngestJob context = new IngestJob(3, IngestJob.CONTEXT_CREATED, contextId, kbId, 1, null, "Chunk");
+        when(queue.claim(eq(2), any(Duration.class)))
+                .thenReturn(List.of(prompt, document))
+                .thenReturn(List.of(context));
+        when(ingestionWorker.processKnowledgeBase(kbId, "Hello")).thenReturn(CompletableFuture.completedFuture(null));
+        when(ingestionWorker.processDocumentTree(kbId, "# Doc")).thenReturn(CompletableFuture.completedFuture(null));
+        when(ingestionWorker.processContext(contextId, kbId, "Chunk"))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        dispatcher.dispatchAvailable();
+
+        // A short claim means the table is drained
+        verify(queue, times(2)).claim(eq(2), any(Duration.class));
+        verify(queue).complete(prompt);
+        verify(queue).complete(document);
+        verify(queue).complete(context);
+        verify(queue, never()).fail(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("should only claim as many jobs as there are free slots")
+    void shouldRespectInFlightLimit() {
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        when(queue.claim(anyInt(), any(Duration.class)))
+                .thenReturn(List.of(kbJob(1, "USER", "a"), kbJob(1, "USER", "b")));
+        when(ingestionWorker.processKnowledgeBase(eq(kbId), anyString())).thenReturn(pending);
+
+        dispatcher.dispatchAvailable();
+
+        // Two full batches fill all four slots; no third claim
+        verify(queue, times(2)).claim(eq(2), any(Duration.class));
+        verify(ingestionWorker, times(4)).processKnowledgeBase(eq(kbId), anyString());
+
+        pending.complete(null);
+        verify(queue, times(4)).complete(any());
+    }
+
+    @Test
+    @DisplayName("should claim notified targets in one query, bounded by free slots")
+    void shouldDispatchNotifiedTargets() {
+        ReflectionTestUtils.setField(dispatcher, "slots", new Semaphore(2));
+        Set<UUID> targets = new LinkedHashSet<>(List.of(kbId, contextId, UUID.randomUUID()));
+        IngestJob job = kbJob(1, "USER", "Hello");
+        when(queue.claimTargets(eq(targets), eq(2), any(Duration.class))).thenReturn(List.of(job));
+        when(ingestionWorker.processKnowledgeBase(kbId, "Hello")).thenReturn(new CompletableFuture<>());
+
+        dispatcher.dispatchTargets(targets);
+
+        verify(ingestionWorker).processKnowledgeBase(kbId, "Hello");
+        // The slot reserved for the unclaimed target is handed back
+        Semaphore slots = (Semaphore) ReflectionTestUtils.getField(dispatcher, "slots");
+        assertThat(slots.availablePermits()).isEqualTo(1);
+        verify(queue, never()).claim(anyInt(), any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("should schedule a retry with backoff when a job fails")
+    void shouldRetryFailedJob() {
+        IngestJob job = kbJob(1, "USER", "Hello");
+        when(queue.claim(anyInt(), any(Duration.class))).thenReturn(List.of(job));
+        when(ingestionWorker.processKnowledgeBase(kbId, "Hello"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("LLM unavailable")));
+
+        dispatcher.dispatchAvailable();
+
+        ArgumentCaptor<Duration> retryAfter = ArgumentCaptor.forClass(Duration.class);
+        verify(queue).fail(eq(job), contains("LLM unavailable"), retryAfter.capture(), eq(false));
+        assertThat(retryAfter.getValue()).isPositive();
+        verify(queue, never()).complete(any());
+    }
+
+    @Test
+    @DisplayName("should mark a job dead on its last attempt")
+    void shouldMarkJobDeadAfterMaxAttempts() {
+        IngestJob job = kbJob(3, "USER", "Hello");
+        when(queue.claim(anyInt(), any(Duration.class))).thenReturn(List.of(job));
+        when(ingestionWorker.processKnowledgeBase(kbId, "Hello"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("still failing")));
+
+        dispatcher.dispatchAvailable();
+
+        verify(queue).fail(eq(job), contains("still failing"), eq(Duration.ZERO), eq(true));
+    }
+
+    @Test
+    @DisplayName("should complete jobs whose row was deleted and not run jobs past their attempts")
+    void shouldSkipMissingAndExhaustedJobs() {
+        IngestJob missing = kbJob(1, "USER", null);
+        IngestJob exhausted = new IngestJob(2, IngestJob.KB_CREATED, kbId, kbId, 4, "USER", "Hello");
+        when(queue.claim(anyInt(), any(Duration.class)))
+                .thenReturn(List.of(missing, exhausted))
+                .thenReturn(List.of());
+
+        dispatcher.dispatchAvailable();
+
+        verify(queue).complete(missing);
+        verify(queue).fail(eq(exhausted), anyString(), any(Duration.class), eq(true));
+        verifyNoInteractions(ingestionWorker);
+    }
+
+    @Test
+    @DisplayName("should grow backoff exponentially up to the cap")
+    void shouldCapBackoff() {
+        assertThat(IngestJobDispatcher.backoff(1, 1000, 60_000).toMillis()).isBetween(800L, 1000L);
+        assertThat(IngestJobDispatcher.backoff(3, 1000, 60_000).toMillis()).isBetween(3200L, 4000L);
+        assertThat(IngestJobDispatcher.backoff(40, 1000, 60_000).toMillis()).isBetween(48_000L, 60_000L);
+    }
+}
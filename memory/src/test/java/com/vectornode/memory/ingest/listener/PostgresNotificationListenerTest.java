@@ -1,6 +1,6 @@
 package com.vectornode.memory.ingest.listener;
 
-import com.vectornode.memory.ingest.service.IngestionWorker;
+import com.vectornode.memory.ingest.job.IngestJobDispatcher;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +9,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.postgresql.PGNotification;
 
 import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.mockito.Mockito.*;
@@ -22,83 +24,87 @@ import static org.mockito.Mockito.*;
 class PostgresNotificationListenerTest {
 
     @Mock
-    private IngestionWorker ingestionWorker;
+    private IngestJobDispatcher jobDispatcher;
 
     private static final UUID TEST_KB_ID = UUID.fromString("550e8400-e29b-41d4-a716-446655440000");
     private static final UUID TEST_CONTEXT_ID = UUID.fromString("550e8400-e29b-41d4-a716-446655440001");
 
     @Test
-    @DisplayName("should dispatch KB_CREATED event to ingestion worker")
+    @DisplayName("should dispatch the job of a KB_CREATED event")
     void shouldDispatchKbCreatedEvent() throws Exception {
-        String payload = String.format(
-                "{\"type\":\"KB_CREATED\",\"id\":\"%s\",\"content\":\"Test content\"}",
-                TEST_KB_ID);
+        String payload = String.format("{\"type\":\"KB_CREATED\",\"id\":\"%s\"}", TEST_KB_ID);
 
-        PGNotification notification = mock(PGNotification.class);
-        when(notification.getParameter()).thenReturn(payload);
+        handle(notification(payload));
 
-        PostgresNotificationListener listener = createListenerWithMockDataSource();
-        Method handleMethod = PostgresNotificationListener.class.getDeclaredMethod("handleNotification",
-                PGNotification.class);
-        handleMethod.setAccessible(true);
+        verify(jobDispatcher).dispatchTargets(Set.of(TEST_KB_ID));
+    }
 
-        handleMethod.invoke(listener, notification);
+    @Test
+    @DisplayName("should dispatch the job of a CONTEXT_CREATED event")
+    void shouldDispatchContextCreatedEvent() throws Exception {
+        String payload = String.format("{\"type\":\"CONTEXT_CREATED\",\"id\":\"%s\",\"kb_id\":\"%s\"}",
+                TEST_CONTEXT_ID, TEST_KB_ID);
 
-        verify(ingestionWorker).processKnowledgeBase(TEST_KB_ID, "Test content");
+        handle(notification(payload));
+
+        verify(jobDispatcher).dispatchTargets(Set.of(TEST_CONTEXT_ID));
     }
 
     @Test
-    @DisplayName("should dispatch CONTEXT_CREATED event to ingestion worker")
-    void shouldDispatchContextCreatedEvent() throws Exception {
-        String payload = String.format(
+    @DisplayName("should dedupe a batch of notifications into one dispatch")
+    void shouldDedupeBatch() throws Exception {
+        String kb = String.format("{\"type\":\"KB_CREATED\",\"id\":\"%s\"}", TEST_KB_ID);
+        // Payloads from before the id-only triggers still carry content
+        String legacyContext = String.format(
                 "{\"type\":\"CONTEXT_CREATED\",\"id\":\"%s\",\"kb_id\":\"%s\",\"text_chunk\":\"Test chunk\"}",
                 TEST_CONTEXT_ID, TEST_KB_ID);
 
-        PGNotification notification = mock(PGNotification.class);
-        when(notification.getParameter()).thenReturn(payload);
+        handle(notification(kb), notification(legacyContext), notification("not valid json"), notification(kb));
 
-        PostgresNotificationListener listener = createListenerWithMockDataSource();
-        Method handleMethod = PostgresNotificationListener.class.getDeclaredMethod("handleNotification",
-                PGNotification.class);
-        handleMethod.setAccessible(true);
+        verify(jobDispatcher, times(1)).dispatchTargets(Set.of(TEST_KB_ID, TEST_CONTEXT_ID));
+    }
 
-        handleMethod.invoke(listener, notification);
+    @Test
+    @DisplayName("should wake the dispatcher when claiming notified jobs fails")
+    void shouldWakeDispatcherWhenDispatchFails() throws Exception {
+        doThrow(new RuntimeException("connection refused")).when(jobDispatcher).dispatchTargets(any());
+
+        handle(notification(String.format("{\"type\":\"KB_CREATED\",\"id\":\"%s\"}", TEST_KB_ID)));
 
-        verify(ingestionWorker).processContext(TEST_CONTEXT_ID, TEST_KB_ID, "Test chunk");
+        verify(jobDispatcher).wake();
     }
 
     @Test
     @DisplayName("should not throw on unknown event type")
     void shouldNotThrowOnUnknownEventType() throws Exception {
-        PGNotification notification = mock(PGNotification.class);
-        when(notification.getParameter()).thenReturn("{\"type\":\"UNKNOWN_EVENT\",\"id\":\"" + TEST_KB_ID + "\"}");
-
-        PostgresNotificationListener listener = createListenerWithMockDataSource();
-        Method handleMethod = PostgresNotificationListener.class.getDeclaredMethod("handleNotification",
-                PGNotification.class);
-        handleMethod.setAccessible(true);
-
         // Should not throw
-        handleMethod.invoke(listener, notification);
+        handle(notification("{\"type\":\"UNKNOWN_EVENT\",\"id\":\"" + TEST_KB_ID + "\"}"));
 
-        verifyNoInteractions(ingestionWorker);
+        verifyNoInteractions(jobDispatcher);
     }
 
     @Test
     @DisplayName("should not throw on malformed JSON payload")
     void shouldNotThrowOnMalformedJson() throws Exception {
+        // Should not throw, just log error
+        handle(notification("not valid json"));
+
+        verifyNoInteractions(jobDispatcher);
+    }
+
+    private static PGNotification notification(String payload) {
         PGNotification notification = mock(PGNotification.class);
-        when(notification.getParameter()).thenReturn("not valid json");
+        when(notification.getParameter()).thenReturn(payload);
+        return notification;
+    }
 
+    private void handle(PGNotification... notifications) throws Exception {
         PostgresNotificationListener listener = createListenerWithMockDataSource();
-        Method handleMethod = PostgresNotificationListener.class.getDeclaredMethod("handleNotification",
-                PGNotification.class);
+        Method handleMethod = PostgresNotificationListener.class.getDeclaredMethod("handleNotifications",
+                List.class);
         handleMethod.setAccessible(true);
 
-        // Should not throw, just log error
-        handleMethod.invoke(listener, notification);
-
-        verifyNoInteractions(ingestionWorker);
+        handleMethod.invoke(listener, List.of(notifications));
     }
 
     /**
@@ -109,6 +115,6 @@ class PostgresNotificationListenerTest {
         constructor.setAccessible(true);
 
         javax.sql.DataSource mockDataSource = mock(javax.sql.DataSource.class);
-        return (PostgresNotificationListener) constructor.newInstance(mockDataSource, ingestionWorker);
+        return (PostgresNotificationListener) constructor.newInstance(mockDataSource, jobDispatcher);
     }
 }
@@ -0,0 +1,128 @@
+package com.vectornode.memory.ingest.pipeline;
+
+import com.vectornode.memory.config.LLMLane;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for bounded ingestion pipeline stages.
+ */
+class PipelineStageTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private PipelineStage stage;
+
+    @AfterEach
+    void tearDown() {
+        if (stage != null) {
+            stage.close();
+        }
+    }
+
+    @Test
+    @DisplayName("should run tasks on stage workers in the ingestion lane and time them")
+    void shouldRunTasksOnWorkers() {
+        stage = new PipelineStage("embed", 2, 4, true, registry);
+
+        CompletableFuture<String> result = stage.submit(() -> LLMLane.current() + " on " + Thread.currentThread().getName());
+
+        assertThat(result.join()).startsWith("INGESTION on ingest-embed-");
+        assertThat(registry.get("ingest.stage.service").tag("stage", "embed").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ingest.stage.wait").tag("stage", "embed").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should block submitters while the queue is full")
+    void shouldBlockWhenQueueIsFull() throws Exception {
+        stage = new PipelineStage("persist", 1, 1, false, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        // One task occupies the worker, one fills the queue
+        stage.submit(() -> {
+            started.countDown();
+            await(release);
+            return null;
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        stage.submit(() -> null);
+        assertThat(registry.get("ingest.stage.queue.depth").tag("stage", "persist").gauge().value()).isEqualTo(1);
+
+        CompletableFuture<CompletableFuture<String>> third = CompletableFuture.supplyAsync(() -> stage.submit(() -> "done"));
+        Thread.sleep(200);
+        assertThat(third).isNotDone();
+
+        release.countDown();
+        assertThat(third.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        assertThat(registry.get("ingest.stage.backpressure").tag("stage", "persist").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should complete the future exceptionally when a task fails")
+    void shouldPropagateFailures() {
+        stage = new PipelineStage("extract", 1, 1, true, registry);
+
+        CompletableFuture<Object> result = stage.submit(() -> {
+            throw new IllegalStateException("extraction failed");
+        });
+
+        assertThatThrownBy(result::join).hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("extraction failed");
+    }
+
+    @Test
+    @DisplayName("should cancel queued tasks and reject new ones on close")
+    void shouldCancelQueuedTasksOnClose() throws Exception {
+        stage = new PipelineStage("persist", 1, 2, false, registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> running = stage.submit(() -> {
+            started.countDown();
+            await(release);
+            return "finished";
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = stage.submit(() -> "never run");
+
+        stage.close();
+
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS)).isInstanceOf(CancellationException.class);
+        assertThatThrownBy(() -> stage.submit(() -> "late").get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        // The task a worker had already taken still completes
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("finished");
+    }
+
+    @Test
+    @DisplayName("should run tasks on the submitting thread without workers")
+    void shouldRunInlineWithoutWorkers() {
+        stage = new PipelineStage("compress", 0, 0, true, registry);
+        Thread caller = Thread.currentThread();
+
+        CompletableFuture<Thread> result = stage.submit(Thread::currentThread);
+
+        assertThat(result).isCompletedWithValue(caller);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -186,6 +186,45 @@ class ChunkingServiceTest {
             assertThat(chunks).isNotEmpty();
             assertThat(chunks.get(0)).contains("text");
         }
+    @Nested
+    @DisplayName("splitIntoWindows")
+    class SplitIntoWindowsTests {
+
+        @Test
+        @DisplayName("should cut at heading lines and preserve the text exactly")
+        void shouldCutAtHeadings() {
+            String section = "Some body text that is long enough to matter. ".repeat(3);
+            String text = "# Intro\n" + section + "\n# Part One\n" + section + "\n# Part Two\n" + section;
+
+            List<String> windows = chunkingService.splitIntoWindows(text, 200);
+
+            assertThat(String.join("", windows)).isEqualTo(text);
+            assertThat(windows).hasSizeGreaterThan(1);
+            assertThat(windows.subList(1, windows.size())).allMatch(w -> w.startsWith("# Part"));
+            assertThat(windows).allMatch(w -> w.length() <= 200);
+        }
+
+        @Test
+        @DisplayName("should fall back to paragraph and hard cuts when there are no headings")
+        void shouldFallBackWithoutHeadings() {
+            String paragraph = "x".repeat(80) + "\n\n";
+            String text = paragraph.repeat(5) + "y".repeat(300);
+
+            List<String> windows = chunkingService.splitIntoWindows(text, 200);
+
+            assertThat(String.join("", windows)).isEqualTo(text);
+            assertThat(windows.get(0)).endsWith("\n\n");
+            assertThat(windows).allMatch(w -> w.length() <= 200);
+        }
+
+        @Test
+        @DisplayName("should return a single window for short text")
+        void shouldKeepShortText() {
+            assertThat(chunkingService.splitIntoWindows("short", 200)).containsExactly("short");
+            assertThat(chunkingService.splitIntoWindows("", 200)).isEmpty();
+        }
+    }
+
     @Nested
     @DisplayName("compressPrompt")
     class CompressPromptTests {
@@ -204,7 +243,9 @@ class ChunkingServiceTest {
                 """;
             
             try (org.mockito.MockedStatic<com.vectornode.memory.config.LLMProvider> mockedLLM = org.mockito.Mockito.mockStatic(com.vectornode.memory.config.LLMProvider.class)) {
-                mockedLLM.when(() -> com.vectornode.memory.config.LLMProvider.callLLM(org.mockito.ArgumentMatchers.anyString()))
+                mockedLLM.when(() -> com.vectornode.memory.config.LLMProvider.callLLM(
+                        org.mockito.ArgumentMatchers.eq(com.vectornode.memory.config.LLMProvider.PROFILE_EXTRACTION),
+                        org.mockito.ArgumentMatchers.anyString()))
                          .thenReturn(mockJson);
 
                 ChunkingService.CompressedChunk result = chunkingService.compressPrompt(originalPrompt);
@@ -223,7 +264,9 @@ class ChunkingServiceTest {
             String originalPrompt = "Simple prompt";
             
             try (org.mockito.MockedStatic<com.vectornode.memory.config.LLMProvider> mockedLLM = org.mockito.Mockito.mockStatic(com.vectornode.memory.config.LLMProvider.class)) {
-                mockedLLM.when(() -> com.vectornode.memory.config.LLMProvider.callLLM(org.mockito.ArgumentMatchers.anyString()))
+                mockedLLM.when(() -> com.vectornode.memory.config.LLMProvider.callLLM(
+                        org.mockito.ArgumentMatchers.eq(com.vectornode.memory.config.LLMProvider.PROFILE_EXTRACTION),
+                        org.mockito.ArgumentMatchers.anyString()))
                          .thenThrow(new RuntimeException("LLM API Error"));
 
                 ChunkingService.CompressedChunk result = chunkingService.compressPrompt(originalPrompt);
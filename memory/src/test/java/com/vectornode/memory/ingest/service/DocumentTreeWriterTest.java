@@ -0,0 +1,240 @@
+package com.vectornode.memory.ingest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for writing PageIndex trees with JDBC batch inserts.
+ */
+@ExtendWith(MockitoExtension.class)
+class DocumentTreeWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DocumentTreeWriter writer;
+    private final UUID kbId = UUID.randomUUID();
+    // Rows passed to batchUpdate, by the table they insert into
+    private final Map<String, List<Object[]>> inserted = new ConcurrentHashMap<>();
+    // The entities table: ids by normalized name
+    private final Map<String, UUID> entities = new ConcurrentHashMap<>();
+    // Rows the entity upsert inserted: name, vector, metadata
+    private final List<String[]> createdEntities = Collections.synchronizedList(new ArrayList<>());
+    // When set, lookups wait here, so concurrent trees all look up before either upserts
+    private volatile CyclicBarrier lookupBarrier;
+
+    @BeforeEach
+    void setUp() {
+        writer = new DocumentTreeWriter(jdbcTemplate, new ObjectMapper(), transactionManager);
+        lenient().when(jdbcTemplate.queryForObject(anyString(), eq(String.class), any(UUID.class)))
+                .thenReturn("user-1");
+        lenient().when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            String table = sql.strip().split("\\s+")[2];
+            List<Object[]> rows = invocation.getArgument(1);
+            inserted.computeIfAbsent(table, t -> Collections.synchronizedList(new ArrayList<>())).addAll(rows);
+            return new int[rows.size()];
+        });
+        lenient().doAnswer(invocation -> {
+            answerQuery(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    /**
+     * Answers the section entity lookup (one row per name, with its key and
+     * the existing entity, if any) and the entity upsert (one row per name,
+     * inserted or taken over from the existing row).
+     */
+    private void answerQuery(PreparedStatementCreator creator, RowCallbackHandler handler) throws Exception {
+        Connection con = mock(Connection.class);
+        when(con.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+        creator.createPreparedStatement(con);
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(con).prepareStatement(sql.capture());
+        ArgumentCaptor<Object[]> arrays = ArgumentCaptor.forClass(Object[].class);
+        verify(con, atLeastOnce()).createArrayOf(eq("text"), arrays.capture());
+        Object[] names = arrays.getAllValues().get(0);
+
+        if (sql.getValue().strip().startsWith("SELECT")) {
+            for (Object name : names) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("name")).thenReturn((String) name);
+                when(rs.getString("name_key")).thenReturn(key(name));
+                when(rs.getObject("id", UUID.class)).thenReturn(entities.get(key(name)));
+                handler.processRow(rs);
+            }
+            CyclicBarrier barrier = lookupBarrier;
+            if (barrier != null) {
+                barrier.await(5, TimeUnit.SECONDS);
+            }
+            return;
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            UUID id = UUID.randomUUID();
+            UUID existing = entities.putIfAbsent(key(names[i]), id);
+            if (existing == null) {
+                createdEntities.add(new String[] { (String) names[i], (String) arrays.getAllValues().get(1)[i],
+                        (String) arrays.getAllValues().get(2)[i] });
+            }
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString("name_key")).thenReturn(key(names[i]));
+            when(rs.getObject("id", UUID.class)).thenReturn(existing != null ? existing : id);
+            when(rs.getBoolean("inserted")).thenReturn(existing == null);
+            handler.processRow(rs);
+        }
+    }
+
+    private static String key(Object name) {
+        return ((String) name).strip().toLowerCase();
+    }
+
+    private static PageIndexService.DocumentNode node(String title, String content) {
+        PageIndexService.DocumentNode node = new PageIndexService.DocumentNode();
+        node.setTitle(title);
+        node.setContent(content);
+        return node;
+    }
+
+    private static List<float[]> embeddings(int count) {
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            embeddings.add(new float[] { i, 0.5f });
+        }
+        return embeddings;
+    }
+
+    @Test
+    @DisplayName("should write a whole batch with one statement per table")
+    void shouldWriteBatchInFewStatements() {
+        PageIndexService.DocumentNode root = node("Manual", "Intro");
+        PageIndexService.DocumentNode setup = node("Setup", "Setup steps");
+        setup.getChildren().add(node("Install", "Install steps"));
+        root.getChildren().add(setup);
+        List<PageIndexService.StreamedNode> nodes = PageIndexService.preOrder(root);
+
+        DocumentTreeWriter.Tree tree = writer.open(kbId);
+        tree.write(nodes, embeddings(3));
+
+        // Contexts, junction rows and relations; the entity lookup and upsert
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList());
+        verify(jdbcTemplate, times(2)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        assertThat(tree.size()).isEqualTo(3);
+
+        List<Object[]> contexts = inserted.get("contexts");
+        assertThat(contexts).extracting(row -> row[2]).containsExactly("Intro", "Setup steps", "Install steps");
+        assertThat(contexts).extracting(row -> row[4]).containsExactly(0, 1, 2);
+        assertThat((String) contexts.get(1)[3]).isEqualTo("[1.0,0.5]");
+
+        assertThat(createdEntities).extracting(row -> row[0]).containsExactly("Manual", "Setup", "Install");
+        assertThat(inserted.get("entity_context_junction")).hasSize(3);
+
+        // Relations link the entities returned for parent and child
+        List<Object[]> relations = inserted.get("relations");
+        assertThat(relations).hasSize(2);
+        assertThat(relations.get(0)[1]).isEqualTo(entities.get("manual"));
+        assertThat(relations.get(0)[2]).isEqualTo(entities.get("setup"));
+        assertThat(relations.get(1)[1]).isEqualTo(entities.get("setup"));
+        assertThat(relations.get(1)[2]).isEqualTo(entities.get("install"));
+    }
+
+    @Test
+    @DisplayName("should create one section entity for titles that normalize to the same key")
+    void shouldShareEntityForTitlesWithSameKey() {
+        PageIndexService.DocumentNode root = node("Manual", "Intro");
+        root.getChildren().add(node("FAQ", "Questions"));
+        root.getChildren().add(node("faq", "More questions"));
+        List<PageIndexService.StreamedNode> nodes = PageIndexService.preOrder(root);
+
+        writer.open(kbId).write(nodes, embeddings(3));
+
+        assertThat(createdEntities).extracting(row -> row[0]).containsExactly("Manual", "FAQ");
+        // Both children link to the one entity; the relation insert ignores the repeated edge
+        List<Object[]> relations = inserted.get("relations");
+        assertThat(relations).extracting(row -> row[2]).containsExactly(entities.get("faq"), entities.get("faq"));
+    }
+
+    @Test
+    @DisplayName("should link later batches to earlier parents and reuse existing section entities")
+    void shouldLinkAcrossBatchesAndReuseEntities() throws Exception {
+        UUID existingUsage = UUID.randomUUID();
+        entities.put("usage", existingUsage);
+
+        PageIndexService.DocumentNode root = node("Manual", "Intro");
+        root.getChildren().add(node("Usage ", "Run it"));
+        List<PageIndexService.StreamedNode> nodes = PageIndexService.preOrder(root);
+
+        DocumentTreeWriter.Tree tree = writer.open(kbId);
+        tree.write(nodes.subList(0, 1), embeddings(1));
+        assertThat(createdEntities).isEmpty();
+
+        tree.write(nodes.subList(1, 2), embeddings(1));
+
+        // The root's entity is created once it has a child; "Usage" already exists
+        assertThat(createdEntities).extracting(row -> row[0]).containsExactly("Manual");
+        assertThat(createdEntities.get(0)[1]).isEqualTo("[0.0,0.5]");
+        assertThat(inserted.get("relations").get(0)[2]).isEqualTo(existingUsage);
+        assertThat(inserted.get("entity_context_junction")).hasSize(1);
+
+        // Contexts of an earlier attempt are cleared, then every batch commits on its own
+        verify(jdbcTemplate).update("DELETE FROM contexts WHERE kb_id = ?", kbId);
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    @DisplayName("should take over a section entity another tree created after the lookup")
+    void shouldShareSectionWithConcurrentTree() throws Exception {
+        UUID otherKbId = UUID.randomUUID();
+        lookupBarrier = new CyclicBarrier(2);
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (UUID id : List.of(kbId, otherKbId)) {
+            PageIndexService.DocumentNode root = node("Guide " + id, "Intro");
+            root.getChildren().add(node("Introduction", "Read me"));
+            List<PageIndexService.StreamedNode> nodes = PageIndexService.preOrder(root);
+            writes.add(CompletableFuture.runAsync(() -> writer.open(id).write(nodes, embeddings(2))));
+        }
+        CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        // Both trees missed "Introduction" in the lookup; one created it, the other got its id back
+        assertThat(createdEntities).extracting(row -> row[0]).filteredOn("Introduction"::equals).hasSize(1);
+        assertThat(inserted.get("relations")).extracting(row -> row[2])
+                .containsExactly(entities.get("introduction"), entities.get("introduction"));
+        // Only the creating tree links the entity to its context: two roots and one section
+        assertThat(inserted.get("entity_context_junction")).hasSize(3);
+    }
+}
@@ -13,6 +13,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mockStatic;
 
 import com.vectornode.memory.config.LLMProvider;
@@ -51,7 +52,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("John Doe works at Google.");
 
@@ -87,7 +88,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Paris is beautiful.");
 
@@ -106,7 +107,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -119,7 +120,7 @@ class ExtractionServiceTest {
     @DisplayName("should return empty result on LLM failure")
     void shouldReturnEmptyResultOnLLMFailure() {
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString()))
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString()))
             .thenThrow(new RuntimeException("API error"));
 
         ExtractionResult result = extractionService.extractFromText("Some text");
@@ -133,7 +134,7 @@ class ExtractionServiceTest {
     @DisplayName("should return empty result for null LLM response")
     void shouldReturnEmptyResultForNullResponse() {
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(null);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(null);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -156,7 +157,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -180,7 +181,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -202,7 +203,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -224,7 +225,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -244,7 +245,7 @@ class ExtractionServiceTest {
       String mockResponse = "{ this is not valid json }";
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -266,7 +267,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -287,7 +288,7 @@ class ExtractionServiceTest {
           """;
 
       try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-        mockedLLM.when(() -> LLMProvider.callLLM(anyString())).thenReturn(mockResponse);
+        mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString())).thenReturn(mockResponse);
 
         ExtractionResult result = extractionService.extractFromText("Some text");
 
@@ -1,8 +1,8 @@
 package com.vectornode.memory.ingest.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vectornode.memory.config.LLMProvider;
-import jakarta.persistence.EntityManager;
+import com.vectornode.memory.ingest.pipeline.IngestPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -12,9 +12,12 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -34,21 +37,45 @@ class IngestionWorkerTest {
     @Mock
     private PageIndexService pageIndexService;
 
+    @Mock
+    private DocumentTreeWriter documentTreeWriter;
+
+    @Mock
+    private DocumentTreeWriter.Tree documentTree;
+
     @Mock
     private com.vectornode.memory.query.repository.ContextRepository contextRepository;
 
     @Mock
-    private EntityManager entityManager;
+    private IngestionWriter ingestionWriter;
 
     private IngestionWorker ingestionWorker;
-    private ObjectMapper objectMapper;
 
     @BeforeEach
     void setUp() {
-        objectMapper = new ObjectMapper();
-        ingestionWorker = new IngestionWorker(chunkingService, extractionService, pageIndexService, contextRepository,
-                objectMapper);
-        ReflectionTestUtils.setField(ingestionWorker, "entityManager", entityManager);
+        // Stages without workers run on the test thread, where the static LLMProvider mocks apply
+        IngestPipeline pipeline = new IngestPipeline(new SimpleMeterRegistry());
+        for (String stage : List.of("compress", "embed", "synthesize", "extract", "persist")) {
+            ReflectionTestUtils.setField(pipeline, stage + "Workers", 0);
+        }
+        pipeline.start();
+        ingestionWorker = new IngestionWorker(chunkingService, extractionService, pageIndexService,
+                documentTreeWriter, ingestionWriter, contextRepository, pipeline);
+    }
+
+    private static ExtractionService.ExtractionResult extractionResult(String... entityNames) {
+        ExtractionService.ExtractionResult result = new ExtractionService.ExtractionResult();
+        result.setEntities(new java.util.ArrayList<>());
+        result.setRelations(new java.util.ArrayList<>());
+        result.setMetadata(new ExtractionService.ExtractedMetadata());
+        for (String name : entityNames) {
+            ExtractionService.ExtractedEntity entity = new ExtractionService.ExtractedEntity();
+            entity.setName(name);
+            entity.setType("CONCEPT");
+            entity.setDescription("About " + name);
+            result.getEntities().add(entity);
+        }
+        return result;
     }
 
     @Nested
@@ -78,16 +105,6 @@ class IngestionWorkerTest {
             ChunkingService.CompressedChunk compressed = new ChunkingService.CompressedChunk(
                     "Restated prompt.", List.of("kw1"), "Topic", null);
 
-            com.vectornode.memory.entity.KnowledgeBase mockKb = mock(com.vectornode.memory.entity.KnowledgeBase.class);
-            when(mockKb.getId()).thenReturn(kbId);
-            when(entityManager.getReference(com.vectornode.memory.entity.KnowledgeBase.class, kbId)).thenReturn(mockKb);
-
-            ExtractionService.ExtractionResult result = new ExtractionService.ExtractionResult();
-            result.setEntities(new java.util.ArrayList<>());
-            result.setRelations(new java.util.ArrayList<>());
-            result.setMetadata(new ExtractionService.ExtractedMetadata());
-            lenient().when(extractionService.extractFromText(anyString())).thenReturn(result);
-
             when(chunkingService.compressPrompt(content)).thenReturn(compressed);
             when(contextRepository.findHighlySimilar(anyString(), anyDouble()))
                     .thenReturn(java.util.Collections.emptyList());
@@ -95,15 +112,59 @@ class IngestionWorkerTest {
             try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
                 mockedLLM.when(() -> LLMProvider.getEmbedding(anyString())).thenReturn(mockEmbedding);
 
-                ingestionWorker.processKnowledgeBase(kbId, content);
+                ingestionWorker.processKnowledgeBase(kbId, content).join();
 
                 verify(chunkingService).compressPrompt(content);
                 mockedLLM.verify(() -> LLMProvider.getEmbedding("Restated prompt."));
-                verify(contextRepository).findHighlySimilar(anyString(), anyDouble());
-                // Verify Context entity was persisted (insert path)
-                verify(entityManager).persist(any(com.vectornode.memory.entity.Context.class));
+                verify(contextRepository).findHighlySimilar("[0.1,0.2,0.3]", 0.85);
+                // Insert path: no existing context to merge into
+                verify(ingestionWriter).writeMemory(eq(kbId),
+                        argThat(memory -> memory.existingContextId() == null
+                                && memory.text().equals("Restated prompt.")
+                                && memory.embedding() == mockEmbedding));
+                // Extraction runs later, as the context's own job
+                verifyNoInteractions(extractionService);
             }
         }
+
+        @Test
+        @DisplayName("should merge into a highly similar context")
+        void shouldMergeIntoSimilarContext() {
+            UUID kbId = UUID.randomUUID();
+            UUID existingId = UUID.randomUUID();
+            float[] mergedEmbedding = new float[] { 0.4f };
+            ChunkingService.CompressedChunk compressed = new ChunkingService.CompressedChunk(
+                    "Alice moved to Paris.", List.of("Alice"), "Moves", null);
+
+            when(chunkingService.compressPrompt("prompt")).thenReturn(compressed);
+            when(contextRepository.findHighlySimilar(anyString(), anyDouble()))
+                    .thenReturn(List.<Object[]>of(new Object[] { existingId, "Alice lives in Berlin." }));
+
+            try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
+                mockedLLM.when(() -> LLMProvider.getEmbedding("Alice moved to Paris.")).thenReturn(new float[] { 0.1f });
+                mockedLLM.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_EXTRACTION), anyString()))
+                        .thenReturn(" Alice lives in Paris. ");
+                mockedLLM.when(() -> LLMProvider.getEmbedding("Alice lives in Paris.")).thenReturn(mergedEmbedding);
+
+                ingestionWorker.processKnowledgeBase(kbId, "prompt").join();
+
+                verify(ingestionWriter).writeMemory(eq(kbId),
+                        argThat(memory -> existingId.equals(memory.existingContextId())
+                                && memory.text().equals("Alice lives in Paris.")
+                                && memory.embedding() == mergedEmbedding));
+            }
+        }
+
+        @Test
+        @DisplayName("should fail the returned future and write nothing when a stage fails")
+        void shouldFailWhenStageFails() {
+            when(chunkingService.compressPrompt("prompt")).thenThrow(new RuntimeException("LLM unavailable"));
+
+            CompletableFuture<Void> result = ingestionWorker.processKnowledgeBase(UUID.randomUUID(), "prompt");
+
+            org.assertj.core.api.Assertions.assertThat(result).isCompletedExceptionally();
+            verifyNoInteractions(ingestionWriter, contextRepository, extractionService);
+        }
     }
 
     @Nested
@@ -131,65 +192,100 @@ class IngestionWorkerTest {
             UUID kbId = UUID.randomUUID();
             String textChunk = "John works at Google.";
             float[] mockEmbedding = new float[] { 0.1f, 0.2f };
-
-            // Mock Context reference
-            com.vectornode.memory.entity.Context mockContext = mock(com.vectornode.memory.entity.Context.class);
-            when(entityManager.getReference(com.vectornode.memory.entity.Context.class, contextId))
-                    .thenReturn(mockContext);
-
-            // Mock TypedQuery for entity lookup
-            jakarta.persistence.TypedQuery<com.vectornode.memory.entity.RagEntity> mockQuery = mock(
-                    jakarta.persistence.TypedQuery.class);
-            when(entityManager.createQuery(anyString(), eq(com.vectornode.memory.entity.RagEntity.class)))
-                    .thenReturn(mockQuery);
-            when(mockQuery.setParameter(anyString(), any())).thenReturn(mockQuery);
-            when(mockQuery.setMaxResults(anyInt())).thenReturn(mockQuery);
-            when(mockQuery.getResultList()).thenReturn(java.util.Collections.emptyList()); // No existing entities
-
-            // Mock TypedQuery for relation lookup
-            jakarta.persistence.TypedQuery<com.vectornode.memory.entity.Relation> mockRelationQuery = mock(
-                    jakarta.persistence.TypedQuery.class);
-            when(entityManager.createQuery(anyString(), eq(com.vectornode.memory.entity.Relation.class)))
-                    .thenReturn(mockRelationQuery);
-            when(mockRelationQuery.setParameter(anyString(), any())).thenReturn(mockRelationQuery);
-            when(mockRelationQuery.getResultList()).thenReturn(java.util.Collections.emptyList());
-
-            ExtractionService.ExtractionResult result = new ExtractionService.ExtractionResult();
-            result.setEntities(new java.util.ArrayList<>());
-            result.setRelations(new java.util.ArrayList<>());
-            result.setMetadata(new ExtractionService.ExtractedMetadata());
-
-            ExtractionService.ExtractedEntity entity1 = new ExtractionService.ExtractedEntity();
-            entity1.setName("John");
-            entity1.setType("PERSON");
-            entity1.setDescription("A person");
-            result.getEntities().add(entity1);
-
-            ExtractionService.ExtractedEntity entity2 = new ExtractionService.ExtractedEntity();
-            entity2.setName("Google");
-            entity2.setType("ORGANIZATION");
-            entity2.setDescription("A company");
-            result.getEntities().add(entity2);
-
-            ExtractionService.ExtractedRelation relation = new ExtractionService.ExtractedRelation();
-            relation.setSourceName("John");
-            relation.setTargetName("Google");
-            relation.setRelationType("WORKS_FOR");
-            result.getRelations().add(relation);
-
+            ExtractionService.ExtractionResult result = extractionResult("John", "Google");
             when(extractionService.extractFromText(textChunk)).thenReturn(result);
 
             try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
-                mockedLLM.when(() -> LLMProvider.getEmbedding(anyString())).thenReturn(mockEmbedding);
+                mockedLLM.when(() -> LLMProvider.embedAsync(anyList()))
+                        .thenReturn(CompletableFuture.completedFuture(List.of(mockEmbedding, mockEmbedding)));
 
-                ingestionWorker.processContext(contextId, kbId, textChunk);
+                ingestionWorker.processContext(contextId, kbId, textChunk).join();
 
                 verify(extractionService).extractFromText(textChunk);
-                // LLMProvider.getEmbedding called once per entity
-                mockedLLM.verify(() -> LLMProvider.getEmbedding(anyString()), times(2));
-                // Verify entities and relations were persisted
-                verify(entityManager, times(2)).persist(any(com.vectornode.memory.entity.RagEntity.class));
-                verify(entityManager, times(1)).persist(any(com.vectornode.memory.entity.Relation.class));
+                // All entities are embedded in a single batched call
+                mockedLLM.verify(() -> LLMProvider.embedAsync(
+                        List.of("John About John", "Google About Google")), times(1));
+                mockedLLM.verify(() -> LLMProvider.getEmbedding(anyString()), never());
+                verify(ingestionWriter).writeExtraction(contextId,
+                        new IngestionWriter.Extraction(result, List.of(mockEmbedding, mockEmbedding)));
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("processDocumentTree")
+    class ProcessDocumentTreeTests {
+
+        @Test
+        @DisplayName("should embed all tree nodes in a single batched call")
+        void shouldBatchEmbedAllNodes() {
+            UUID kbId = UUID.randomUUID();
+            String documentText = "Manual text";
+
+            PageIndexService.DocumentNode root = new PageIndexService.DocumentNode();
+            root.setTitle("Manual");
+            root.setContent("Intro");
+            PageIndexService.DocumentNode section = new PageIndexService.DocumentNode();
+            section.setTitle("Setup");
+            section.setContent("Setup steps");
+            PageIndexService.DocumentNode subsection = new PageIndexService.DocumentNode();
+            subsection.setTitle("Install");
+            subsection.setContent("Install steps");
+            section.getChildren().add(subsection);
+            root.getChildren().add(section);
+
+            when(documentTreeWriter.open(kbId)).thenReturn(documentTree);
+            when(pageIndexService.streamDocumentTree(documentText))
+                    .thenReturn(Flux.fromIterable(PageIndexService.preOrder(root)));
+
+            float[] mockEmbedding = new float[] { 0.1f, 0.2f };
+            try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
+                mockedLLM.when(() -> LLMProvider.getEmbeddings(anyList()))
+                        .thenReturn(List.of(mockEmbedding, mockEmbedding, mockEmbedding));
+
+                ingestionWorker.processDocumentTree(kbId, documentText);
+
+                mockedLLM.verify(() -> LLMProvider.getEmbeddings(
+                        List.of("Intro", "Setup steps", "Install steps")), times(1));
+                mockedLLM.verify(() -> LLMProvider.getEmbedding(anyString()), never());
+                verify(documentTree, times(1)).write(PageIndexService.preOrder(root),
+                        List.of(mockEmbedding, mockEmbedding, mockEmbedding));
+                verifyNoInteractions(ingestionWriter);
+            }
+        }
+
+        @Test
+        @DisplayName("should embed and save nodes that arrive before the rest of the tree is generated")
+        void shouldEmbedNodesAsTheyStream() {
+            UUID kbId = UUID.randomUUID();
+            String documentText = "Manual text";
+
+            PageIndexService.DocumentNode root = new PageIndexService.DocumentNode();
+            root.setTitle("Manual");
+            root.setContent("Intro");
+            PageIndexService.DocumentNode section = new PageIndexService.DocumentNode();
+            section.setTitle("Setup");
+            section.setContent("Setup steps");
+            root.getChildren().add(section);
+            List<PageIndexService.StreamedNode> nodes = PageIndexService.preOrder(root);
+
+            when(documentTreeWriter.open(kbId)).thenReturn(documentTree);
+            // The section only arrives well after the batch wait, as if the model were still writing it
+            when(pageIndexService.streamDocumentTree(documentText)).thenReturn(Flux.concat(
+                    Flux.just(nodes.get(0)),
+                    Flux.just(nodes.get(1)).delaySubscription(Duration.ofMillis(600))));
+
+            float[] mockEmbedding = new float[] { 0.1f, 0.2f };
+            try (MockedStatic<LLMProvider> mockedLLM = mockStatic(LLMProvider.class)) {
+                mockedLLM.when(() -> LLMProvider.getEmbeddings(anyList()))
+                        .thenReturn(List.of(mockEmbedding));
+
+                ingestionWorker.processDocumentTree(kbId, documentText);
+
+                mockedLLM.verify(() -> LLMProvider.getEmbeddings(List.of("Intro")), times(1));
+                mockedLLM.verify(() -> LLMProvider.getEmbeddings(List.of("Setup steps")), times(1));
+                verify(documentTree, times(1)).write(List.of(nodes.get(0)), List.of(mockEmbedding));
+                verify(documentTree, times(1)).write(List.of(nodes.get(1)), List.of(mockEmbedding));
             }
         }
     }
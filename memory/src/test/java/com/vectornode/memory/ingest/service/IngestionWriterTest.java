@@ -0,0 +1,175 @@
+package com.vectornode.memory.ingest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vectornode.memory.entity.Context;
+import com.vectornode.memory.entity.KnowledgeBase;
+import com.vectornode.memory.ingest.job.IngestJob;
+import com.vectornode.memory.ingest.job.IngestJobQueue;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the persist stage of the ingestion pipeline.
+ */
+@ExtendWith(MockitoExtension.class)
+class IngestionWriterTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private IngestJobQueue ingestJobQueue;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private IngestionWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new IngestionWriter(new ObjectMapper(), ingestJobQueue, jdbcTemplate);
+        ReflectionTestUtils.setField(writer, "entityManager", entityManager);
+    }
+
+    private static ExtractionService.ExtractedRelation relation(String source, String target, String type) {
+        ExtractionService.ExtractedRelation relation = new ExtractionService.ExtractedRelation();
+        relation.setSourceName(source);
+        relation.setTargetName(target);
+        relation.setRelationType(type);
+        return relation;
+    }
+
+    private static ExtractionService.ExtractedEntity entity(String name, String type, String description) {
+        ExtractionService.ExtractedEntity entity = new ExtractionService.ExtractedEntity();
+        entity.setName(name);
+        entity.setType(type);
+        entity.setDescription(description);
+        return entity;
+    }
+
+    @Test
+    @DisplayName("should persist extracted entities, junction rows and relations in three statements")
+    void shouldPersistEntitiesAndRelations() throws Exception {
+        UUID contextId = UUID.randomUUID();
+        float[] embedding = new float[] { 0.1f, 0.2f };
+        UUID appleCompany = UUID.randomUUID();
+        UUID appleProduct = UUID.randomUUID();
+        UUID timId = UUID.randomUUID();
+
+        // The entity upsert returns one row per input (ord, id, entity_name, inserted), in no particular order
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getInt("ord")).thenReturn(3, 1, 2);
+            when(rs.getObject("id", UUID.class)).thenReturn(timId, appleCompany, appleProduct);
+            when(rs.getBoolean("inserted")).thenReturn(true, false, true);
+            when(rs.getString("entity_name")).thenReturn("Apple");
+            handler.processRow(rs);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).doNothing().when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        ExtractionService.ExtractionResult result = new ExtractionService.ExtractionResult();
+        result.setEntities(new ArrayList<>(List.of(
+                entity("Apple", "ORGANIZATION", "A company"),
+                entity("Apple", "PRODUCT", "A product"),
+                entity("Tim", "PERSON", "A person"))));
+        result.setRelations(new ArrayList<>(List.of(
+                relation("Tim", "Apple", "WORKS_FOR"),
+                relation("tim", "APPLE", "WORKS_FOR"),
+                relation("Tim", "Nobody", "KNOWS"))));
+
+        writer.writeExtraction(contextId,
+                new IngestionWriter.Extraction(result, List.of(embedding, embedding, embedding)));
+
+        ArgumentCaptor<PreparedStatementCreator> statements = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+        verify(jdbcTemplate, times(2)).query(statements.capture(), any(RowCallbackHandler.class));
+        verify(jdbcTemplate, times(1)).update(any(PreparedStatementCreator.class));
+        verifyNoInteractions(entityManager);
+
+        // The relation upsert gets the entity ids in extraction order, which breaks ties between types,
+        // and the mentions as extracted; resolving and folding them happens in SQL
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        statements.getAllValues().get(1).createPreparedStatement(con);
+        ArgumentCaptor<Object[]> arrays = ArgumentCaptor.forClass(Object[].class);
+        verify(con, times(5)).createArrayOf(anyString(), arrays.capture());
+        assertThat(arrays.getAllValues().get(0)).containsExactly(appleCompany, appleProduct, timId);
+        assertThat(arrays.getAllValues().get(1)).containsExactly("Apple", "Apple", "Tim");
+        assertThat(arrays.getAllValues().get(2)).containsExactly("Tim", "tim", "Tim");
+        assertThat(arrays.getAllValues().get(3)).containsExactly("Apple", "APPLE", "Nobody");
+        assertThat(arrays.getAllValues().get(4)).containsExactly("WORKS_FOR", "WORKS_FOR", "KNOWS");
+        verify(ps).setString(6, contextId.toString());
+    }
+
+    @Test
+    @DisplayName("should not touch the database when nothing was extracted")
+    void shouldSkipEmptyExtraction() {
+        ExtractionService.ExtractionResult result = new ExtractionService.ExtractionResult();
+
+        writer.writeExtraction(UUID.randomUUID(), new IngestionWriter.Extraction(result, List.of()));
+
+        verifyNoInteractions(jdbcTemplate, entityManager);
+    }
+
+    @Test
+    @DisplayName("should insert a new context for a memory without a match")
+    void shouldInsertNewContext() {
+        UUID kbId = UUID.randomUUID();
+        when(entityManager.getReference(KnowledgeBase.class, kbId)).thenReturn(mock(KnowledgeBase.class));
+        ChunkingService.CompressedChunk compressed = new ChunkingService.CompressedChunk(
+                "Restated prompt.", List.of("kw1"), "Topic", null);
+
+        writer.writeMemory(kbId, new IngestionWriter.Memory(null, "Restated prompt.", new float[] { 0.1f }, compressed));
+
+        verify(entityManager).persist(argThat((Object o) -> o instanceof Context context
+                && context.getTextChunk().equals("Restated prompt.")));
+        // The insert trigger enqueues the extraction job
+        verifyNoInteractions(ingestJobQueue);
+    }
+
+    @Test
+    @DisplayName("should update the matched context and enqueue its re-extraction")
+    void shouldMergeAndEnqueueExtraction() {
+        UUID kbId = UUID.randomUUID();
+        UUID existingId = UUID.randomUUID();
+        KnowledgeBase kb = mock(KnowledgeBase.class);
+        when(kb.getId()).thenReturn(kbId);
+        Context existing = Context.builder().knowledgeBase(kb).textChunk("Old fact.").build();
+        existing.setId(existingId);
+        when(entityManager.find(Context.class, existingId)).thenReturn(existing);
+        ChunkingService.CompressedChunk compressed = new ChunkingService.CompressedChunk(
+                "New fact.", List.of("kw1"), "Topic", null);
+
+        UUID contextId = writer.writeMemory(UUID.randomUUID(),
+                new IngestionWriter.Memory(existingId, "Merged fact.", new float[] { 0.2f }, compressed));
+
+        assertThat(contextId).isEqualTo(existingId);
+        assertThat(existing.getTextChunk()).isEqualTo("Merged fact.");
+        assertThat(existing.getMetadata().get("synthesisCount").asInt()).isEqualTo(1);
+        verify(ingestJobQueue).enqueue(IngestJob.CONTEXT_CREATED, existingId, kbId);
+    }
+}
@@ -0,0 +1,107 @@
+package com.vectornode.memory.ingest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for slicing PageIndex sections out of the document by anchor,
+ * in one piece and while the model output is streamed.
+ */
+class PageIndexServiceTest {
+
+    private static PageIndexService.DocumentNode node(String title, String anchor,
+            PageIndexService.DocumentNode... children) {
+        PageIndexService.DocumentNode node = new PageIndexService.DocumentNode();
+        node.setTitle(title);
+        node.setAnchor(anchor);
+        node.setChildren(new ArrayList<>(List.of(children)));
+        return node;
+    }
+
+    @Test
+    @DisplayName("should slice nested sections between consecutive anchors")
+    void shouldSliceBetweenAnchors() {
+        String text = "Intro text.\n# Install\nRun it.\n## Linux\nUse apt.\n# Usage\nCall it.\n";
+        PageIndexService.DocumentNode root = node("Guide", null,
+                node("Install", "# Install", node("Linux", "## Linux")),
+                node("Usage", "# Usage"));
+
+        PageIndexService.sliceByAnchors(root, text);
+
+        assertThat(root.getContent()).isEqualTo("Intro text.\n");
+        assertThat(root.getChildren().get(0).getContent()).isEqualTo("# Install\nRun it.\n");
+        assertThat(root.getChildren().get(0).getChildren().get(0).getContent()).isEqualTo("## Linux\nUse apt.\n");
+        assertThat(root.getChildren().get(1).getContent()).isEqualTo("# Usage\nCall it.\n");
+    }
+
+    @Test
+    @DisplayName("should match paraphrased anchors loosely and keep text of unmatched sections")
+    void shouldTolerateImperfectAnchors() {
+        String text = "Preface\n## 2. Getting   Started\nSteps.\n## 3. Reference\nTables.\n";
+        PageIndexService.DocumentNode root = node("Doc", null,
+                node("Getting started", "getting started"),
+                node("Missing", "Appendix Z"),
+                node("Reference", "## 3. Reference"));
+
+        PageIndexService.sliceByAnchors(root, text);
+
+        assertThat(root.getContent()).isEqualTo("Preface\n");
+        // The heading markup in front of a loose match stays with its section
+        assertThat(root.getChildren().get(0).getContent()).isEqualTo("## 2. Getting   Started\nSteps.\n");
+        assertThat(root.getChildren().get(1).getContent()).isEmpty();
+        assertThat(root.getChildren().get(2).getContent()).isEqualTo("## 3. Reference\nTables.\n");
+    }
+
+    @Test
+    @DisplayName("should release streamed content-mode nodes once their own fields are complete")
+    void shouldReleaseStreamedNodesEarly() {
+        DocumentTreeStreamParser parser = new DocumentTreeStreamParser(new ObjectMapper(), "unused", false);
+
+        List<PageIndexService.StreamedNode> first = parser.feed(
+                "```json\n{\"title\": \"Guide\", \"content\": \"Intro\", \"children\": [{\"title\": \"Set");
+        List<PageIndexService.StreamedNode> second = parser.feed(
+                "up\", \"content\": \"Steps\", \"children\": []}]}\n```");
+
+        assertThat(first).extracting(n -> n.node().getTitle()).containsExactly("Guide");
+        assertThat(second).extracting(n -> n.node().getTitle()).containsExactly("Setup");
+        assertThat(second.get(0).parent()).isSameAs(first.get(0).node());
+        assertThat(second.get(0).depth()).isEqualTo(1);
+        assertThat(parser.finish()).isEmpty();
+        assertThat(parser.root().getChildren()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should release each streamed anchor-mode section once the next one is located")
+    void shouldSliceStreamedAnchors() {
+        String text = "Intro text.\n# Install\nRun it.\n## Linux\nUse apt.\n# Usage\nCall it.\n";
+        String json = "{\"title\":\"Guide\",\"meta\":{\"children\":[1]},\"children\":["
+                + "{\"title\":\"Install\",\"anchor\":\"# Install\",\"children\":["
+                + "{\"title\":\"Linux\",\"anchor\":\"## Linux\",\"children\":[]}]},"
+                + "{\"title\":\"Usage\",\"anchor\":\"# Usage\",\"children\":[]}]}";
+        DocumentTreeStreamParser parser = new DocumentTreeStreamParser(new ObjectMapper(), text, true);
+
+        List<PageIndexService.StreamedNode> released = new ArrayList<>();
+        List<Integer> releasedAfterChunk = new ArrayList<>();
+        for (int i = 0; i < json.length(); i += 7) {
+            released.addAll(parser.feed(json.substring(i, Math.min(i + 7, json.length()))));
+            releasedAfterChunk.add(released.size());
+        }
+        int beforeFinish = released.size();
+        released.addAll(parser.finish());
+
+        // Everything but the last section is out before the stream ends
+        assertThat(beforeFinish).isEqualTo(3);
+        assertThat(released).extracting(n -> n.node().getTitle())
+                .containsExactly("Guide", "Install", "Linux", "Usage");
+        assertThat(released).extracting(n -> n.node().getContent())
+                .containsExactly("Intro text.\n", "# Install\nRun it.\n", "## Linux\nUse apt.\n", "# Usage\nCall it.\n");
+        assertThat(released.get(2).parent()).isSameAs(released.get(1).node());
+        assertThat(releasedAfterChunk.get(0)).isZero();
+    }
+}
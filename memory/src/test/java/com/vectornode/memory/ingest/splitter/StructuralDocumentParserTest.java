@@ -0,0 +1,75 @@
+package com.vectornode.memory.ingest.splitter;
+
+import com.vectornode.memory.ingest.service.PageIndexService.DocumentNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for building PageIndex trees from document headings.
+ */
+class StructuralDocumentParserTest {
+
+    private final StructuralDocumentParser parser = new StructuralDocumentParser();
+
+    private static String preOrderContent(DocumentNode node) {
+        StringBuilder text = new StringBuilder(node.getContent());
+        node.getChildren().forEach(child -> text.append(preOrderContent(child)));
+        return text.toString();
+    }
+
+    @Test
+    @DisplayName("should nest Markdown headings by level and ignore fenced code")
+    void shouldNestMarkdownHeadings() {
+        String text = "Preface.\n# Install\nRun it.\n## Linux\n```\n# not a heading\n```\n# Usage\nCall it.\n";
+
+        DocumentNode root = parser.parse(text).orElseThrow();
+
+        assertThat(root.getTitle()).isEqualTo("Install");
+        assertThat(root.getContent()).isEqualTo("Preface.\n");
+        assertThat(root.getChildren()).extracting(DocumentNode::getTitle).containsExactly("Install", "Usage");
+        DocumentNode linux = root.getChildren().get(0).getChildren().get(0);
+        assertThat(linux.getContent()).isEqualTo("## Linux\n```\n# not a heading\n```\n");
+        assertThat(preOrderContent(root)).isEqualTo(text);
+    }
+
+    @Test
+    @DisplayName("should promote a single top-level heading to the document root")
+    void shouldPromoteTitleHeading() {
+        String text = "# Guide\nIntro.\n## Setup\nA.\n## Usage\nB.\n";
+
+        DocumentNode root = parser.parse(text).orElseThrow();
+
+        assertThat(root.getTitle()).isEqualTo("Guide");
+        assertThat(root.getContent()).isEqualTo("# Guide\nIntro.\n");
+        assertThat(root.getChildren()).extracting(DocumentNode::getTitle).containsExactly("Setup", "Usage");
+        assertThat(preOrderContent(root)).isEqualTo(text);
+    }
+
+    @Test
+    @DisplayName("should read HTML and numbered headings")
+    void shouldParseHtmlAndNumberedHeadings() {
+        String html = "<p>Top</p><h1>Intro &amp; Scope</h1><p>a</p><h2 class=\"x\">Goals</h2><p>b</p><h1>End</h1>";
+        String numbered = "1 Overview\nText.\n1.1 Background\nMore.\n2 Results\nDone.\n";
+
+        DocumentNode htmlRoot = parser.parse(html).orElseThrow();
+        DocumentNode numberedRoot = parser.parse(numbered).orElseThrow();
+
+        assertThat(htmlRoot.getChildren()).extracting(DocumentNode::getTitle).containsExactly("Intro & Scope", "End");
+        assertThat(htmlRoot.getChildren().get(0).getChildren()).extracting(DocumentNode::getTitle)
+                .containsExactly("Goals");
+        assertThat(preOrderContent(htmlRoot)).isEqualTo(html);
+        assertThat(numberedRoot.getChildren()).extracting(DocumentNode::getTitle)
+                .containsExactly("Overview", "Results");
+        assertThat(preOrderContent(numberedRoot)).isEqualTo(numbered);
+    }
+
+    @Test
+    @DisplayName("should leave unstructured text and numbered lists to the LLM")
+    void shouldRejectUnstructuredText() {
+        assertThat(parser.parse("Just a paragraph of text.\nAnd another line.")).isEmpty();
+        assertThat(parser.parse("Steps:\n1. Open the lid.\n2. Pour the water.\n")).isEmpty();
+        assertThat(parser.parse("# Only one heading\nBody.")).isEmpty();
+    }
+}
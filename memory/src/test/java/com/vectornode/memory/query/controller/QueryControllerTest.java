@@ -15,6 +15,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.Instant;
 import java.util.*;
@@ -666,4 +667,32 @@ class QueryControllerTest {
             verify(queryService, never()).searchHistory(any(QueryRequest.class));
         }
     }
-}
\ No newline at end of file
+
+    // ==================== AGENTIC ROUTER ENDPOINT TESTS ====================
+
+    @Nested
+    @DisplayName("Agentic Router Endpoints")
+    class AgenticRouterEndpointTests {
+
+        @Test
+        @DisplayName("POST /api/query/route - should return routed results")
+        void routeQuery_ShouldReturnResults() {
+            when(queryService.routeQuery(any(QueryRequest.class))).thenReturn(mockResponse);
+
+            ResponseEntity<QueryResponse> response = queryController.routeQuery(validRequest);
+
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertEquals(mockResponse, response.getBody());
+        }
+
+        @Test
+        @DisplayName("POST /api/query/route/stream - should return the service's SSE emitter")
+        void streamRouteQuery_ShouldReturnEmitter() {
+            SseEmitter emitter = new SseEmitter();
+            when(queryService.streamRouteQuery(validRequest)).thenReturn(emitter);
+
+            assertSame(emitter, queryController.streamRouteQuery(validRequest));
+            verify(queryService, never()).routeQuery(any(QueryRequest.class));
+        }
+    }
+}
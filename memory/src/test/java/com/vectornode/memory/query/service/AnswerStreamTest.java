@@ -0,0 +1,116 @@
+package com.vectornode.memory.query.service;
+
+import com.vectornode.memory.config.LLMBulkhead;
+import com.vectornode.memory.config.LLMCircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the lifecycle of a streamed answer.
+ */
+class AnswerStreamTest {
+
+    /**
+     * Emitter that keeps the callbacks the container would run and records
+     * sent event names.
+     */
+    static class RecordingEmitter extends SseEmitter {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        Runnable timeoutCallback;
+        Consumer<Throwable> errorCallback;
+
+        @Override
+        public void onTimeout(Runnable callback) {
+            timeoutCallback = callback;
+        }
+
+        @Override
+        public void onError(Consumer<Throwable> callback) {
+            errorCallback = callback;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            // The first part starts with the "event:<name>" line
+            String head = builder.build().iterator().next().getData().toString();
+            events.add(head.lines().findFirst().orElseThrow().substring("event:".length()));
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+    }
+
+    private RecordingEmitter emitter;
+    private AnswerStream stream;
+
+    @BeforeEach
+    void setUp() {
+        LLMBulkhead.configure(1, Duration.ZERO);
+        LLMCircuitBreaker.configure(new LLMCircuitBreaker.Settings(1, 1, 0.5, Duration.ZERO, Duration.ofMinutes(1), 1));
+        emitter = new RecordingEmitter();
+        stream = new AnswerStream(emitter, LLMBulkhead.acquire(), LLMCircuitBreaker.acquire(), 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LLMBulkhead.configure(LLMBulkhead.DEFAULT_MAX_CONCURRENT, LLMBulkhead.DEFAULT_MAX_WAIT);
+        LLMCircuitBreaker.configure(LLMCircuitBreaker.Settings.defaults());
+    }
+
+    @Test
+    @DisplayName("Should cancel generation and release the permits when the client disconnects")
+    void shouldCancelOnClientDisconnect() {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        stream.generate(Flux.<String>never().doOnCancel(cancelled::countDown));
+
+        emitter.errorCallback.accept(new IOException("Broken pipe"));
+
+        assertEquals(0, cancelled.getCount());
+        assertFalse(stream.isOpen());
+        // The only bulkhead slot is free again, and a disconnect does not count against the breaker
+        LLMBulkhead.acquire().close();
+        assertEquals(LLMCircuitBreaker.State.CLOSED, LLMCircuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("Should cancel generation and count a failure when the stream times out")
+    void shouldCancelOnTimeout() {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        stream.generate(Flux.<String>never().doOnCancel(cancelled::countDown));
+
+        emitter.timeoutCallback.run();
+
+        assertEquals(0, cancelled.getCount());
+        assertEquals(0, emitter.completed.getCount());
+        LLMBulkhead.acquire().close();
+        assertEquals(LLMCircuitBreaker.State.OPEN, LLMCircuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("Should send every token, then done, and release the permits")
+    void shouldStreamTokensThenDone() throws Exception {
+        stream.generate(Flux.just("Hello", " world"));
+
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("token", "token", "done"), emitter.events);
+        LLMBulkhead.acquire().close();
+        assertEquals(LLMCircuitBreaker.State.CLOSED, LLMCircuitBreaker.state());
+    }
+}
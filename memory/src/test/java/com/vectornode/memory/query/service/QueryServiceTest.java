@@ -1,6 +1,8 @@
 package com.vectornode.memory.query.service;
 
+import com.vectornode.memory.config.LLMCircuitBreaker;
 import com.vectornode.memory.config.LLMProvider;
+import com.vectornode.memory.config.VectorIndexMode;
 import com.vectornode.memory.entity.Context;
 import com.vectornode.memory.entity.KnowledgeBase;
 import com.vectornode.memory.entity.RagEntity;
@@ -12,6 +14,7 @@ import com.vectornode.memory.query.repository.ContextRepository;
 import com.vectornode.memory.query.repository.EntityRepository;
 import com.vectornode.memory.query.repository.KnowledgeBaseRepository;
 import com.vectornode.memory.query.repository.RelationRepository;
+import com.vectornode.memory.setup.exception.custom.LlmUnavailableException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -21,13 +24,18 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -48,6 +56,10 @@ class QueryServiceTest {
     private KnowledgeBaseRepository knowledgeBaseRepository;
     @Mock
     private RelationRepository relationRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     @InjectMocks
     private QueryService queryService;
@@ -98,6 +110,34 @@ class QueryServiceTest {
         assertEquals(0.95, response.getResults().get(0).getScore());
     }
 
+    @Test
+    void searchContexts_ShouldRerankQuantizedCandidates_WhenHalfvecModeEnabled() {
+        String query = "test query";
+        llmProviderMock.when(() -> LLMProvider.getEmbedding(eq(query)))
+                .thenReturn(new float[] { 0.1f, 0.2f, 0.3f });
+        Object[] mockRow = new Object[] { UUID.randomUUID(), "Chunk content", 0, 0.9 };
+        when(contextRepository.findSimilarWithScoreHalfvec(anyString(), eq(20), eq(5)))
+                .thenReturn(Collections.singletonList(mockRow));
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery(query);
+        request.setLimit(5);
+
+        VectorIndexMode.configure(VectorIndexMode.HALFVEC, 4, 10);
+        try {
+            QueryResponse response = queryService.searchContexts(request);
+
+            assertEquals(1, response.getResults().size());
+            verify(contextRepository, Mockito.never()).findSimilarWithScore(anyString(), anyInt());
+            // ef_search is raised to the 20 candidates for the search transaction
+            verify(jdbcTemplate).execute("SET LOCAL hnsw.ef_search = 20");
+            verify(transactionManager).commit(any());
+        } finally {
+            VectorIndexMode.configure(VectorIndexMode.FULL, VectorIndexMode.DEFAULT_RERANK_FACTOR,
+                    VectorIndexMode.DEFAULT_EF_SEARCH);
+        }
+    }
+
     @Test
     void getContextsByKnowledgeBase_ShouldReturnContexts() {
         UUID kbId = UUID.randomUUID();
@@ -385,14 +425,16 @@ class QueryServiceTest {
     void routeQuery_ShouldRouteToPromptSearch_WhenClassifiedAsPrompt() {
         String query = "What did I say yesterday?";
         
-        // 1. Classification Mock
-        llmProviderMock.when(() -> LLMProvider.callLLM(anyString()))
-                .thenReturn("PROMPT");
+        // 1. Classification Mock (runs concurrently with the query embedding)
+        llmProviderMock.when(() -> LLMProvider.callLLMAsync(anyString(), eq(true)))
+                .thenReturn(CompletableFuture.completedFuture("PROMPT"));
+        llmProviderMock.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_ANSWER), anyString()))
+                .thenReturn("You said hello.");
                 
         // 2. Execution Mock (executePromptSearch uses contextRepository.findSimilarWithScore)
         float[] dummyEmbedding = new float[] { 0.1f };
-        llmProviderMock.when(() -> LLMProvider.getEmbedding(eq(query)))
-                .thenReturn(dummyEmbedding);
+        llmProviderMock.when(() -> LLMProvider.embedAsync(eq(query)))
+                .thenReturn(CompletableFuture.completedFuture(dummyEmbedding));
                 
         UUID contextId = UUID.randomUUID();
         Object[] contextRow = new Object[] { contextId, "Yesterday I said hello.", 0, 0.95 };
@@ -406,27 +448,31 @@ class QueryServiceTest {
         QueryResponse response = queryService.routeQuery(request);
 
         assertNotNull(response);
-        // Classification LLM call + Final generation LLM call
-        llmProviderMock.verify(() -> LLMProvider.callLLM(anyString()), Mockito.times(2));
+        // Async classification call + Final generation LLM call
+        llmProviderMock.verify(() -> LLMProvider.callLLMAsync(anyString(), eq(true)), Mockito.times(1));
+        llmProviderMock.verify(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_ANSWER), anyString()), Mockito.times(1));
+        // The query is embedded once, up front, and reused by the routed search
+        llmProviderMock.verify(() -> LLMProvider.embedAsync(eq(query)), Mockito.times(1));
+        llmProviderMock.verify(() -> LLMProvider.getEmbedding(anyString()), Mockito.never());
         // Verify we hit the prompt branch
         verify(contextRepository).findSimilarWithScore(anyString(), anyInt());
-        // Answer logic is mocked to return PROMPT for both calls in this simplified test structure,
-        // Since the second callLLM is the final generation, we don't strictly care about its content here
+        assertEquals("You said hello.", response.getAnswer());
     }
 
     @Test
     void routeQuery_ShouldRouteToDocumentSearch_WhenClassifiedAsDocument() {
         String query = "What is the installation process?";
         
-        // 1. Classification Mock (First call returns DOCUMENT, second returns final answer)
-        llmProviderMock.when(() -> LLMProvider.callLLM(anyString()))
-                .thenReturn("DOCUMENT")
+        // 1. Classification Mock (async classification returns DOCUMENT, final answer is blocking)
+        llmProviderMock.when(() -> LLMProvider.callLLMAsync(anyString(), eq(true)))
+                .thenReturn(CompletableFuture.completedFuture("DOCUMENT"));
+        llmProviderMock.when(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_ANSWER), anyString()))
                 .thenReturn("The installation process is easy.");
                 
         // 2. Execution Mock (executeDocumentSearch uses entityRepository.findSimilarEntitiesWithScore)
         float[] dummyEmbedding = new float[] { 0.1f };
-        llmProviderMock.when(() -> LLMProvider.getEmbedding(eq(query)))
-                .thenReturn(dummyEmbedding);
+        llmProviderMock.when(() -> LLMProvider.embedAsync(eq(query)))
+                .thenReturn(CompletableFuture.completedFuture(dummyEmbedding));
                 
         UUID rootEntityId = UUID.randomUUID();
         Object[] entityRow = new Object[] { rootEntityId, "Installation Guide", "DOCUMENT_SECTION", "", 0.9 };
@@ -452,4 +498,53 @@ class QueryServiceTest {
         assertEquals(1, response.getResults().size());
         assertEquals("DOCUMENT_NODE", response.getResults().get(0).getType());
     }
+
+    @Test
+    void routeQuery_ShouldSkipGeneration_WhenAnswerNotRequested() {
+        String query = "What did I say yesterday?";
+
+        llmProviderMock.when(() -> LLMProvider.callLLMAsync(anyString(), eq(true)))
+                .thenReturn(CompletableFuture.completedFuture("PROMPT"));
+        llmProviderMock.when(() -> LLMProvider.embedAsync(eq(query)))
+                .thenReturn(CompletableFuture.completedFuture(new float[] { 0.1f }));
+
+        Object[] contextRow = new Object[] { UUID.randomUUID(), "Yesterday I said hello.", 0, 0.95 };
+        when(contextRepository.findSimilarWithScore(anyString(), anyInt()))
+                .thenReturn(Collections.singletonList(contextRow));
+
+        QueryRequest request = QueryRequest.builder()
+                .query(query)
+                .generateAnswer(false)
+                .build();
+
+        QueryResponse response = queryService.routeQuery(request);
+
+        assertEquals(1, response.getResults().size());
+        assertNull(response.getAnswer());
+        // Retrieval-only callers never pay for the final generation call
+        llmProviderMock.verify(() -> LLMProvider.callLLM(eq(LLMProvider.PROFILE_ANSWER), anyString()), Mockito.never());
+    }
+
+    @Test
+    void searchContexts_ShouldFailFast_WhileSqlReadsWork_WhenCircuitOpen() {
+        LLMCircuitBreaker.configure(new LLMCircuitBreaker.Settings(2, 2, 0.5, Duration.ZERO, Duration.ofMinutes(1), 1));
+        try {
+            llmProviderMock.when(() -> LLMProvider.getEmbedding(anyString()))
+                    .thenThrow(new IllegalArgumentException("Embedding generation failed",
+                            new TransientAiException("503 Service Unavailable")));
+            QueryRequest request = new QueryRequest();
+            request.setQuery("anything");
+            assertThrows(IllegalArgumentException.class, () -> queryService.searchContexts(request));
+            assertThrows(IllegalArgumentException.class, () -> queryService.searchContexts(request));
+
+            // Open: rejected without calling the provider
+            assertThrows(LlmUnavailableException.class, () -> queryService.searchContexts(request));
+            llmProviderMock.verify(() -> LLMProvider.getEmbedding(anyString()), Mockito.times(2));
+
+            when(knowledgeBaseRepository.findByUidOrderByCreatedAtDesc("user123")).thenReturn(List.of());
+            assertNotNull(queryService.getHistoryByUser("user123"));
+        } finally {
+            LLMCircuitBreaker.configure(LLMCircuitBreaker.Settings.defaults());
+        }
+    }
 }
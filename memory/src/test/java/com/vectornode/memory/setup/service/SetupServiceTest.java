@@ -12,7 +12,9 @@ import org.mockito.MockedConstruction;
 import org.mockito.MockedStatic;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -37,7 +39,7 @@ class SetupServiceTest {
         mockedStatic = mockStatic(LLMProvider.class);
         mockedStatic.when(() -> LLMProvider.getEmbedding(anyString()))
                 .thenReturn(new float[] { 0.1f, 0.2f, 0.3f });
-        mockedStatic.when(() -> LLMProvider.callLLM(anyString()))
+        mockedStatic.when(() -> LLMProvider.callLLM(anyString(), anyString()))
                 .thenReturn("Mock LLM response");
     }
 
@@ -80,7 +82,43 @@ class SetupServiceTest {
 
         // Verify static methods were called
         mockedStatic.verify(() -> LLMProvider.getEmbedding("test"), times(1));
-        mockedStatic.verify(() -> LLMProvider.callLLM("Hello"), times(1));
+        mockedStatic.verify(() -> LLMProvider.callLLM(LLMProvider.PROFILE_DEFAULT, "Hello"), times(1));
+        assertEquals(LLMProvider.PROFILE_DEFAULT, response.getProfile());
+    }
+
+    @Test
+    @DisplayName("Should configure a named profile without probing embeddings")
+    void shouldConfigureNamedProfile() {
+        SetupRequest request = createGeminiRequest("gemini-2.0-flash-lite", "gemini-embedding-001");
+        request.setProfile(LLMProvider.PROFILE_EXTRACTION);
+
+        SetupResponse response = setupService.configureLLM(request);
+
+        assertTrue(response.isSuccess());
+        assertEquals(LLMProvider.PROFILE_EXTRACTION, response.getProfile());
+        mockedStatic.verify(() -> LLMProvider.getEmbedding(anyString()), never());
+        mockedStatic.verify(() -> LLMProvider.callLLM(LLMProvider.PROFILE_EXTRACTION, "Hello"), times(1));
+    }
+
+    @Test
+    @DisplayName("Should append a fallback provider instead of replacing the primary")
+    void shouldAddFallbackProvider() {
+        SetupRequest request = new SetupRequest();
+        request.setProvider(LLMApiProvider.AZURE);
+        request.setApiKey("test-azure-key");
+        request.setChatModelName("gpt-4o-mini");
+        request.setEmbedModelName("text-embedding-3-small");
+        request.setFallback(true);
+
+        SetupResponse response = setupService.configureLLM(request);
+
+        assertTrue(response.isSuccess());
+        assertTrue(response.isFallback());
+        assertEquals(0, mockedConstruction.constructed().size());
+        mockedStatic.verify(() -> LLMProvider.addFallback(eq(LLMProvider.PROFILE_DEFAULT), eq("AZURE"),
+                eq("test-azure-key"), eq("https://cortexdb.openai.azure.com/"), eq("gpt-4o-mini"),
+                eq("text-embedding-3-small"), anyInt(), isNull()), times(1));
+        mockedStatic.verify(() -> LLMProvider.callLLM(anyString(), anyString()), never());
     }
 
     @Test
@@ -181,6 +219,21 @@ class SetupServiceTest {
         assertEquals("https://openrouter.ai/api", response.getBaseUrl());
     }
 
+    @Test
+    @DisplayName("Should configure LOCAL provider without an API key or base URL")
+    void shouldConfigureLocalWithoutApiKey() {
+        SetupRequest request = new SetupRequest();
+        request.setProvider(LLMApiProvider.LOCAL);
+        request.setChatModelName("unused");
+        request.setEmbedModelName("all-mpnet-base-v2");
+
+        SetupResponse response = setupService.configureLLM(request);
+
+        assertTrue(response.isSuccess());
+        assertEquals("LOCAL", response.getConfiguredProvider());
+        assertEquals("N/A", response.getBaseUrl());
+    }
+
     @Test
     @DisplayName("Should create LLMProvider with correct parameters")
     void shouldCreateLLMProviderWithCorrectParameters() {